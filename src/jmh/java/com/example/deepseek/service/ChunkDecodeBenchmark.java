@@ -0,0 +1,90 @@
+package com.example.deepseek.service;
+
+import com.example.deepseek.config.AiConfig;
+import com.example.deepseek.stream.JsonContentDecoder;
+import com.example.deepseek.stream.RecordedStreams;
+import com.example.deepseek.stream.SseContentDecoder;
+import com.example.deepseek.stream.ThinkTagFilter;
+import com.example.deepseek.stream.TokenCoalescer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上游响应块处理基准：经BaseAiService的processOllamaChunk/processDeepSeekChunk逐块解码并释放DataBuffer，
+ * 再与上游流相同地过滤&lt;think&gt;标签、在流结束时flush，最后按默认配置合并token。每次操作处理一个完整的录制响应。
+ * chunkSize为0时每个事件一块；64时按固定字节数切分，覆盖事件和UTF-8字符跨块的拼接路径。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChunkDecodeBenchmark {
+
+    private static final DefaultDataBufferFactory BUFFERS = DefaultDataBufferFactory.sharedInstance;
+    private static final String REQUEST_TYPE = "基准测试";
+
+    @Param({"0", "64"})
+    public int chunkSize;
+
+    private List<byte[]> ollamaChunks;
+    private List<byte[]> deepseekChunks;
+    private TokenCoalescer coalescer;
+
+    @Setup
+    public void setUp() {
+        ollamaChunks = RecordedStreams.chunks(RecordedStreams.load("ollama-chat.ndjson"), "\n", chunkSize);
+        deepseekChunks = RecordedStreams.chunks(RecordedStreams.load("deepseek-chat.sse"), "\n\n", chunkSize);
+        coalescer = TokenCoalescer.of(new AiConfig.Streaming());
+    }
+
+    @Benchmark
+    public void ollamaStream(Blackhole blackhole) {
+        Flux<String> content = Flux.defer(() -> {
+            ThinkTagFilter thinkFilter = new ThinkTagFilter();
+            JsonContentDecoder decoder = new JsonContentDecoder(JsonContentDecoder.OLLAMA_CONTENT_PATH);
+            return Flux.fromIterable(ollamaChunks)
+                    .map(chunk -> thinkFilter.filter(
+                            BaseAiService.processOllamaChunk(BUFFERS.wrap(chunk), decoder, REQUEST_TYPE)))
+                    .concatWith(Mono.fromSupplier(thinkFilter::flush));
+        });
+        consume(content, blackhole);
+    }
+
+    @Benchmark
+    public void deepSeekStream(Blackhole blackhole) {
+        Flux<String> content = Flux.defer(() -> {
+            ThinkTagFilter thinkFilter = new ThinkTagFilter();
+            SseContentDecoder decoder = new SseContentDecoder(JsonContentDecoder.OPENAI_DELTA_CONTENT_PATH);
+            return Flux.fromIterable(deepseekChunks)
+                    .map(chunk -> thinkFilter.filter(
+                            BaseAiService.processDeepSeekChunk(BUFFERS.wrap(chunk), decoder, REQUEST_TYPE)))
+                    .concatWith(Mono.fromSupplier(() -> thinkFilter.filter(decoder.finish()) + thinkFilter.flush()));
+        });
+        consume(content, blackhole);
+    }
+
+    private void consume(Flux<String> content, Blackhole blackhole) {
+        content.filter(text -> !text.isEmpty())
+                .transform(coalescer::apply)
+                .doOnNext(blackhole::consume)
+                .blockLast();
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.deepseek.service;
+
+import com.example.deepseek.stream.RecordedStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 天气查询文本处理基准：模型回答的&lt;think&gt;过滤、wttr.in结果的URL解码
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WeatherTextBenchmark {
+
+    private String answer;
+    private String plainLine;
+    private String encodedLine;
+
+    @Setup
+    public void setUp() {
+        answer = RecordedStreams.loadText("weather-answer.txt");
+        plainLine = "Beijing: ☀️   +20°C";
+        encodedLine = "%E5%8C%97%E4%BA%AC: ⛅️  +18°C";
+    }
+
+    @Benchmark
+    public String filterThinkTags() {
+        return WeatherService.filterThinkTags(answer);
+    }
+
+    @Benchmark
+    public String decodePlainLine() {
+        return WeatherService.decodeUrlEncodedText(plainLine);
+    }
+
+    @Benchmark
+    public String decodeEncodedLine() {
+        return WeatherService.decodeUrlEncodedText(encodedLine);
+    }
+}
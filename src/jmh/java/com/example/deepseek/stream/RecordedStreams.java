@@ -0,0 +1,79 @@
+package com.example.deepseek.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 基准测试使用的上游响应流（src/jmh/resources/streams）
+ * ollama-chat.ndjson为Ollama /api/chat的逐行JSON（deepseek-r1，含think块，按Go的JSON编码转义&lt;和&gt;），
+ * deepseek-chat.sse为DeepSeek chat/completions的SSE事件流。
+ */
+public final class RecordedStreams {
+
+    private RecordedStreams() {
+    }
+
+    public static byte[] load(String name) {
+        try (InputStream in = RecordedStreams.class.getResourceAsStream("/streams/" + name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("找不到录制的响应流: " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static String loadText(String name) {
+        return new String(load(name), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 按网络块切分响应流
+     *
+     * @param chunkSize 0表示每个事件（以delimiter结尾）一块，与上游逐token刷新一致；
+     *                  大于0表示按固定字节数切分，事件和多字节字符会跨块
+     */
+    public static List<byte[]> chunks(byte[] stream, String delimiter, int chunkSize) {
+        List<byte[]> chunks = new ArrayList<>();
+        if (chunkSize > 0) {
+            for (int offset = 0; offset < stream.length; offset += chunkSize) {
+                chunks.add(Arrays.copyOfRange(stream, offset, Math.min(stream.length, offset + chunkSize)));
+            }
+            return chunks;
+        }
+        byte[] separator = delimiter.getBytes(StandardCharsets.UTF_8);
+        int start = 0;
+        for (int i = 0; i <= stream.length - separator.length; i++) {
+            if (Arrays.equals(stream, i, i + separator.length, separator, 0, separator.length)) {
+                chunks.add(Arrays.copyOfRange(stream, start, i + separator.length));
+                start = i + separator.length;
+                i = start - 1;
+            }
+        }
+        if (start < stream.length) {
+            chunks.add(Arrays.copyOfRange(stream, start, stream.length));
+        }
+        return chunks;
+    }
+
+    /**
+     * 解码后的可见token序列（供ThinkTagFilter、TokenCoalescer基准使用）
+     */
+    public static List<String> ollamaTokens() {
+        JsonContentDecoder decoder = new JsonContentDecoder(JsonContentDecoder.OLLAMA_CONTENT_PATH);
+        List<String> tokens = new ArrayList<>();
+        for (byte[] chunk : chunks(load("ollama-chat.ndjson"), "\n", 0)) {
+            String token = decoder.decode(chunk, 0, chunk.length);
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
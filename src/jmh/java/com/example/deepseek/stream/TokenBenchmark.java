@@ -0,0 +1,56 @@
+package com.example.deepseek.stream;
+
+import com.example.deepseek.config.AiConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解码之后的token处理基准：&lt;think&gt;过滤和发送前的token合并
+ * 每次操作处理录制的Ollama响应中的全部token（约280个，含think块）。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenBenchmark {
+
+    private List<String> tokens;
+    private TokenCoalescer coalescer;
+
+    @Setup
+    public void setUp() {
+        tokens = RecordedStreams.ollamaTokens();
+        coalescer = TokenCoalescer.of(new AiConfig.Streaming());
+    }
+
+    @Benchmark
+    public void thinkTagFilter(Blackhole blackhole) {
+        ThinkTagFilter thinkFilter = new ThinkTagFilter();
+        for (String token : tokens) {
+            blackhole.consume(thinkFilter.filter(token));
+        }
+        blackhole.consume(thinkFilter.flush());
+    }
+
+    @Benchmark
+    public void tokenCoalescer(Blackhole blackhole) {
+        coalescer.apply(Flux.fromIterable(tokens))
+                .doOnNext(blackhole::consume)
+                .blockLast();
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.deepseek.loadtest;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地模拟上游，同时提供Ollama和DeepSeek的流式接口，用于离线压测网关本身的开销
+ * <ul>
+ *     <li>POST /api/chat：Ollama逐行JSON流，开头带&lt;think&gt;块（按Go的JSON编码转义）</li>
+ *     <li>POST /v1/chat/completions：DeepSeek SSE流，以 data: [DONE] 结束</li>
+ *     <li>GET /api/tags：Ollama健康检查</li>
+ *     <li>GET /{city}：wttr.in格式3的天气结果（天气流回退查询）</li>
+ * </ul>
+ * 首token延迟服从对数正态分布（由中位数和p99确定），之后按固定速率输出token；
+ * 可按比例注入503错误（响应开始前）和中途断开（输出一半token后关闭连接）。
+ */
+public final class FakeUpstream implements AutoCloseable {
+
+    // 标准正态分布的99分位数
+    private static final double Z99 = 2.326;
+    private static final String[] ANSWER = {"在", "流式", "输出", "中", "，", "网关", "需要", "逐块", "转发", "模型",
+            "生成", "的", "内容", "，", "并且", "及时", "响应", "背压", "和", "取消", "。", "\\n"};
+
+    private final Options options;
+    private final double ttftSigma;
+    private final DisposableServer server;
+    private final AtomicLong streams = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong injectedDrops = new AtomicLong();
+
+    /**
+     * @param tokens          每个响应的token数
+     * @param tokensPerSecond 首token之后的输出速率
+     * @param ttftMedian      首token延迟中位数（毫秒）
+     * @param ttftP99         首token延迟p99（毫秒），不大于中位数时延迟固定
+     * @param errorRate       响应开始前返回503的比例
+     * @param dropRate        输出中途断开连接的比例
+     */
+    public record Options(int port, int tokens, double tokensPerSecond, long ttftMedian, long ttftP99,
+                          double errorRate, double dropRate) {
+    }
+
+    private FakeUpstream(Options options) {
+        this.options = options;
+        this.ttftSigma = options.ttftP99() > options.ttftMedian() && options.ttftMedian() > 0
+                ? Math.log((double) options.ttftP99() / options.ttftMedian()) / Z99
+                : 0;
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(options.port())
+                .route(routes -> routes
+                        .post("/api/chat", (request, response) -> stream(request, response, false))
+                        .post("/v1/chat/completions", (request, response) -> stream(request, response, true))
+                        .get("/api/tags", (request, response) -> response
+                                .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                                .sendString(Mono.just("{\"models\":[]}")))
+                        .get("/{city}", (request, response) -> response
+                                .header(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=utf-8")
+                                .sendString(Mono.just(request.param("city") + ": ☀️   +20°C\n"))))
+                .bindNow();
+    }
+
+    public static FakeUpstream start(Options options) {
+        return new FakeUpstream(options);
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    public String summary() {
+        return String.format("模拟上游: %d个流, 注入503 %d次, 中途断开 %d次",
+                streams.get(), injectedErrors.get(), injectedDrops.get());
+    }
+
+    private Mono<Void> stream(HttpServerRequest request, HttpServerResponse response, boolean sse) {
+        return request.receive().then().then(Mono.defer(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < options.errorRate()) {
+                injectedErrors.incrementAndGet();
+                return response.status(HttpResponseStatus.SERVICE_UNAVAILABLE)
+                        .sendString(Mono.just("{\"error\":\"injected\"}"))
+                        .then();
+            }
+            streams.incrementAndGet();
+            int tokens = options.tokens();
+            Flux<String> body = Flux.interval(ttft(random), tokenInterval())
+                    .take(tokens)
+                    .map(i -> sse ? deepSeekEvent(token(i.intValue(), tokens, false))
+                            : ollamaLine(token(i.intValue(), tokens, true), false));
+            if (random.nextDouble() < options.dropRate()) {
+                injectedDrops.incrementAndGet();
+                body = body.take(tokens / 2).concatWith(Flux.error(new IOException("injected disconnect")));
+            } else {
+                body = body.concatWith(Mono.just(sse ? "data: [DONE]\n\n" : ollamaLine("", true)));
+            }
+            return response
+                    .header(HttpHeaderNames.CONTENT_TYPE, sse ? "text/event-stream" : "application/x-ndjson")
+                    .sendString(body)
+                    .then();
+        }));
+    }
+
+    private Duration ttft(ThreadLocalRandom random) {
+        double millis = options.ttftMedian() * Math.exp(ttftSigma * random.nextGaussian());
+        return Duration.ofNanos((long) (millis * 1_000_000));
+    }
+
+    private Duration tokenInterval() {
+        return Duration.ofNanos((long) (1_000_000_000 / Math.max(1, options.tokensPerSecond())));
+    }
+
+    /**
+     * 第i个token；Ollama的响应以约五分之一token的思考内容开头
+     */
+    private static String token(int i, int tokens, boolean think) {
+        int thinkTokens = think ? Math.min(20, tokens / 5) : 0;
+        if (thinkTokens > 0) {
+            if (i == 0) {
+                return "\\u003cthink\\u003e";
+            }
+            if (i <= thinkTokens) {
+                return "思考";
+            }
+            if (i == thinkTokens + 1) {
+                return "\\u003c/think\\u003e";
+            }
+        }
+        return ANSWER[i % ANSWER.length];
+    }
+
+    private static String ollamaLine(String content, boolean done) {
+        return "{\"model\":\"deepseek-r1:7b\",\"created_at\":\"2025-03-08T10:21:05.123456789Z\","
+                + "\"message\":{\"role\":\"assistant\",\"content\":\"" + content + "\"},\"done\":" + done + "}\n";
+    }
+
+    private static String deepSeekEvent(String content) {
+        return "data: {\"id\":\"loadtest\",\"object\":\"chat.completion.chunk\",\"created\":1741429265,"
+                + "\"model\":\"deepseek-chat\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + content
+                + "\"},\"logprobs\":null,\"finish_reason\":null}]}\n\n";
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+}
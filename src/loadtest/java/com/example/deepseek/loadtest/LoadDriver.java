@@ -0,0 +1,212 @@
+package com.example.deepseek.loadtest;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 压测客户端：维持固定数量的并发SSE连接，每个连接结束后立即发起下一个请求，直到压测结束
+ * 每个并发槽位使用独立的会话（先POST /setApiKey选择提供商），请求内容各不相同，避免命中翻译缓存
+ */
+public final class LoadDriver {
+
+    // 网关的提示文案（限流、熔断、上游失败等）都以此开头
+    private static final String GATEWAY_ERROR = "抱歉";
+    private static final String WEATHER_FALLBACK = "智能查询失败";
+    private static final String WEATHER_PROGRESS = "正在智能查询";
+    private static final String[] CITIES = {"北京", "上海", "广州", "深圳", "杭州", "成都", "武汉", "西安"};
+
+    private final String baseUrl;
+    private final String provider;
+    private final List<String> mix;
+    private final HttpClient client;
+    private final ConnectionProvider connections;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param mix 轮流请求的端点：chat、translate、weather
+     */
+    public LoadDriver(String baseUrl, String provider, List<String> mix, int concurrency) {
+        this.baseUrl = baseUrl;
+        this.provider = provider;
+        this.mix = mix;
+        this.connections = ConnectionProvider.builder("loadtest")
+                .maxConnections(concurrency)
+                .pendingAcquireMaxCount(-1)
+                .pendingAcquireTimeout(Duration.ofMinutes(1))
+                .build();
+        this.client = HttpClient.create(connections).baseUrl(baseUrl);
+    }
+
+    /**
+     * 运行压测，阻塞到所有连接结束
+     */
+    public void run(int concurrency, Duration duration, LoadReport report) {
+        long deadline = System.nanoTime() + duration.toNanos();
+        report.start();
+        Flux.range(0, concurrency)
+                .flatMap(slot -> session()
+                        .flatMap(cookie -> Flux.range(0, Integer.MAX_VALUE)
+                                .concatMap(i -> request(cookie, mix.get((slot + i) % mix.size())))
+                                .takeWhile(sample -> {
+                                    report.add(sample);
+                                    return System.nanoTime() < deadline;
+                                })
+                                .then())
+                        .onErrorResume(error -> {
+                            report.add(new LoadReport.Sample("session", describe(error), -1, 0, 0, 0));
+                            return Mono.empty();
+                        }), concurrency)
+                .blockLast();
+        report.finish();
+    }
+
+    /**
+     * 创建会话并选择提供商，返回会话Cookie
+     */
+    private Mono<String> session() {
+        String form = "provider=" + provider + ("deepseek".equals(provider) ? "&apiKey=sk-loadtest" : "");
+        return client.headers(headers -> headers.set(HttpHeaderNames.CONTENT_TYPE,
+                        "application/x-www-form-urlencoded"))
+                .post()
+                .uri("/setApiKey")
+                .send(ByteBufFlux.fromString(Mono.just(form)))
+                .responseSingle((response, body) -> body.then(Mono.fromCallable(() -> {
+                    String cookie = response.responseHeaders().get(HttpHeaderNames.SET_COOKIE);
+                    if (cookie == null) {
+                        throw new IllegalStateException("/setApiKey 未返回会话Cookie，状态码 " + response.status().code());
+                    }
+                    return cookie.substring(0, cookie.indexOf(';') > 0 ? cookie.indexOf(';') : cookie.length());
+                })));
+    }
+
+    private Mono<LoadReport.Sample> request(String cookie, String endpoint) {
+        long id = sequence.incrementAndGet();
+        String uri = switch (endpoint) {
+            case "chat" -> "/chat/stream?message=" + encode("压测消息" + id + "：介绍一下流式输出");
+            case "translate" -> "/translate/stream?targetLang=" + encode("英文") + "&text=" + encode("压测文本" + id);
+            case "weather" -> "/weather/stream?city=" + encode(CITIES[(int) (id % CITIES.length)] + id);
+            default -> throw new IllegalArgumentException("未知的端点: " + endpoint);
+        };
+        return Mono.defer(() -> {
+            SseReader reader = new SseReader(endpoint, System.nanoTime());
+            return client.headers(headers -> headers
+                            .set(HttpHeaderNames.COOKIE, cookie)
+                            .set(HttpHeaderNames.ACCEPT, "text/event-stream"))
+                    .get()
+                    .uri(uri)
+                    .response((response, body) -> {
+                        if (!response.status().equals(HttpResponseStatus.OK)) {
+                            reader.fail("HTTP " + response.status().code());
+                            return body.then();
+                        }
+                        return body.asString(StandardCharsets.UTF_8).doOnNext(reader::accept).then();
+                    })
+                    .then(Mono.fromSupplier(reader::sample))
+                    .onErrorResume(error -> Mono.fromSupplier(() -> {
+                        reader.fail(describe(error));
+                        return reader.sample();
+                    }));
+        });
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String describe(Throwable error) {
+        return error.getClass().getSimpleName();
+    }
+
+    public void close() {
+        connections.disposeLater().block(Duration.ofSeconds(5));
+    }
+
+    /**
+     * 逐块解析SSE事件（事件可能跨网络块），记录首个内容事件时间和内容量
+     */
+    private static final class SseReader {
+
+        private final String endpoint;
+        private final long startedAt;
+        private final StringBuilder pending = new StringBuilder();
+        private long firstContentAt = -1;
+        private int events;
+        private long chars;
+        private String failure;
+
+        SseReader(String endpoint, long startedAt) {
+            this.endpoint = endpoint;
+            this.startedAt = startedAt;
+        }
+
+        void accept(String chunk) {
+            pending.append(chunk);
+            int end;
+            while ((end = pending.indexOf("\n\n")) >= 0) {
+                event(pending.substring(0, end));
+                pending.delete(0, end + 2);
+            }
+        }
+
+        private void event(String event) {
+            StringBuilder data = new StringBuilder();
+            for (String line : event.split("\n", -1)) {
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                if (!data.isEmpty()) {
+                    data.append('\n');
+                }
+                data.append(line, line.startsWith("data: ") ? 6 : 5, line.length());
+            }
+            String content = data.toString();
+            if (content.isEmpty() || "[DONE]".equals(content) || content.startsWith(WEATHER_PROGRESS)) {
+                return;
+            }
+            if (failure == null && content.contains(GATEWAY_ERROR)) {
+                failure = reason(content, GATEWAY_ERROR);
+            } else if (failure == null && content.contains(WEATHER_FALLBACK)) {
+                failure = "天气回退直接查询";
+            }
+            if (firstContentAt < 0) {
+                firstContentAt = System.nanoTime();
+            }
+            events++;
+            chars += content.length();
+        }
+
+        /**
+         * 取提示文案的第一句作为失败原因
+         */
+        private static String reason(String content, String marker) {
+            String text = content.substring(content.indexOf(marker));
+            int end = text.indexOf('，', marker.length() + 1);
+            return end > 0 ? text.substring(0, end) : text;
+        }
+
+        void fail(String reason) {
+            if (failure == null) {
+                failure = reason;
+            }
+        }
+
+        LoadReport.Sample sample() {
+            if (failure == null && events == 0) {
+                failure = "无内容";
+            }
+            return new LoadReport.Sample(endpoint, failure, firstContentAt < 0 ? -1 : firstContentAt - startedAt,
+                    System.nanoTime() - startedAt, events, chars);
+        }
+    }
+}
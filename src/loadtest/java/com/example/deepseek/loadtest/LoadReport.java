@@ -0,0 +1,111 @@
+package com.example.deepseek.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * 压测结果汇总：按端点统计首token耗时（TTFT）、总耗时的分位数和吞吐量
+ */
+public final class LoadReport {
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final ConcurrentLinkedQueue<Sample> samples = new ConcurrentLinkedQueue<>();
+    private long startedAt;
+    private long finishedAt;
+
+    /**
+     * 单个请求的结果
+     *
+     * @param failure    失败原因，成功时为null
+     * @param ttftNanos  发出请求到收到首个内容事件的耗时，未收到时为-1
+     * @param events     收到的内容事件数（合并后的token分段）
+     * @param chars      收到的内容字符数
+     */
+    public record Sample(String endpoint, String failure, long ttftNanos, long durationNanos, int events,
+                         long chars) {
+
+        public boolean ok() {
+            return failure == null;
+        }
+    }
+
+    public void start() {
+        startedAt = System.nanoTime();
+    }
+
+    public void finish() {
+        finishedAt = System.nanoTime();
+    }
+
+    public void add(Sample sample) {
+        samples.add(sample);
+    }
+
+    public int size() {
+        return samples.size();
+    }
+
+    /**
+     * 生成文本报告
+     */
+    public String render() {
+        double seconds = Math.max(1, finishedAt - startedAt) / 1e9;
+        Map<String, List<Sample>> byEndpoint = new TreeMap<>();
+        Map<String, Integer> failures = new TreeMap<>();
+        for (Sample sample : samples) {
+            byEndpoint.computeIfAbsent(sample.endpoint(), k -> new ArrayList<>()).add(sample);
+            if (!sample.ok()) {
+                failures.merge(sample.endpoint() + " " + sample.failure(), 1, Integer::sum);
+            }
+        }
+        byEndpoint.put("全部", new ArrayList<>(samples));
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("压测时长 %.1fs，共 %d 个请求%n%n", seconds, samples.size()));
+        report.append(String.format("%-10s %8s %8s %9s %11s  %-31s  %-31s%n", "端点", "请求", "失败", "请求/s",
+                "内容事件/s", "TTFT p50/p90/p99/p99.9 (ms)", "总耗时 p50/p90/p99/p99.9 (ms)"));
+        for (Map.Entry<String, List<Sample>> entry : byEndpoint.entrySet()) {
+            List<Sample> list = entry.getValue();
+            List<Sample> ok = list.stream().filter(Sample::ok).toList();
+            long failed = list.size() - ok.size();
+            long events = ok.stream().mapToLong(Sample::events).sum();
+            report.append(String.format("%-10s %8d %8d %9.1f %11.1f  %-31s  %-31s%n", entry.getKey(), list.size(),
+                    failed, ok.size() / seconds, events / seconds,
+                    percentiles(ok, Sample::ttftNanos), percentiles(ok, Sample::durationNanos)));
+        }
+        if (!failures.isEmpty()) {
+            report.append(String.format("%n失败原因%n"));
+            failures.forEach((reason, count) -> report.append(String.format("  %-60s %d%n", reason, count)));
+        }
+        return report.toString();
+    }
+
+    private static String percentiles(List<Sample> samples, ToLongFunction<Sample> value) {
+        long[] values = samples.stream().mapToLong(value).filter(v -> v >= 0).sorted().toArray();
+        if (values.length == 0) {
+            return "-";
+        }
+        StringBuilder text = new StringBuilder();
+        for (double percentile : PERCENTILES) {
+            if (!text.isEmpty()) {
+                text.append('/');
+            }
+            text.append(TimeUnit.NANOSECONDS.toMillis(percentile(values, percentile)));
+        }
+        return text.toString();
+    }
+
+    /**
+     * 最近秩法计算分位数，values已排序
+     */
+    static long percentile(long[] values, double percentile) {
+        int rank = (int) Math.ceil(percentile * values.length);
+        return values[Math.min(values.length, Math.max(1, rank)) - 1];
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.deepseek.loadtest;
+
+import com.example.deepseek.DeepseekDemoApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 离线压测入口：启动模拟上游和网关（同一进程），用固定并发的SSE连接压测后输出TTFT和吞吐量报告
+ * 运行：mvn -P loadtest test-compile exec:exec -Dloadtest.args="--connections=2000 --duration=60"
+ * <p>
+ * 压测参数：
+ * <ul>
+ *     <li>--connections：并发连接数，默认500</li>
+ *     <li>--duration：压测秒数，默认30</li>
+ *     <li>--mix：轮流请求的端点，默认chat,translate,weather</li>
+ *     <li>--provider：ollama或deepseek，默认ollama</li>
+ *     <li>--tokens、--token-rate：每个响应的token数和每秒token数，默认200、50</li>
+ *     <li>--ttft-median、--ttft-p99：上游首token延迟（毫秒，对数正态分布），默认300、1500</li>
+ *     <li>--error-rate、--drop-rate：上游返回503、中途断开的比例，默认0</li>
+ *     <li>--target：压测已运行的网关（如http://127.0.0.1:8080），此时只启动模拟上游，网关需自行指向它</li>
+ *     <li>--upstream-port：模拟上游端口，默认随机</li>
+ * </ul>
+ * 其余以 --ai. --server. --spring. --logging. 开头的参数传给进程内的网关，例如 --ai.ollama.limit.max-in-flight=512
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        List<String> gatewayArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--ai.") || arg.startsWith("--server.") || arg.startsWith("--spring.")
+                    || arg.startsWith("--logging.")) {
+                gatewayArgs.add(arg);
+            } else if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                throw new IllegalArgumentException("无法识别的参数: " + arg);
+            }
+        }
+        int connections = Integer.parseInt(options.getOrDefault("connections", "500"));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "30")));
+        List<String> mix = Arrays.asList(options.getOrDefault("mix", "chat,translate,weather").split(","));
+        String provider = options.getOrDefault("provider", "ollama");
+        FakeUpstream.Options upstreamOptions = new FakeUpstream.Options(
+                Integer.parseInt(options.getOrDefault("upstream-port", "0")),
+                Integer.parseInt(options.getOrDefault("tokens", "200")),
+                Double.parseDouble(options.getOrDefault("token-rate", "50")),
+                Long.parseLong(options.getOrDefault("ttft-median", "300")),
+                Long.parseLong(options.getOrDefault("ttft-p99", "1500")),
+                Double.parseDouble(options.getOrDefault("error-rate", "0")),
+                Double.parseDouble(options.getOrDefault("drop-rate", "0")));
+
+        try (FakeUpstream upstream = FakeUpstream.start(upstreamOptions)) {
+            System.out.println("模拟上游已启动: " + upstream.baseUrl() + " " + upstreamOptions);
+            ConfigurableApplicationContext gateway = null;
+            String target = options.get("target");
+            if (target == null) {
+                gateway = startGateway(upstream.baseUrl(), connections, gatewayArgs);
+                target = "http://127.0.0.1:" + ((WebServerApplicationContext) gateway).getWebServer().getPort();
+            }
+            System.out.printf("开始压测 %s：%d个并发连接，%ds，端点%s，提供商%s%n", target, connections,
+                    duration.toSeconds(), mix, provider);
+            LoadDriver driver = new LoadDriver(target, provider, mix, connections);
+            LoadReport report = new LoadReport();
+            try {
+                driver.run(connections, duration, report);
+            } finally {
+                driver.close();
+                if (gateway != null) {
+                    gateway.close();
+                }
+            }
+            System.out.println();
+            System.out.println(report.render());
+            System.out.println(upstream.summary());
+        }
+    }
+
+    /**
+     * 在当前进程内启动网关，所有上游指向模拟上游
+     * 默认按并发连接数放开全局与各提供商的并发限制和连接池，测量的是网关自身的转发开销；压测限流行为时可用参数覆盖
+     */
+    private static ConfigurableApplicationContext startGateway(String upstreamUrl, int connections,
+                                                               List<String> gatewayArgs) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--logging.level.root=WARN",
+                // 限流、上游失败等按请求打印的错误日志由压测报告汇总
+                "--logging.level.com.example.deepseek.service=OFF",
+                "--ai.ollama.base-url=" + upstreamUrl,
+                "--ai.deepseek.base-url=" + upstreamUrl,
+                "--ai.weather.base-url=" + upstreamUrl,
+                "--ai.ollama.adaptive.enabled=false",
+                "--ai.limit.max-in-flight=" + connections,
+                "--ai.limit.max-queue=" + connections));
+        for (String provider : List.of("ollama", "deepseek")) {
+            args.add("--ai." + provider + ".limit.max-in-flight=" + connections);
+            args.add("--ai." + provider + ".limit.max-queue=" + connections);
+            args.add("--ai." + provider + ".pool.max-connections=" + connections);
+            args.add("--ai." + provider + ".pool.pending-acquire-max-count=" + connections);
+        }
+        // 后面的参数覆盖前面的默认值
+        args.addAll(gatewayArgs);
+        return new SpringApplicationBuilder(DeepseekDemoApplication.class).run(args.toArray(String[]::new));
+    }
+}
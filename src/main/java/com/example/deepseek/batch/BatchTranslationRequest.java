@@ -0,0 +1,28 @@
+package com.example.deepseek.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量翻译请求：目标语言和待翻译的片段列表
+ */
+public record BatchTranslationRequest(String targetLang, List<String> segments) {
+
+    public BatchTranslationRequest {
+        segments = segments == null ? List.of() : segments;
+    }
+
+    /**
+     * 从纯文本（如上传的文件内容）构建请求，每行一个片段，忽略末尾换行后的空行
+     */
+    public static BatchTranslationRequest fromLines(String targetLang, String text) {
+        List<String> segments = new ArrayList<>();
+        if (text != null && !text.isEmpty()) {
+            segments.addAll(List.of(text.split("\r?\n", -1)));
+            if (segments.get(segments.size() - 1).isEmpty()) {
+                segments.remove(segments.size() - 1);
+            }
+        }
+        return new BatchTranslationRequest(targetLang, segments);
+    }
+}
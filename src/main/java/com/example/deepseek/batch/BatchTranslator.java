@@ -0,0 +1,338 @@
+package com.example.deepseek.batch;
+
+import com.example.deepseek.stream.TokenEstimator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 批量翻译执行器
+ * 去掉首尾空白后相同的片段只翻译一次，空白片段原样返回；超过chunkTokens的片段按句子拆成多个单元，译文按顺序拼接。
+ * 每个单元先查缓存，未命中的单元按顺序合并为不超过chunkTokens和maxUnits的请求（多个单元时以【n】编号，
+ * 模型漏掉的编号再单独请求）。请求最多concurrency个同时进行，结果按片段原顺序输出：
+ * 每个片段在其所需的请求都完成后立即输出，最后输出一个汇总。
+ */
+public final class BatchTranslator {
+
+    private static final Pattern NUMBER = Pattern.compile("(?m)^[ \\t]*[【\\[](\\d{1,6})[】\\]][ \\t]*");
+
+    private final int chunkTokens;
+    private final int maxUnits;
+    private final int concurrency;
+
+    public BatchTranslator(int chunkTokens, int maxUnits, int concurrency) {
+        this.chunkTokens = Math.max(1, chunkTokens);
+        this.maxUnits = Math.max(1, maxUnits);
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * 翻译模型与缓存的访问方式，由调用方提供
+     */
+    public interface Backend {
+
+        /**
+         * 查询缓存的译文，未命中返回null
+         */
+        String cached(String text);
+
+        /**
+         * 写入缓存，source为给出该译文的回复来源
+         */
+        void store(String text, String translation, String source);
+
+        /**
+         * 翻译单个单元，返回完整译文
+         */
+        Mono<Reply> translate(String text);
+
+        /**
+         * 翻译以【1】【2】...编号、每行一个的多个单元，返回带相同编号的完整译文
+         */
+        Mono<Reply> translateNumbered(String numbered, int count);
+
+        /**
+         * 失败时返回给客户端的提示
+         */
+        String describe(Throwable error);
+    }
+
+    /**
+     * 模型回复；source为实际给出回复的来源（如路由切换后的另一提供商），写入缓存时按它区分
+     */
+    public record Reply(String text, String source) {
+    }
+
+    public sealed interface Event permits SegmentResult, Summary {
+    }
+
+    /**
+     * 单个片段的结果，index为片段在请求中的位置；失败时translation为空、error为提示
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record SegmentResult(int index, String translation, String error) implements Event {
+    }
+
+    /**
+     * 批次汇总：片段数、去重后的片段数、命中缓存的单元数、模型请求数和失败的片段数
+     */
+    public record Summary(int segments, int unique, int cachedUnits, int requests, int failed) implements Event {
+    }
+
+    public Flux<Event> translate(List<String> segments, Backend backend) {
+        return Flux.defer(() -> new Run(segments, backend).start());
+    }
+
+    /**
+     * 单元：片段按句子拆分后的一段，prefix/suffix为原文中前后的空白，拼接译文时保留
+     */
+    private record Unit(int unique, int part, String text, String prefix, String suffix) {
+    }
+
+    private record ChunkResult(List<Unit> units, String[] translations, String[] sources, String error) {
+    }
+
+    /**
+     * 一个批次的执行状态，结果的处理和输出在同一个顺序阶段中进行
+     */
+    private final class Run {
+
+        private final List<String> segments;
+        private final Backend backend;
+        private final int[] uniqueOf;
+        private final Unit[][] unitsOf;
+        private final String[][] parts;
+        private final int[] remaining;
+        private final String[] errors;
+        private final List<List<Unit>> chunks = new ArrayList<>();
+        private int cachedUnits;
+        private int failed;
+        private int next;
+
+        Run(List<String> segments, Backend backend) {
+            this.segments = segments;
+            this.backend = backend;
+            this.uniqueOf = new int[segments.size()];
+            Map<String, Integer> uniques = new HashMap<>();
+            List<String> texts = new ArrayList<>();
+            for (int i = 0; i < segments.size(); i++) {
+                String text = segments.get(i) == null ? "" : segments.get(i).strip();
+                if (text.isEmpty()) {
+                    uniqueOf[i] = -1;
+                    continue;
+                }
+                uniqueOf[i] = uniques.computeIfAbsent(text, key -> {
+                    texts.add(key);
+                    return texts.size() - 1;
+                });
+            }
+
+            this.unitsOf = new Unit[texts.size()][];
+            this.parts = new String[texts.size()][];
+            this.remaining = new int[texts.size()];
+            this.errors = new String[texts.size()];
+            List<Unit> pending = new ArrayList<>();
+            for (int u = 0; u < texts.size(); u++) {
+                List<String> pieces = SentenceSplitter.split(texts.get(u), chunkTokens);
+                unitsOf[u] = new Unit[pieces.size()];
+                parts[u] = new String[pieces.size()];
+                for (int k = 0; k < pieces.size(); k++) {
+                    Unit unit = unit(u, k, pieces.get(k));
+                    unitsOf[u][k] = unit;
+                    String cached = backend.cached(unit.text());
+                    if (cached != null) {
+                        parts[u][k] = cached;
+                        cachedUnits++;
+                    } else {
+                        pending.add(unit);
+                        remaining[u]++;
+                    }
+                }
+            }
+            pack(pending);
+        }
+
+        Flux<Event> start() {
+            return Flux.concat(
+                    Flux.defer(() -> Flux.fromIterable(drain())),
+                    Flux.fromIterable(chunks)
+                            .flatMapSequential(this::run, concurrency)
+                            .concatMapIterable(result -> {
+                                apply(result);
+                                return drain();
+                            }),
+                    Mono.fromSupplier(() -> new Summary(segments.size(), unitsOf.length, cachedUnits,
+                            chunks.size(), failed)));
+        }
+
+        /**
+         * 按顺序合并单元；含换行的单元单独请求，避免与编号混淆
+         */
+        private void pack(List<Unit> pending) {
+            List<Unit> chunk = new ArrayList<>();
+            int tokens = 0;
+            for (Unit unit : pending) {
+                int unitTokens = TokenEstimator.estimate(unit.text());
+                boolean alone = unit.text().indexOf('\n') >= 0;
+                if (!chunk.isEmpty() && (alone || tokens + unitTokens > chunkTokens || chunk.size() >= maxUnits)) {
+                    chunks.add(chunk);
+                    chunk = new ArrayList<>();
+                    tokens = 0;
+                }
+                chunk.add(unit);
+                tokens += unitTokens;
+                if (alone) {
+                    chunks.add(chunk);
+                    chunk = new ArrayList<>();
+                    tokens = 0;
+                }
+            }
+            if (!chunk.isEmpty()) {
+                chunks.add(chunk);
+            }
+        }
+
+        private Mono<ChunkResult> run(List<Unit> units) {
+            String[] sources = new String[units.size()];
+            if (units.size() == 1) {
+                return backend.translate(units.get(0).text())
+                        .defaultIfEmpty(new Reply("", null))
+                        .map(reply -> {
+                            sources[0] = reply.source();
+                            return new ChunkResult(units, new String[]{reply.text().strip()}, sources, null);
+                        })
+                        .onErrorResume(error -> Mono.just(
+                                new ChunkResult(units, new String[1], sources, backend.describe(error))));
+            }
+            StringBuilder numbered = new StringBuilder();
+            for (int i = 0; i < units.size(); i++) {
+                numbered.append('【').append(i + 1).append('】').append(units.get(i).text()).append('\n');
+            }
+            return backend.translateNumbered(numbered.toString(), units.size())
+                    .defaultIfEmpty(new Reply("", null))
+                    .flatMap(reply -> {
+                        String[] translations = parseNumbered(reply.text(), units.size());
+                        for (int i = 0; i < units.size(); i++) {
+                            sources[i] = reply.source();
+                        }
+                        // 漏掉的编号单独请求
+                        return Flux.range(0, units.size())
+                                .filter(i -> translations[i] == null)
+                                .concatMap(i -> backend.translate(units.get(i).text())
+                                        .doOnNext(single -> {
+                                            translations[i] = single.text().strip();
+                                            sources[i] = single.source();
+                                        }))
+                                .then(Mono.fromSupplier(() -> new ChunkResult(units, translations, sources, null)))
+                                .onErrorResume(error -> Mono.just(
+                                        new ChunkResult(units, translations, sources, backend.describe(error))));
+                    })
+                    .onErrorResume(error -> Mono.just(
+                            new ChunkResult(units, new String[units.size()], sources, backend.describe(error))));
+        }
+
+        private void apply(ChunkResult result) {
+            for (int i = 0; i < result.units().size(); i++) {
+                Unit unit = result.units().get(i);
+                String translation = result.translations()[i];
+                if (translation != null) {
+                    parts[unit.unique()][unit.part()] = translation;
+                    backend.store(unit.text(), translation, result.sources()[i]);
+                } else if (errors[unit.unique()] == null) {
+                    errors[unit.unique()] = result.error() != null ? result.error() : "未返回译文";
+                }
+                remaining[unit.unique()]--;
+            }
+        }
+
+        /**
+         * 输出从next开始、所需单元都已完成的连续片段
+         */
+        private List<Event> drain() {
+            List<Event> ready = new ArrayList<>();
+            while (next < segments.size()) {
+                int u = uniqueOf[next];
+                if (u < 0) {
+                    String blank = segments.get(next);
+                    ready.add(new SegmentResult(next, blank == null ? "" : blank, null));
+                } else if (remaining[u] > 0) {
+                    break;
+                } else if (errors[u] != null) {
+                    ready.add(new SegmentResult(next, null, errors[u]));
+                    failed++;
+                } else {
+                    ready.add(new SegmentResult(next, assemble(u), null));
+                }
+                next++;
+            }
+            return ready;
+        }
+
+        private String assemble(int u) {
+            if (parts[u].length == 1) {
+                return parts[u][0];
+            }
+            StringBuilder text = new StringBuilder();
+            for (int k = 0; k < parts[u].length; k++) {
+                Unit unit = unitsOf[u][k];
+                String part = parts[u][k];
+                if (k > 0 && unit.prefix().isEmpty() && unitsOf[u][k - 1].suffix().isEmpty()
+                        && !part.isEmpty() && needsSpace(text.charAt(text.length() - 1), part.charAt(0))) {
+                    text.append(' ');
+                }
+                text.append(unit.prefix()).append(part).append(unit.suffix());
+            }
+            return text.toString();
+        }
+    }
+
+    private static Unit unit(int unique, int part, String piece) {
+        int start = 0;
+        int end = piece.length();
+        while (start < end && Character.isWhitespace(piece.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(piece.charAt(end - 1))) {
+            end--;
+        }
+        return new Unit(unique, part, piece.substring(start, end), piece.substring(0, start), piece.substring(end));
+    }
+
+    /**
+     * 原文在无空白处断开（如中文句子）而译文是西文时，拼接处补一个空格
+     */
+    private static boolean needsSpace(char before, char after) {
+        return before < 128 && !Character.isWhitespace(before) && after < 128 && Character.isLetterOrDigit(after);
+    }
+
+    /**
+     * 按【n】或[n]编号解析译文，缺失、重复或超出范围的编号对应位置为null
+     */
+    static String[] parseNumbered(String response, int count) {
+        String[] translations = new String[count];
+        Matcher matcher = NUMBER.matcher(response);
+        int number = -1;
+        int start = 0;
+        while (true) {
+            boolean found = matcher.find();
+            if (number >= 1 && number <= count && translations[number - 1] == null) {
+                String text = response.substring(start, found ? matcher.start() : response.length()).strip();
+                if (!text.isEmpty()) {
+                    translations[number - 1] = text;
+                }
+            }
+            if (!found) {
+                return translations;
+            }
+            number = Integer.parseInt(matcher.group(1));
+            start = matcher.end();
+        }
+    }
+}
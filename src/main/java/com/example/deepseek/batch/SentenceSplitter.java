@@ -0,0 +1,110 @@
+package com.example.deepseek.batch;
+
+import com.example.deepseek.stream.TokenEstimator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按句子边界拆分长文本
+ * 句末标点（。！？；!?; 及后跟空白或引号的 .）或换行处断句，句后的引号、括号和空白归入前一句；
+ * 相邻句子合并到不超过maxTokens的片段，单句超出时按字符硬拆分。各片段按顺序拼接等于原文。
+ */
+public final class SentenceSplitter {
+
+    private static final String TERMINATORS = "。！？；!?;…\n";
+    private static final String CLOSERS = "\"'”’）)」』】]";
+
+    private SentenceSplitter() {
+    }
+
+    public static List<String> split(String text, int maxTokens) {
+        List<String> pieces = new ArrayList<>();
+        if (TokenEstimator.estimate(text) <= maxTokens) {
+            pieces.add(text);
+            return pieces;
+        }
+        StringBuilder piece = new StringBuilder();
+        int pieceTokens = 0;
+        for (String sentence : sentences(text)) {
+            int tokens = TokenEstimator.estimate(sentence);
+            if (pieceTokens + tokens > maxTokens && piece.length() > 0) {
+                pieces.add(piece.toString());
+                piece.setLength(0);
+                pieceTokens = 0;
+            }
+            if (tokens > maxTokens) {
+                List<String> parts = hardSplit(sentence, maxTokens);
+                pieces.addAll(parts.subList(0, parts.size() - 1));
+                sentence = parts.get(parts.size() - 1);
+                tokens = TokenEstimator.estimate(sentence);
+            }
+            piece.append(sentence);
+            pieceTokens += tokens;
+        }
+        if (piece.length() > 0) {
+            pieces.add(piece.toString());
+        }
+        return pieces;
+    }
+
+    /**
+     * 断句，每句带上其后的引号、括号和空白
+     */
+    static List<String> sentences(String text) {
+        List<String> sentences = new ArrayList<>();
+        int start = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i++);
+            boolean end = TERMINATORS.indexOf(c) >= 0
+                    || (c == '.' && (i == length || Character.isWhitespace(text.charAt(i))
+                    || CLOSERS.indexOf(text.charAt(i)) >= 0));
+            if (!end) {
+                continue;
+            }
+            while (i < length && CLOSERS.indexOf(text.charAt(i)) >= 0) {
+                i++;
+            }
+            while (i < length && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            sentences.add(text.substring(start, i));
+            start = i;
+        }
+        if (start < length) {
+            sentences.add(text.substring(start));
+        }
+        return sentences;
+    }
+
+    /**
+     * 按估算token数硬拆分，不拆开代理对
+     */
+    private static List<String> hardSplit(String sentence, int maxTokens) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        int wide = 0;
+        int other = 0;
+        for (int i = 0, length = sentence.length(); i < length; i++) {
+            char c = sentence.charAt(i);
+            if (Character.isLowSurrogate(c)) {
+                continue;
+            }
+            if (TokenEstimator.isWide(c)) {
+                wide++;
+            } else {
+                other++;
+            }
+            if (wide + (other + 3) / 4 > maxTokens && i > start) {
+                parts.add(sentence.substring(start, i));
+                start = i;
+                wide = TokenEstimator.isWide(c) ? 1 : 0;
+                other = 1 - wide;
+            }
+        }
+        parts.add(sentence.substring(start));
+        return parts;
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.deepseek.breaker;
+
+import com.example.deepseek.config.AiConfig;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 单个上游的熔断器
+ * 关闭状态下统计最近windowSize次调用的失败率和慢调用率，任一超过阈值即熔断；
+ * 熔断期间调用直接失败，到期后进入半开状态放行少量探测请求，全部正常则关闭，出现失败或慢调用则再次熔断。
+ * 流式调用以首个响应块的耗时判断是否为慢调用；未收到数据即被取消的调用不计入统计。
+ * 每次状态切换后旧状态下发放的许可作废，迟到的结果不会影响新状态的统计。
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED("关闭"),
+        OPEN("熔断"),
+        HALF_OPEN("半开");
+
+        private final String description;
+
+        State(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * 熔断器状态快照
+     */
+    public record Status(State state, int calls, double failureRate, double slowCallRate, long rejected) {
+    }
+
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final String name;
+    private final AiConfig.Breaker config;
+    private final Predicate<Throwable> failurePredicate;
+    private final LongSupplier clock;
+    private final long slowCallNanos;
+    private final long openNanos;
+
+    // 最近调用结果的环形缓冲
+    private final byte[] outcomes;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long generation;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenResults;
+    private long rejected;
+
+    public CircuitBreaker(String name, AiConfig.Breaker config, Predicate<Throwable> failurePredicate,
+                          LongSupplier clock) {
+        this.name = name;
+        this.config = config;
+        this.failurePredicate = failurePredicate;
+        this.clock = clock;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(config.getSlowCallThreshold());
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(config.getOpenDuration());
+        this.outcomes = new byte[Math.max(1, config.getWindowSize())];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Status status() {
+        return new Status(state, calls, rate(failures), rate(slowCalls), rejected);
+    }
+
+    /**
+     * 在熔断保护下执行流式调用
+     */
+    public <T> Flux<T> protect(Flux<T> source) {
+        return Flux.defer(() -> {
+            long permit = tryAcquire();
+            if (permit < 0) {
+                return Flux.error(new CircuitBreakerOpenException(name));
+            }
+            long startedAt = clock.getAsLong();
+            AtomicLong firstAt = new AtomicLong();
+            return source
+                    .doOnNext(item -> firstAt.compareAndSet(0, clock.getAsLong()))
+                    .doOnComplete(() -> onResult(permit, false, isSlow(startedAt, firstAt.get())))
+                    .doOnError(error -> onResult(permit, failurePredicate.test(error),
+                            isSlow(startedAt, firstAt.get())))
+                    .doOnCancel(() -> {
+                        if (firstAt.get() != 0) {
+                            onResult(permit, false, isSlow(startedAt, firstAt.get()));
+                        } else {
+                            onIgnored(permit);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 在熔断保护下执行同步调用
+     *
+     * @throws CircuitBreakerOpenException 熔断期间
+     */
+    public <T> T call(Supplier<T> supplier) {
+        long permit = tryAcquire();
+        if (permit < 0) {
+            throw new CircuitBreakerOpenException(name);
+        }
+        long startedAt = clock.getAsLong();
+        try {
+            T result = supplier.get();
+            onResult(permit, false, isSlow(startedAt, 0));
+            return result;
+        } catch (RuntimeException e) {
+            onResult(permit, failurePredicate.test(e), isSlow(startedAt, 0));
+            throw e;
+        }
+    }
+
+    /**
+     * 申请调用许可
+     *
+     * @return 许可所属的状态代数，被拒绝时返回-1
+     */
+    synchronized long tryAcquire() {
+        if (!config.isEnabled()) {
+            return generation;
+        }
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openNanos) {
+                rejected++;
+                return -1;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits >= config.getHalfOpenCalls()) {
+                rejected++;
+                return -1;
+            }
+            halfOpenPermits++;
+        }
+        return generation;
+    }
+
+    synchronized void onResult(long permit, boolean failure, boolean slow) {
+        if (permit != generation || !config.isEnabled()) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (failure || slow) {
+                transition(State.OPEN);
+            } else if (++halfOpenResults >= config.getHalfOpenCalls()) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        record((byte) ((failure ? FAILURE : 0) | (slow ? SLOW : 0)));
+        if (calls >= config.getMinimumCalls()
+                && (rate(failures) >= config.getFailureRateThreshold()
+                || rate(slowCalls) >= config.getSlowCallRateThreshold())) {
+            transition(State.OPEN);
+        }
+    }
+
+    /**
+     * 调用未产生结果即被取消，归还半开状态的探测名额
+     */
+    synchronized void onIgnored(long permit) {
+        if (permit == generation && state == State.HALF_OPEN) {
+            halfOpenPermits--;
+        }
+    }
+
+    private boolean isSlow(long startedAt, long firstAt) {
+        long end = firstAt != 0 ? firstAt : clock.getAsLong();
+        return end - startedAt > slowCallNanos;
+    }
+
+    private void record(byte outcome) {
+        if (calls == outcomes.length) {
+            byte evicted = outcomes[next];
+            failures -= evicted & FAILURE;
+            slowCalls -= (evicted & SLOW) >> 1;
+        } else {
+            calls++;
+        }
+        outcomes[next] = outcome;
+        next = (next + 1) % outcomes.length;
+        failures += outcome & FAILURE;
+        slowCalls += (outcome & SLOW) >> 1;
+    }
+
+    private double rate(int count) {
+        return calls == 0 ? 0 : count * 100.0 / calls;
+    }
+
+    private void transition(State target) {
+        if (target == State.OPEN && state == State.HALF_OPEN) {
+            log.warn("{}熔断器探测失败，继续熔断{}ms", name, config.getOpenDuration());
+            openedAt = clock.getAsLong();
+        } else if (target == State.OPEN) {
+            log.warn("{}熔断器打开：失败率{}%，慢调用率{}%，{}ms后放行探测请求", name,
+                    Math.round(rate(failures)), Math.round(rate(slowCalls)), config.getOpenDuration());
+            openedAt = clock.getAsLong();
+        } else {
+            log.info("{}熔断器{}", name, target.getDescription());
+        }
+        state = target;
+        generation++;
+        halfOpenPermits = 0;
+        halfOpenResults = 0;
+        if (target == State.CLOSED) {
+            next = 0;
+            calls = 0;
+            failures = 0;
+            slowCalls = 0;
+        }
+    }
+}
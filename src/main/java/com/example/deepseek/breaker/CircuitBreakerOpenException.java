@@ -0,0 +1,18 @@
+package com.example.deepseek.breaker;
+
+import lombok.Getter;
+
+/**
+ * 熔断拒绝异常
+ * 上游处于熔断状态时直接失败，不再等待连接或响应超时。
+ */
+@Getter
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    private final String breaker;
+
+    public CircuitBreakerOpenException(String breaker) {
+        super(breaker + "已熔断", null, false, false);
+        this.breaker = breaker;
+    }
+}
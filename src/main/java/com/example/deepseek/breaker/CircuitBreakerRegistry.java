@@ -0,0 +1,88 @@
+package com.example.deepseek.breaker;
+
+import com.example.deepseek.config.AiConfig;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 上游熔断器注册表：Ollama、DeepSeek、wttr.in各一个
+ * 状态以 ai.breaker.state 指标（0关闭、1熔断、2半开）和 /actuator/circuitbreakers 端点暴露。
+ */
+@Component
+public class CircuitBreakerRegistry {
+
+    private final CircuitBreaker ollama;
+    private final CircuitBreaker deepseek;
+    private final CircuitBreaker weather;
+
+    public CircuitBreakerRegistry(AiConfig aiConfig, MeterRegistry meterRegistry) {
+        this.ollama = new CircuitBreaker("ollama", aiConfig.getOllama().getBreaker(),
+                CircuitBreakerRegistry::isUpstreamFailure, System::nanoTime);
+        this.deepseek = new CircuitBreaker("deepseek", aiConfig.getDeepseek().getBreaker(),
+                CircuitBreakerRegistry::isUpstreamFailure, System::nanoTime);
+        this.weather = new CircuitBreaker("weather", aiConfig.getWeather().getBreaker(),
+                CircuitBreakerRegistry::isUpstreamFailure, System::nanoTime);
+
+        for (CircuitBreaker breaker : all()) {
+            Gauge.builder("ai.breaker.state", breaker, b -> b.getState().ordinal())
+                    .description("熔断器状态：0关闭、1熔断、2半开")
+                    .tag("name", breaker.getName())
+                    .register(meterRegistry);
+            FunctionCounter.builder("ai.breaker.rejected", breaker, b -> b.status().rejected())
+                    .description("熔断期间被直接拒绝的调用数")
+                    .tag("name", breaker.getName())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * 获取AI提供商的熔断器
+     */
+    public CircuitBreaker forProvider(String provider) {
+        return "ollama".equals(provider) ? ollama : deepseek;
+    }
+
+    /**
+     * 获取wttr.in的熔断器
+     */
+    public CircuitBreaker weather() {
+        return weather;
+    }
+
+    public List<CircuitBreaker> all() {
+        return List.of(ollama, deepseek, weather);
+    }
+
+    /**
+     * 所有熔断器的状态
+     */
+    public Map<String, CircuitBreaker.Status> status() {
+        Map<String, CircuitBreaker.Status> status = new LinkedHashMap<>();
+        for (CircuitBreaker breaker : all()) {
+            status.put(breaker.getName(), breaker.status());
+        }
+        return status;
+    }
+
+    /**
+     * 是否计为上游故障：客户端错误（4xx，429除外）说明上游正常，不计入
+     */
+    static boolean isUpstreamFailure(Throwable error) {
+        HttpStatusCode status = null;
+        if (error instanceof WebClientResponseException e) {
+            status = e.getStatusCode();
+        } else if (error instanceof HttpStatusCodeException e) {
+            status = e.getStatusCode();
+        }
+        return status == null || !status.is4xxClientError() || status.value() == 429;
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.deepseek.cache;
+
+import com.example.deepseek.config.AiConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 翻译结果缓存
+ * 键由提供商、模型、目标语言和归一化原文的SHA-256组成；值以UTF-8字节数组存储，
+ * 总大小按键和值的UTF-8字节数限制（maxBytes）。配置了快照文件时，停机时将最热的条目连同写入时间写入磁盘，
+ * 启动时重新加载并保留剩余的有效期（已过期的条目丢弃），使热点翻译在重启后依然命中。
+ */
+@Slf4j
+@Component
+public class TranslationCache implements DisposableBean {
+
+    private static final int SNAPSHOT_VERSION = 2;
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final Cache<String, byte[]> cache;
+    private final Path snapshotFile;
+    private final int snapshotMaxEntries;
+
+    public TranslationCache(AiConfig aiConfig, MeterRegistry meterRegistry) {
+        AiConfig.TranslateCache spec = aiConfig.getTranslate().getCache();
+        this.enabled = spec.isEnabled();
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(spec.getTtl());
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(spec.getMaxBytes())
+                .weigher((String key, byte[] value) -> key.getBytes(StandardCharsets.UTF_8).length + value.length)
+                .expireAfter(new WriteExpiry(ttlNanos))
+                .recordStats()
+                .build();
+        this.snapshotFile = spec.getSnapshotFile() == null || spec.getSnapshotFile().isBlank()
+                ? null : Path.of(spec.getSnapshotFile());
+        this.snapshotMaxEntries = spec.getSnapshotMaxEntries();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "translation");
+
+        if (enabled && snapshotFile != null) {
+            loadSnapshot();
+        }
+    }
+
+    /**
+     * 生成缓存键
+     */
+    public static String key(String provider, String model, String targetLang, String text) {
+        return provider + '|' + model + '|' + targetLang + '|' + sha256(normalize(text));
+    }
+
+    /**
+     * 查询缓存，未命中返回null
+     */
+    public String get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        byte[] value = cache.getIfPresent(key);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 写入缓存
+     */
+    public void put(String key, String translation) {
+        if (enabled && !translation.isEmpty()) {
+            cache.put(key, translation.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * 当前缓存占用的字节数
+     */
+    long weightedSize() {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    void cleanUp() {
+        cache.cleanUp();
+    }
+
+    @Override
+    public void destroy() {
+        if (enabled && snapshotFile != null) {
+            saveSnapshot();
+        }
+    }
+
+    /**
+     * 原文归一化：Unicode NFC、统一换行符、去除首尾空白
+     */
+    static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFC)
+                .replace("\r\n", "\n")
+                .strip();
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    /**
+     * 写入后经过ttl过期，读取不影响有效期；快照加载的条目按剩余有效期单独设置
+     */
+    private record WriteExpiry(long ttlNanos) implements Expiry<String, byte[]> {
+
+        @Override
+        public long expireAfterCreate(String key, byte[] value, long currentTime) {
+            return ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, byte[] value, long currentTime, long currentDuration) {
+            return ttlNanos;
+        }
+
+        @Override
+        public long expireAfterRead(String key, byte[] value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * 将最热的条目及其写入时间写入快照文件（先写临时文件再原子替换）
+     * 格式：版本号、条目数，随后每个条目为键、写入时间（毫秒）、值长度和值
+     */
+    void saveSnapshot() {
+        Map<String, byte[]> hottest = cache.policy().eviction()
+                .map(eviction -> eviction.hottest(snapshotMaxEntries))
+                .orElseGet(() -> Map.copyOf(cache.asMap()));
+        Policy.VarExpiration<String, byte[]> expiration = cache.policy().expireVariably().orElseThrow();
+        long now = System.currentTimeMillis();
+        try {
+            Path parent = snapshotFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(hottest.size());
+                for (Map.Entry<String, byte[]> entry : hottest.entrySet()) {
+                    // 写入时间 = 当前时间 - (ttl - 剩余有效期)
+                    long remaining = expiration.getExpiresAfter(entry.getKey(), TimeUnit.NANOSECONDS).orElse(0L);
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(now - TimeUnit.NANOSECONDS.toMillis(ttlNanos - remaining));
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+            }
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("翻译缓存快照已保存: {} 条 -> {}", hottest.size(), snapshotFile);
+        } catch (IOException e) {
+            log.warn("保存翻译缓存快照失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 从快照文件加载条目，按写入时间计算剩余有效期，已过期的条目丢弃
+     */
+    private void loadSnapshot() {
+        if (!Files.isRegularFile(snapshotFile)) {
+            return;
+        }
+        Policy.VarExpiration<String, byte[]> expiration = cache.policy().expireVariably().orElseThrow();
+        long now = System.currentTimeMillis();
+        int loaded = 0;
+        int expired = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                log.warn("翻译缓存快照版本不匹配，忽略: {}", snapshotFile);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long writtenAt = in.readLong();
+                byte[] value = new byte[in.readInt()];
+                in.readFully(value);
+                long remaining = ttlNanos - TimeUnit.MILLISECONDS.toNanos(Math.max(0, now - writtenAt));
+                if (remaining <= 0) {
+                    expired++;
+                    continue;
+                }
+                expiration.put(key, value, remaining, TimeUnit.NANOSECONDS);
+                loaded++;
+            }
+            log.info("翻译缓存快照已加载: {} 条，丢弃已过期 {} 条 <- {}", loaded, expired, snapshotFile);
+        } catch (IOException e) {
+            log.warn("加载翻译缓存快照失败（已加载 {} 条）: {}", loaded, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.deepseek.cache;
+
+import com.example.deepseek.config.AiConfig;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * wttr.in天气数据缓存
+ * 以归一化后的城市名为键，按TTL过期并限制最大条目数（Caffeine W-TinyLFU淘汰）。
+ * 同一城市的并发未命中只会触发一次上游查询，其余请求等待同一结果。
+ * 缓存中放的是结果的future，查询在首个未命中的调用线程上执行，不占用Caffeine计算时持有的锁，
+ * 重试退避和熔断判断期间其他城市的读写不受影响。
+ * 命中/未命中/淘汰统计通过Micrometer以 cache.* 指标暴露（cache=weather）。
+ */
+@Component
+public class WeatherCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final boolean enabled;
+    private final AsyncCache<String, String> cache;
+
+    public WeatherCache(AiConfig aiConfig, MeterRegistry meterRegistry) {
+        AiConfig.WeatherCache spec = aiConfig.getWeather().getCache();
+        this.enabled = spec.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(spec.getMaxSize())
+                .expireAfterWrite(Duration.ofMillis(spec.getTtl()))
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "weather");
+    }
+
+    /**
+     * 获取城市天气原始数据，未命中时通过loader加载
+     * loader返回null表示查询失败，结果不会被缓存
+     */
+    public String get(String city, Function<String, String> loader) {
+        if (!enabled) {
+            return loader.apply(city);
+        }
+        CompletableFuture<String> loading = new CompletableFuture<>();
+        CompletableFuture<String> result = cache.get(normalize(city), (key, executor) -> loading);
+        if (result != loading) {
+            return join(result);
+        }
+        // 本线程负责查询；结果为null或查询失败时Caffeine移除该条目，下次重新查询
+        try {
+            String value = loader.apply(city);
+            loading.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            loading.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * 等待其他线程的查询结果，查询失败时抛出原异常
+     */
+    private static String join(CompletableFuture<String> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    /**
+     * 城市名归一化：去除首尾空白、合并连续空白、统一小写
+     */
+    static String normalize(String city) {
+        return WHITESPACE.matcher(city.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+}
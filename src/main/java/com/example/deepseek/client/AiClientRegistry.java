@@ -0,0 +1,161 @@
+package com.example.deepseek.client;
+
+import com.example.deepseek.config.AiConfig;
+import com.example.deepseek.metrics.StreamObservation;
+import io.micrometer.observation.ObservationRegistry;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AI提供商客户端注册表
+ * 每个提供商持有一个长生命周期的WebClient和各自独立的Reactor Netty连接池，互不挤占连接，
+ * 避免每次请求都重新构建客户端和建立连接。API Key等请求级信息由调用方按请求设置。
+ * Ollama可配置多个实例，每个实例一个WebClient（共享Ollama连接池），由{@link OllamaBalancer}选择。
+ * WebClient注册到ObservationRegistry，每次HTTP交换生成http.client.requests观测，并向上游传递追踪上下文。
+ */
+@Slf4j
+@Component
+public class AiClientRegistry implements InitializingBean, DisposableBean {
+
+    private final ObservationRegistry observationRegistry;
+    private final AiConfig.Ollama ollamaConfig;
+    private final ConnectionProvider ollamaConnections;
+    private final ConnectionProvider deepseekConnections;
+    private final OllamaBalancer ollamaBalancer;
+    private final WebClient deepseekClient;
+
+    public AiClientRegistry(AiConfig aiConfig) {
+        this(aiConfig, ObservationRegistry.NOOP);
+    }
+
+    @Autowired
+    public AiClientRegistry(AiConfig aiConfig, ObservationRegistry observationRegistry) {
+        this.observationRegistry = observationRegistry;
+        AiConfig.Ollama ollama = aiConfig.getOllama();
+        this.ollamaConfig = ollama;
+        AiConfig.Deepseek deepseek = aiConfig.getDeepseek();
+
+        this.ollamaConnections = buildConnectionProvider("ollama", ollama.getPool());
+        this.deepseekConnections = buildConnectionProvider("deepseek", deepseek.getPool());
+        this.ollamaBalancer = buildOllamaBalancer(ollama);
+        this.deepseekClient = buildWebClient(deepseek.getBaseUrl(), deepseekConnections, deepseek.getPool(),
+                deepseek.getConnectTimeout());
+
+        log.info("AI客户端连接池已初始化: ollama={}, deepseek={}, ollamaEndpoints={}",
+                ollama.getPool().getMaxConnections(), deepseek.getPool().getMaxConnections(),
+                ollamaBalancer.getEndpoints());
+    }
+
+    /**
+     * 获取Ollama负载均衡器
+     */
+    public OllamaBalancer ollamaBalancer() {
+        return ollamaBalancer;
+    }
+
+    /**
+     * 获取DeepSeek客户端
+     */
+    public WebClient deepseek() {
+        return deepseekClient;
+    }
+
+    /**
+     * 构建Ollama实例列表，未配置endpoints时使用baseUrl
+     */
+    private OllamaBalancer buildOllamaBalancer(AiConfig.Ollama ollama) {
+        List<AiConfig.Endpoint> configured = ollama.getEndpoints();
+        if (configured == null || configured.isEmpty()) {
+            configured = List.of(new AiConfig.Endpoint(ollama.getBaseUrl(), 1));
+        }
+        List<OllamaEndpoint> endpoints = new ArrayList<>(configured.size());
+        for (AiConfig.Endpoint endpoint : configured) {
+            WebClient client = buildWebClient(endpoint.getBaseUrl(), ollamaConnections, ollama.getPool(),
+                    ollama.getConnectTimeout());
+            endpoints.add(new OllamaEndpoint(endpoint.getBaseUrl(), endpoint.getWeight(), client));
+        }
+        return new OllamaBalancer(endpoints, ollama.getHealthCheck(), ollama.getOutlier(), System::nanoTime);
+    }
+
+    /**
+     * 构建连接池，连接池状态以 reactor.netty.connection.provider.* 指标暴露
+     */
+    private ConnectionProvider buildConnectionProvider(String name, AiConfig.Pool pool) {
+        return ConnectionProvider.builder(name)
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofMillis(pool.getPendingAcquireTimeout()))
+                .maxIdleTime(Duration.ofMillis(pool.getMaxIdleTime()))
+                .maxLifeTime(Duration.ofMillis(pool.getMaxLifeTime()))
+                .evictInBackground(Duration.ofMillis(pool.getMaxIdleTime()))
+                .metrics(true)
+                .build();
+    }
+
+    /**
+     * 构建WebClient
+     */
+    private WebClient buildWebClient(String baseUrl, ConnectionProvider connectionProvider, AiConfig.Pool pool,
+                                     int connectTimeout) {
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .keepAlive(pool.isKeepAlive())
+                .option(ChannelOption.SO_KEEPALIVE, pool.isKeepAlive())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)
+                // 请求即将发出时说明已获得连接，记录连接耗时（观测对象由调用方放在Reactor上下文中）
+                .doOnRequest((request, connection) -> request.currentContextView()
+                        .<StreamObservation>getOrEmpty(StreamObservation.CONTEXT_KEY)
+                        .ifPresent(StreamObservation::connected));
+
+        return WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .observationRegistry(observationRegistry)
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .build();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        ollamaBalancer.start();
+        if (ollamaConfig.isWarmup()) {
+            ollamaBalancer.warmup(ollamaConfig.getApiPath(), warmupRequestBody(ollamaConfig),
+                    Duration.ofMillis(ollamaConfig.getStreamTimeout()));
+        }
+    }
+
+    /**
+     * Ollama预热请求体：消息为空时只把模型加载到内存，并按keep-alive保留
+     */
+    static Map<String, Object> warmupRequestBody(AiConfig.Ollama ollama) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("model", ollama.getModel());
+        body.put("messages", List.of());
+        if (ollama.getKeepAlive() != null && !ollama.getKeepAlive().isBlank()) {
+            body.put("keep_alive", ollama.getKeepAlive());
+        }
+        return body;
+    }
+
+    @Override
+    public void destroy() {
+        ollamaBalancer.stop();
+        ollamaConnections.dispose();
+        deepseekConnections.dispose();
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.deepseek.client;
+
+import com.example.deepseek.config.AiConfig;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Ollama多实例负载均衡器
+ * 随机取两个可用实例，选择“(未完成请求数+1)/权重”较小的一个（二选一），
+ * 可用实例需通过主动健康检查，且不处于被动摘除期（连续失败或首token过慢）。
+ * 没有可用实例时退回全部实例，由超时和错误提示兜底，避免单个探测失误导致整体不可用。
+ * 传入亲和键时按加权最高随机权重哈希固定到一个实例，使同一客户端的多轮请求复用该实例缓存的对话前缀；
+ * 该实例负载超过二选一结果的两倍时仍按二选一分配，避免热点客户端压垮单个实例。
+ */
+@Slf4j
+public final class OllamaBalancer {
+
+    private final List<OllamaEndpoint> endpoints;
+    private final AiConfig.HealthCheck healthCheck;
+    private final AiConfig.Outlier outlier;
+    private final LongSupplier clock;
+    private Disposable probes;
+    private Disposable warmups;
+
+    OllamaBalancer(List<OllamaEndpoint> endpoints, AiConfig.HealthCheck healthCheck, AiConfig.Outlier outlier,
+                   LongSupplier clock) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个Ollama端点");
+        }
+        this.endpoints = List.copyOf(endpoints);
+        this.healthCheck = healthCheck;
+        this.outlier = outlier;
+        this.clock = clock;
+    }
+
+    public List<OllamaEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * 选择一个实例并计入其未完成请求，调用方结束后必须调用release
+     */
+    public OllamaEndpoint choose() {
+        return choose(null);
+    }
+
+    /**
+     * 按亲和键选择实例，亲和键为空时等同于{@link #choose()}
+     */
+    public OllamaEndpoint choose(String affinityKey) {
+        OllamaEndpoint chosen = select(clock.getAsLong(), affinityKey);
+        chosen.onStart();
+        return chosen;
+    }
+
+    /**
+     * 请求结束：正常完成时按首token耗时判断是否过慢，失败时计入连续失败，取消不影响实例状态
+     */
+    public void release(OllamaEndpoint endpoint, SignalType signal, long ttftNanos) {
+        endpoint.onFinish();
+        if (signal == SignalType.ON_ERROR) {
+            recordFailure(endpoint, "请求失败");
+        } else if (signal == SignalType.ON_COMPLETE) {
+            long slow = outlier.getSlowFirstToken();
+            if (slow > 0 && ttftNanos > TimeUnit.MILLISECONDS.toNanos(slow)) {
+                recordFailure(endpoint, "首token过慢");
+            } else {
+                endpoint.onSuccess();
+            }
+        }
+    }
+
+    /**
+     * 启动主动健康检查，单实例时不检查
+     */
+    public synchronized void start() {
+        if (probes != null || endpoints.size() < 2 || !healthCheck.isEnabled()) {
+            return;
+        }
+        probes = Flux.interval(Duration.ZERO, Duration.ofMillis(healthCheck.getInterval()))
+                .onBackpressureDrop()
+                .concatMap(tick -> Flux.fromIterable(endpoints).flatMap(this::probe))
+                .subscribe();
+        log.info("Ollama健康检查已启动: endpoints={}, interval={}ms", endpoints, healthCheck.getInterval());
+    }
+
+    /**
+     * 在后台向每个实例发送预热请求（如消息为空的/api/chat请求，Ollama只加载模型不生成），失败只记录日志
+     */
+    public synchronized void warmup(String path, Object body, Duration timeout) {
+        if (warmups != null) {
+            return;
+        }
+        warmups = Flux.fromIterable(endpoints)
+                .flatMap(endpoint -> {
+                    long start = System.nanoTime();
+                    return endpoint.client().post()
+                            .uri(path)
+                            .bodyValue(body)
+                            .retrieve()
+                            .toBodilessEntity()
+                            .timeout(timeout)
+                            .doOnSuccess(response -> log.info("Ollama实例{}模型预热完成，耗时{}ms", endpoint,
+                                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)))
+                            .onErrorResume(error -> {
+                                log.warn("Ollama实例{}模型预热失败: {}", endpoint, error.getMessage());
+                                return Mono.empty();
+                            });
+                })
+                .subscribe();
+    }
+
+    public synchronized void stop() {
+        if (probes != null) {
+            probes.dispose();
+            probes = null;
+        }
+        if (warmups != null) {
+            warmups.dispose();
+            warmups = null;
+        }
+    }
+
+    private OllamaEndpoint select(long now, String affinityKey) {
+        List<OllamaEndpoint> candidates = new ArrayList<>(endpoints.size());
+        for (OllamaEndpoint endpoint : endpoints) {
+            if (endpoint.isAvailable(now)) {
+                candidates.add(endpoint);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates = endpoints;
+        }
+        int size = candidates.size();
+        if (size == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        OllamaEndpoint a = candidates.get(first);
+        OllamaEndpoint b = candidates.get(second);
+        OllamaEndpoint balanced = score(a) <= score(b) ? a : b;
+        if (affinityKey == null) {
+            return balanced;
+        }
+        OllamaEndpoint preferred = preferred(candidates, affinityKey);
+        return score(preferred) <= 2 * score(balanced) ? preferred : balanced;
+    }
+
+    /**
+     * 加权最高随机权重哈希：实例增减时只有落在该实例上的键会迁移
+     */
+    private static OllamaEndpoint preferred(List<OllamaEndpoint> candidates, String affinityKey) {
+        OllamaEndpoint preferred = null;
+        double best = -1;
+        for (OllamaEndpoint endpoint : candidates) {
+            long hash = mix(affinityKey.hashCode() * 31L + endpoint.getBaseUrl().hashCode());
+            // 取高53位映射到(0,1)
+            double uniform = ((hash >>> 11) + 0.5) / (1L << 53);
+            double rank = endpoint.getWeight() / -Math.log(uniform);
+            if (rank > best) {
+                best = rank;
+                preferred = endpoint;
+            }
+        }
+        return preferred;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double score(OllamaEndpoint endpoint) {
+        return (endpoint.getOutstanding() + 1.0) / endpoint.getWeight();
+    }
+
+    private void recordFailure(OllamaEndpoint endpoint, String reason) {
+        if (endpoints.size() > 1 && endpoint.onFailure(outlier.getConsecutiveFailures(), clock.getAsLong(),
+                TimeUnit.MILLISECONDS.toNanos(outlier.getEjectionTime()))) {
+            log.warn("Ollama实例{}连续{}，摘除{}ms", endpoint, reason, outlier.getEjectionTime());
+        }
+    }
+
+    /**
+     * 探测单个实例，超时或非2xx视为不健康
+     */
+    Mono<Boolean> probe(OllamaEndpoint endpoint) {
+        return endpoint.client().get()
+                .uri(healthCheck.getPath())
+                .retrieve()
+                .toBodilessEntity()
+                .timeout(Duration.ofMillis(healthCheck.getTimeout()))
+                .map(response -> true)
+                .onErrorReturn(false)
+                .doOnNext(healthy -> {
+                    if (endpoint.markHealthy(healthy)) {
+                        if (healthy) {
+                            log.info("Ollama实例{}健康检查恢复", endpoint);
+                        } else {
+                            log.warn("Ollama实例{}健康检查失败，暂停分配请求", endpoint);
+                        }
+                    }
+                });
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.deepseek.client;
+
+import lombok.Getter;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个Ollama实例
+ * 记录未完成请求数、健康检查结果和被动摘除状态，供负载均衡器选择
+ */
+public final class OllamaEndpoint {
+
+    @Getter
+    private final String baseUrl;
+    @Getter
+    private final int weight;
+    private final WebClient client;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile boolean healthy = true;
+    // 摘除截止时间（System.nanoTime），0表示未摘除
+    private volatile long ejectedUntil;
+
+    OllamaEndpoint(String baseUrl, int weight, WebClient client) {
+        this.baseUrl = baseUrl;
+        this.weight = Math.max(1, weight);
+        this.client = client;
+    }
+
+    public WebClient client() {
+        return client;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * 是否可参与选择：健康检查通过且不在摘除期内
+     */
+    public boolean isAvailable(long now) {
+        long until = ejectedUntil;
+        return healthy && (until == 0 || now - until >= 0);
+    }
+
+    void onStart() {
+        outstanding.incrementAndGet();
+    }
+
+    void onFinish() {
+        outstanding.decrementAndGet();
+    }
+
+    void onSuccess() {
+        consecutiveFailures.set(0);
+    }
+
+    /**
+     * 记录一次失败，连续失败达到阈值时摘除到指定时间
+     *
+     * @return 本次是否触发摘除
+     */
+    boolean onFailure(int threshold, long now, long ejectionNanos) {
+        if (consecutiveFailures.incrementAndGet() < threshold) {
+            return false;
+        }
+        consecutiveFailures.set(0);
+        ejectedUntil = now + ejectionNanos;
+        return true;
+    }
+
+    /**
+     * 更新健康检查结果
+     *
+     * @return 状态是否发生变化
+     */
+    boolean markHealthy(boolean healthy) {
+        boolean changed = this.healthy != healthy;
+        this.healthy = healthy;
+        if (healthy && changed) {
+            consecutiveFailures.set(0);
+        }
+        return changed;
+    }
+
+    @Override
+    public String toString() {
+        return baseUrl;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.deepseek.client;
+
+import com.example.deepseek.config.AiConfig;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * 上游流式请求的截止时间模型
+ * <ul>
+ *     <li>firstChunk - 发出请求到收到首个响应块的最长时间</li>
+ *     <li>idle - 两个响应块之间的最长间隔</li>
+ *     <li>total - 整个流（或阻塞请求）的最长时间</li>
+ * </ul>
+ * 连接超时由连接池层面的 {@link AiClientRegistry} 负责。任何截止时间触发时，
+ * 上游订阅会被取消（底层HTTP连接随之中止），并以 {@link UpstreamTimeoutException} 结束。
+ */
+public record StreamDeadline(Duration firstChunk, Duration idle, Duration total) {
+
+    public static StreamDeadline of(AiConfig.Ollama ollama) {
+        return new StreamDeadline(Duration.ofMillis(ollama.getTimeout()),
+                Duration.ofMillis(ollama.getIdleTimeout()),
+                Duration.ofMillis(ollama.getStreamTimeout()));
+    }
+
+    public static StreamDeadline of(AiConfig.Deepseek deepseek) {
+        return new StreamDeadline(Duration.ofMillis(deepseek.getTimeout()),
+                Duration.ofMillis(deepseek.getIdleTimeout()),
+                Duration.ofMillis(deepseek.getStreamTimeout()));
+    }
+
+    /**
+     * 为流式响应加上首块、块间隔和整体截止时间
+     */
+    public <T> Flux<T> apply(Flux<T> upstream) {
+        return Flux.defer(() -> {
+            long deadlineNanos = System.nanoTime() + total.toNanos();
+            return upstream.timeout(
+                    timeoutSignal(UpstreamTimeoutException.Phase.FIRST_CHUNK, firstChunk, deadlineNanos),
+                    chunk -> timeoutSignal(UpstreamTimeoutException.Phase.IDLE, idle, deadlineNanos));
+        });
+    }
+
+    /**
+     * 为阻塞（非流式）响应加上整体截止时间
+     */
+    public <T> Mono<T> apply(Mono<T> upstream) {
+        return upstream.timeout(Mono.delay(total)
+                .then(Mono.error(new UpstreamTimeoutException(UpstreamTimeoutException.Phase.TOTAL, total))));
+    }
+
+    /**
+     * 取阶段限制与剩余整体时间中较小者作为本次等待的超时信号
+     */
+    private Mono<Object> timeoutSignal(UpstreamTimeoutException.Phase phase, Duration limit, long deadlineNanos) {
+        long remainingNanos = Math.max(0, deadlineNanos - System.nanoTime());
+        if (remainingNanos < limit.toNanos()) {
+            return Mono.delay(Duration.ofNanos(remainingNanos))
+                    .then(Mono.error(new UpstreamTimeoutException(UpstreamTimeoutException.Phase.TOTAL, total)));
+        }
+        return Mono.delay(limit).then(Mono.error(new UpstreamTimeoutException(phase, limit)));
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.deepseek.client;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * 上游请求超时异常
+ * 标明是在哪个阶段超时（首个响应块、响应块间隔、整体时长），便于区分处理和统计。
+ */
+@Getter
+public class UpstreamTimeoutException extends RuntimeException {
+
+    public enum Phase {
+        FIRST_CHUNK("首个响应块"),
+        IDLE("响应块间隔"),
+        TOTAL("整体时长");
+
+        private final String description;
+
+        Phase(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final Phase phase;
+    private final Duration limit;
+
+    public UpstreamTimeoutException(Phase phase, Duration limit) {
+        super("上游" + phase.getDescription() + "超时(" + limit.toMillis() + "ms)", null, false, false);
+        this.phase = phase;
+        this.limit = limit;
+    }
+}
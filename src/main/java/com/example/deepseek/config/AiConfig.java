@@ -1,10 +1,15 @@
 package com.example.deepseek.config;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Slf4j
 @Data
 @Component
@@ -14,6 +19,13 @@ public class AiConfig {
     private Ollama ollama = new Ollama();
     private Deepseek deepseek = new Deepseek();
     private Weather weather = new Weather();
+    private Translate translate = new Translate();
+    private ConversationMemory conversation = new ConversationMemory();
+    private Streaming streaming = new Streaming();
+    // 所有提供商合计的并发上限
+    private Limit limit = new Limit(256, 1024, 30000);
+    private Routing routing = new Routing();
+    private Retry retry = new Retry();
     
     @Data
     public static class Ollama {
@@ -21,6 +33,24 @@ public class AiConfig {
         private String apiPath = "/api/chat";
         private String model = "deepseek-r1:7b";
         private int timeout = 30000;
+        private int connectTimeout = 5000;
+        private int idleTimeout = 30000;
+        private int streamTimeout = 300000;
+        private Pool pool = new Pool();
+        // Ollama串行生成，并发数不宜过大
+        private Limit limit = new Limit(2, 50, 60000);
+        private Adaptive adaptive = new Adaptive();
+        // 多实例时的端点列表，为空则只使用baseUrl
+        private List<Endpoint> endpoints = new ArrayList<>();
+        private HealthCheck healthCheck = new HealthCheck();
+        private Outlier outlier = new Outlier();
+        private Breaker breaker = new Breaker(30000);
+        // 请求结束后模型在内存中保留的时长（Ollama的keep_alive，如30m；-1为常驻），为空则使用Ollama默认值
+        private String keepAlive = "30m";
+        // 启动时在每个端点预先加载model
+        private boolean warmup = true;
+        // 多实例时同一客户端优先使用同一实例，复用该实例缓存的对话前缀
+        private boolean affinity = true;
         
         public String getFullUrl() {
             return baseUrl + apiPath;
@@ -33,6 +63,12 @@ public class AiConfig {
         private String apiPath = "/v1/chat/completions";
         private String model = "deepseek-chat";
         private int timeout = 30000;
+        private int connectTimeout = 5000;
+        private int idleTimeout = 30000;
+        private int streamTimeout = 300000;
+        private Pool pool = new Pool();
+        private Limit limit = new Limit(64, 500, 10000);
+        private Breaker breaker = new Breaker(10000);
         
         public String getFullUrl() {
             return baseUrl + apiPath;
@@ -43,5 +79,242 @@ public class AiConfig {
     public static class Weather {
         private String baseUrl = "https://wttr.in";
         private int timeout = 10000;
+        private int connectTimeout = 3000;
+        private WeatherCache cache = new WeatherCache();
+        private Breaker breaker = new Breaker(5000);
+    }
+    
+    /**
+     * 天气查询缓存配置
+     */
+    @Data
+    public static class WeatherCache {
+        private boolean enabled = true;
+        private long ttl = 600000;
+        private long maxSize = 10000;
+    }
+    
+    @Data
+    public static class Translate {
+        private TranslateCache cache = new TranslateCache();
+        private TranslateBatch batch = new TranslateBatch();
+    }
+    
+    /**
+     * 批量翻译配置：相同片段只翻译一次，短片段按token预算合并为一个请求，长片段按句子拆分
+     */
+    @Data
+    public static class TranslateBatch {
+        // 每个请求的原文token数上限（估算值）
+        private int chunkTokens = 800;
+        // 每个请求合并的片段数上限
+        private int maxSegmentsPerChunk = 20;
+        // 单个批次同时进行的请求数，不超过提供商当前的并发上限
+        private int concurrency = 4;
+        // 单个批次的片段数上限
+        private int maxSegments = 10000;
+    }
+    
+    /**
+     * 翻译结果缓存配置
+     */
+    @Data
+    public static class TranslateCache {
+        private boolean enabled = true;
+        private long maxBytes = 64L * 1024 * 1024;
+        private long ttl = 86400000;
+        // 热点条目快照文件，为空则不落盘
+        private String snapshotFile;
+        private int snapshotMaxEntries = 10000;
+    }
+    
+    /**
+     * 多轮对话记忆配置：按token预算携带最近的历史，单个会话和全部会话按字节数限制，空闲会话过期淘汰
+     */
+    @Data
+    public static class ConversationMemory {
+        private boolean enabled = true;
+        // 每次请求携带的历史token数上限（估算值，含本轮消息）
+        private int historyTokens = 2000;
+        // 单个会话保存的字节数上限，超出时丢弃最早的轮次
+        private int maxBytesPerConversation = 32768;
+        // 全部会话的字节数上限，超出时淘汰不常用的会话
+        private long maxTotalBytes = 256L * 1024 * 1024;
+        // 会话空闲超时（毫秒）
+        private long idleTimeout = 1800000;
+        // 历史超出预算时窗口起点前移，并预留该比例的预算给之后的轮次，使连续几轮请求的历史前缀不变
+        private double prefixHeadroom = 0.25;
+        private ConversationSummary summary = new ConversationSummary();
+    }
+    
+    /**
+     * 早期对话摘要配置：窗口之外的轮次累计达到min-turns时，由模型压缩为摘要，替换这些轮次
+     */
+    @Data
+    public static class ConversationSummary {
+        private boolean enabled = false;
+        private int minTurns = 6;
+        // 摘要的token数上限（估算值），超出时截断
+        private int maxTokens = 300;
+    }
+    
+    /**
+     * 流式输出配置：发送前合并token，减少SSE帧和写刷新次数
+     */
+    @Data
+    public static class Streaming {
+        private boolean coalesce = true;
+        // 累计字节数达到该值时发送
+        private int maxBytes = 256;
+        // 首个token等待超过该时长（毫秒）时发送
+        private long maxDelay = 50;
+        // 遇到句末标点或换行时发送
+        private boolean sentenceBoundary = true;
+        // 等待写出的最大分段数，客户端较慢时以此限制向上游的请求量
+        private int sendBuffer = 4;
+    }
+    
+    /**
+     * 并发限制配置：最大并发请求数、最大排队数、排队超时（毫秒）
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Limit {
+        private int maxInFlight = 16;
+        private int maxQueue = 100;
+        private long queueTimeout = 30000;
+    }
+    
+    /**
+     * 自适应并发上限配置：初始值取limit.max-in-flight，在[minLimit, maxLimit]内调整
+     */
+    @Data
+    public static class Adaptive {
+        private boolean enabled = true;
+        private int minLimit = 1;
+        private int maxLimit = 8;
+        // 首token耗时超过基线的倍数（或生成速率低于基线的倍数分之一）视为拥塞
+        private double tolerance = 2.0;
+        // 拥塞或失败时的下调比例
+        private double backoffRatio = 0.75;
+    }
+    
+    /**
+     * 重试配置：只重试尚未收到任何数据的失败（连接失败、502/503/504、429），指数退避加随机抖动，
+     * 所有上游共享一个重试预算
+     */
+    @Data
+    public static class Retry {
+        private boolean enabled = true;
+        // 包含首次请求在内的最大尝试次数
+        private int maxAttempts = 3;
+        private long initialBackoff = 200;
+        private long maxBackoff = 5000;
+        private double multiplier = 2.0;
+        // 随机抖动比例，1.0表示在[0, 退避时长]内均匀取值
+        private double jitter = 0.5;
+        // 重试次数占总请求数的比例上限，以及允许的突发次数
+        private double budget = 0.2;
+        private int burst = 20;
+        // 429/503的Retry-After超过该值（毫秒）时不再重试
+        private long maxRetryAfter = 10000;
+    }
+    
+    /**
+     * 熔断器配置：按最近windowSize次调用统计失败率和慢调用率，超过阈值后熔断openDuration毫秒，
+     * 之后半开放行halfOpenCalls个探测请求，全部正常则恢复，否则继续熔断
+     */
+    @Data
+    @NoArgsConstructor
+    public static class Breaker {
+        private boolean enabled = true;
+        private int windowSize = 20;
+        // 窗口内调用数达到该值后才计算比例
+        private int minimumCalls = 10;
+        // 失败率阈值（百分比）
+        private int failureRateThreshold = 50;
+        // 首个响应块（同步调用为整体）耗时超过该值（毫秒）视为慢调用
+        private long slowCallThreshold = 30000;
+        // 慢调用率阈值（百分比）
+        private int slowCallRateThreshold = 80;
+        private long openDuration = 30000;
+        private int halfOpenCalls = 2;
+        
+        public Breaker(long slowCallThreshold) {
+            this.slowCallThreshold = slowCallThreshold;
+        }
+    }
+    
+    /**
+     * 提供商路由配置：首选提供商无响应时切换或对冲到另一提供商（DeepSeek需已设置API Key）
+     */
+    @Data
+    public static class Routing {
+        private Policy policy = Policy.NONE;
+        // failover：超过该时长（毫秒）仍无首个响应块时切换
+        private long failoverDeadline = 15000;
+        // hedge：按首选提供商首token耗时的p95发起对冲请求，无样本时使用hedgeDelay
+        private long hedgeDelay = 5000;
+        private long minHedgeDelay = 500;
+        private long maxHedgeDelay = 30000;
+        // 对冲请求占总请求的比例上限，以及允许的突发次数
+        private double hedgeBudget = 0.1;
+        private int hedgeBurst = 10;
+
+        public enum Policy {
+            // 只请求选中的提供商
+            NONE,
+            // 首选提供商失败或超时未响应时切换
+            FAILOVER,
+            // 首选提供商迟迟未响应时同时请求另一提供商，先响应者胜出
+            HEDGE
+        }
+    }
+    
+    /**
+     * Ollama端点配置：权重越大分到的并发请求越多
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Endpoint {
+        private String baseUrl;
+        private int weight = 1;
+    }
+    
+    /**
+     * 端点主动健康检查配置
+     */
+    @Data
+    public static class HealthCheck {
+        private boolean enabled = true;
+        private String path = "/api/tags";
+        private long interval = 10000;
+        private long timeout = 3000;
+    }
+    
+    /**
+     * 端点被动摘除配置：连续失败（或首token过慢）达到次数后摘除一段时间
+     */
+    @Data
+    public static class Outlier {
+        private int consecutiveFailures = 3;
+        private long ejectionTime = 30000;
+        // 首token耗时超过该值（毫秒）按失败计，0表示不检查
+        private long slowFirstToken = 20000;
+    }
+    
+    /**
+     * 上游连接池配置（每个AI提供商一个连接池）
+     */
+    @Data
+    public static class Pool {
+        private int maxConnections = 100;
+        private int pendingAcquireMaxCount = 500;
+        private long pendingAcquireTimeout = 10000;
+        private long maxIdleTime = 30000;
+        private long maxLifeTime = 300000;
+        private boolean keepAlive = true;
     }
 } 
\ No newline at end of file
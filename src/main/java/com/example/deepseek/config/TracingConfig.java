@@ -0,0 +1,49 @@
+package com.example.deepseek.config;
+
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
+import brave.propagation.TraceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * 链路追踪导出配置
+ * Spring Boot会把所有SpanHandler Bean注册到追踪器，导出方式可插拔：加入zipkin-reporter-brave等依赖即可导出到对应后端。
+ * 这里提供一个输出到日志的导出器（ai.tracing.log-spans=true时启用），不依赖外部后端也能查看各阶段耗时。
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "ai.tracing", name = "log-spans", havingValue = "true")
+public class TracingConfig {
+
+    @Bean
+    public SpanHandler loggingSpanHandler() {
+        return new LoggingSpanHandler();
+    }
+
+    /**
+     * 把结束的span输出到日志，事件按相对span开始的毫秒数显示
+     */
+    @Slf4j
+    static class LoggingSpanHandler extends SpanHandler {
+
+        @Override
+        public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+            if (cause != Cause.FINISHED) {
+                return true;
+            }
+            StringJoiner events = new StringJoiner(", ", "[", "]");
+            for (Map.Entry<Long, String> annotation : span.annotations()) {
+                events.add(annotation.getValue() + "@" + (annotation.getKey() - span.startTimestamp()) / 1000 + "ms");
+            }
+            log.info("span {} traceId={} spanId={} parentId={} 耗时{}ms 标签={} 事件={}", span.name(),
+                    span.traceId(), span.id(), span.parentId(),
+                    (span.finishTimestamp() - span.startTimestamp()) / 1000, span.tags(), events);
+            return true;
+        }
+    }
+}
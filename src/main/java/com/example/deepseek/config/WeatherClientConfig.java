@@ -0,0 +1,30 @@
+package com.example.deepseek.config;
+
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+@Configuration
+public class WeatherClientConfig {
+
+    /**
+     * 天气API使用的RestTemplate，应用连接超时和读取超时
+     * 响应式运行方式下Spring Boot不提供RestTemplateBuilder，此时使用默认构建器，并手动注册ObservationRegistry，
+     * 两种运行方式下天气请求都会生成http.client.requests观测（span）
+     */
+    @Bean
+    public RestTemplate weatherRestTemplate(ObjectProvider<RestTemplateBuilder> builder, AiConfig aiConfig,
+                                            ObservationRegistry observationRegistry) {
+        RestTemplate restTemplate = builder.getIfAvailable(RestTemplateBuilder::new)
+                .setConnectTimeout(Duration.ofMillis(aiConfig.getWeather().getConnectTimeout()))
+                .setReadTimeout(Duration.ofMillis(aiConfig.getWeather().getTimeout()))
+                .build();
+        restTemplate.setObservationRegistry(observationRegistry);
+        return restTemplate;
+    }
+}
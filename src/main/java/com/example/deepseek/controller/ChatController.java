@@ -4,14 +4,18 @@ import com.example.deepseek.service.ChatService;
 import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @Slf4j
 @Controller
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequiredArgsConstructor
 public class ChatController {
     
@@ -22,12 +26,28 @@ public class ChatController {
         return "chat";
     }
 
+    /**
+     * 流式聊天，conversationId区分同一会话内的多个对话（为空时使用默认对话）
+     */
     @GetMapping("/chat/stream")
     @ResponseBody
-    public SseEmitter streamChat(@RequestParam String message, HttpSession session) {
+    public SseEmitter streamChat(@RequestParam String message,
+                                 @RequestParam(required = false) String conversationId,
+                                 HttpSession session) {
         SseEmitter emitter = new SseEmitter();
-        chatService.streamChat(message, session, emitter);
+        chatService.streamChat(message, conversationId, session, emitter);
         return emitter;
     }
+
+    /**
+     * 清空对话记忆，开始新话题
+     */
+    @PostMapping("/chat/reset")
+    @ResponseBody
+    public ResponseEntity<Void> resetConversation(@RequestParam(required = false) String conversationId,
+                                                  HttpSession session) {
+        chatService.resetConversation(conversationId, session);
+        return ResponseEntity.noContent().build();
+    }
 }
  
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.example.deepseek.controller;
+
+import com.example.deepseek.batch.BatchTranslationRequest;
+import com.example.deepseek.service.ChatService;
+import com.example.deepseek.service.TranslateService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+/**
+ * 响应式流式端点
+ * 直接返回SSE事件流，不依赖Servlet会话；在Tomcat和Netty（netty profile）下路径与行为一致，便于对比压测。
+ * 提供商通过provider参数指定（默认本地Ollama），DeepSeek的API Key通过请求头传入；
+ * 客户端标识（用于并发限制的公平排队）通过X-Client-Id请求头传入；
+ * 传入客户端标识时，聊天按客户端标识和conversationId保存对话记忆。
+ * 批量翻译接受JSON（targetLang、segments）或每行一个片段的纯文本，逐个返回片段译文，最后以done事件返回汇总。
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/reactive")
+public class ReactiveStreamController {
+
+    static final String API_KEY_HEADER = "X-DeepSeek-Api-Key";
+    static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+    private final ChatService chatService;
+    private final TranslateService translateService;
+
+    @GetMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> streamChat(@RequestParam String message,
+                                                    @RequestParam(required = false) String conversationId,
+                                                    @RequestParam(defaultValue = "ollama") String provider,
+                                                    @RequestHeader(value = API_KEY_HEADER, required = false) String apiKey,
+                                                    @RequestHeader(value = CLIENT_ID_HEADER, required = false) String clientId) {
+        return chatService.chatEvents(message, conversationId, provider, apiKey, clientId);
+    }
+
+    @GetMapping(value = "/translate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> translateStream(@RequestParam String text,
+                                                         @RequestParam String targetLang,
+                                                         @RequestParam(defaultValue = "ollama") String provider,
+                                                         @RequestHeader(value = API_KEY_HEADER, required = false) String apiKey,
+                                                         @RequestHeader(value = CLIENT_ID_HEADER, required = false) String clientId) {
+        return translateService.translateEvents(text, targetLang, provider, apiKey, clientId);
+    }
+
+    @PostMapping(value = "/translate/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> translateBatch(@RequestBody BatchTranslationRequest request,
+                                                        @RequestParam(defaultValue = "ollama") String provider,
+                                                        @RequestHeader(value = API_KEY_HEADER, required = false) String apiKey,
+                                                        @RequestHeader(value = CLIENT_ID_HEADER, required = false) String clientId) {
+        return translateService.batchEvents(request.segments(), request.targetLang(), provider, apiKey, clientId);
+    }
+
+    @PostMapping(value = "/translate/batch", consumes = MediaType.TEXT_PLAIN_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> translateBatchLines(@RequestBody String text,
+                                                             @RequestParam String targetLang,
+                                                             @RequestParam(defaultValue = "ollama") String provider,
+                                                             @RequestHeader(value = API_KEY_HEADER, required = false) String apiKey,
+                                                             @RequestHeader(value = CLIENT_ID_HEADER, required = false) String clientId) {
+        BatchTranslationRequest request = BatchTranslationRequest.fromLines(targetLang, text);
+        return translateService.batchEvents(request.segments(), request.targetLang(), provider, apiKey, clientId);
+    }
+}
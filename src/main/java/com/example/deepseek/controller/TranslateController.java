@@ -1,13 +1,19 @@
 package com.example.deepseek.controller;
 
+import com.example.deepseek.batch.BatchTranslationRequest;
 import com.example.deepseek.service.TranslateService;
 import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 
 @Controller
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequiredArgsConstructor
 public class TranslateController {
     
@@ -25,4 +31,28 @@ public class TranslateController {
         translateService.streamTranslate(text, targetLang, session, emitter);
         return emitter;
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 批量翻译：请求体为JSON（targetLang、segments）
+     */
+    @PostMapping(value = "/translate/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public Flux<ServerSentEvent<Object>> translateBatch(@RequestBody BatchTranslationRequest request,
+                                                        HttpSession session) {
+        return translateService.batchEvents(request.segments(), request.targetLang(), session);
+    }
+    
+    /**
+     * 批量翻译：请求体为纯文本文件，每行一个片段
+     */
+    @PostMapping(value = "/translate/batch", consumes = MediaType.TEXT_PLAIN_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public Flux<ServerSentEvent<Object>> translateBatchLines(@RequestBody String text,
+                                                             @RequestParam String targetLang,
+                                                             HttpSession session) {
+        BatchTranslationRequest request = BatchTranslationRequest.fromLines(targetLang, text);
+        return translateService.batchEvents(request.segments(), request.targetLang(), session);
+    }
+}
@@ -1,20 +1,20 @@
 package com.example.deepseek.controller;
 
 import com.example.deepseek.service.WeatherService;
-import jakarta.servlet.http.HttpSession;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
-
-import java.io.IOException;
-import java.io.PrintWriter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @Slf4j
 @Controller
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequiredArgsConstructor
 public class WeatherController {
     
@@ -29,56 +29,13 @@ public class WeatherController {
      * 流式天气查询接口
      */
     @GetMapping(value = "/weather/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public void getWeatherStream(@RequestParam String city, 
-                                HttpSession session, 
-                                HttpServletResponse response) {
-        try {
-            log.info("开始流式天气查询: {}", city);
-            
-            // 设置SSE响应头
-            response.setContentType("text/event-stream");
-            response.setCharacterEncoding("UTF-8");
-            response.setHeader("Cache-Control", "no-cache");
-            response.setHeader("Connection", "keep-alive");
-            response.setHeader("Access-Control-Allow-Origin", "*");
-            
-            PrintWriter writer = response.getWriter();
-            
-            // 发送初始消息
-            writer.write("data: 正在智能查询 " + city + " 的天气信息...\n\n");
-            writer.flush();
-            
-            // 获取天气信息 - 使用AI智能查询
-            String weatherInfo = weatherService.getWeatherViaAI(city, session);
-            
-            // 模拟流式输出
-            String[] lines = weatherInfo.split("\n");
-            for (String line : lines) {
-                if (!line.trim().isEmpty()) {
-                    writer.write("data: " + line + "\n\n");
-                    writer.flush();
-                    
-                    // 添加小延迟模拟流式效果
-                    Thread.sleep(100);
-                }
-            }
-            
-            // 发送完成信号
-            writer.write("data: [DONE]\n\n");
-            writer.flush();
-            
-            log.info("流式天气查询完成: {}", city);
-            
-        } catch (Exception e) {
-            log.error("流式天气查询异常: {}", e.getMessage(), e);
-            try {
-                PrintWriter writer = response.getWriter();
-                writer.write("data: 查询天气信息时出现错误，请稍后重试。\n\n");
-                writer.write("data: [DONE]\n\n");
-                writer.flush();
-            } catch (IOException ex) {
-                log.error("发送错误信息失败: {}", ex.getMessage());
-            }
-        }
+    @ResponseBody
+    public SseEmitter getWeatherStream(@RequestParam String city, HttpSession session,
+                                       HttpServletResponse response) {
+        log.info("开始流式天气查询: {}", city);
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        SseEmitter emitter = new SseEmitter();
+        weatherService.streamWeather(city, session, emitter);
+        return emitter;
     }
-} 
\ No newline at end of file
+}
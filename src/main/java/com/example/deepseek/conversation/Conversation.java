@@ -0,0 +1,247 @@
+package com.example.deepseek.conversation;
+
+import com.example.deepseek.stream.TokenEstimator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个会话的对话记忆
+ * 每条消息以UTF-8字节数组保存，角色使用驻留的字符串，token数在写入时估算一次；
+ * 保存的字节数超过上限时丢弃最早的消息。早期消息可被压缩为一段摘要，作为系统消息放在历史最前面。
+ * 线程安全：同一会话的并发请求共享一个实例。
+ */
+public final class Conversation {
+
+    public static final String USER = "user";
+    public static final String ASSISTANT = "assistant";
+    public static final String SYSTEM = "system";
+
+    // 估算的对象开销（字节），计入会话占用
+    static final int CONVERSATION_OVERHEAD = 160;
+    static final int MESSAGE_OVERHEAD = 48;
+
+    private static final String SUMMARY_PREFIX = "以下是之前对话的摘要：\n";
+
+    private final int maxBytes;
+    private final ArrayDeque<Message> messages = new ArrayDeque<>();
+    private int bytes;
+    // 队首消息的序号，丢弃或压缩消息时递增，用于判断摘要对应的消息是否仍在
+    private long firstSeq;
+    // 上次历史窗口起点的序号，-1表示尚未确定
+    private long anchorSeq = -1;
+    private byte[] summary;
+    private int summaryTokens;
+    private boolean summarizing;
+
+    /**
+     * 一条用户或助手消息
+     */
+    record Message(String role, byte[] content, int tokens) {
+
+        String text() {
+            return new String(content, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 本次请求携带的历史
+     *
+     * @param messages      按时间顺序的历史消息（role/content），摘要在最前面
+     * @param excludedMessages 因超出token预算未携带的早期消息数
+     */
+    public record Window(List<Map<String, String>> messages, int excludedMessages) {
+    }
+
+    /**
+     * 待压缩的早期消息
+     *
+     * @param text  已有摘要和这些消息的对话文本
+     * @param toSeq 压缩到的消息序号（不含）
+     */
+    public record SummaryTask(String text, long toSeq) {
+    }
+
+    public Conversation(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 追加一轮问答，超出字节上限时丢弃最早的消息
+     */
+    public synchronized void append(String userMessage, String answer) {
+        add(USER, userMessage);
+        add(ASSISTANT, answer);
+        trim();
+    }
+
+    private void add(String role, String content) {
+        byte[] encoded = content.getBytes(StandardCharsets.UTF_8);
+        messages.addLast(new Message(role, encoded, TokenEstimator.estimate(content)));
+        bytes += encoded.length;
+    }
+
+    /**
+     * 超出字节上限时丢弃最早的消息，保证剩余消息以用户消息开头
+     */
+    private void trim() {
+        while (bytes + summaryBytes() > maxBytes && !messages.isEmpty()) {
+            removeFirst();
+        }
+        while (!messages.isEmpty() && !USER.equals(messages.peekFirst().role())) {
+            removeFirst();
+        }
+    }
+
+    private void removeFirst() {
+        bytes -= messages.removeFirst().content().length;
+        firstSeq++;
+    }
+
+    /**
+     * 在token预算内从最近的消息往前取历史，见{@link #window(int, int)}
+     */
+    public Window window(int budgetTokens) {
+        return window(budgetTokens, 0);
+    }
+
+    /**
+     * 在token预算内取历史；摘要优先占用预算，窗口总是从用户消息开始，避免以助手回复开头。
+     * 窗口起点保持不变，只在历史超出预算时前移：前移后从最近的消息往前取，并预留headroomTokens给之后的轮次。
+     * 这样连续几轮请求的历史前缀相同，Ollama（同一实例）和DeepSeek可以复用已计算的前缀（KV缓存/上下文缓存）。
+     */
+    public synchronized Window window(int budgetTokens, int headroomTokens) {
+        int remaining = budgetTokens;
+        boolean withSummary = summary != null && summaryTokens <= remaining;
+        if (withSummary) {
+            remaining -= summaryTokens;
+        }
+        List<Message> recent = anchored(remaining);
+        if (recent == null) {
+            recent = newest(Math.max(0, remaining - headroomTokens));
+            anchorSeq = firstSeq + messages.size() - recent.size();
+        }
+        List<Map<String, String>> history = new ArrayList<>(recent.size() + 1);
+        if (withSummary) {
+            history.add(Map.of("role", SYSTEM, "content",
+                    SUMMARY_PREFIX + new String(summary, StandardCharsets.UTF_8)));
+        }
+        for (Message message : recent) {
+            history.add(Map.of("role", message.role(), "content", message.text()));
+        }
+        return new Window(Collections.unmodifiableList(history), messages.size() - recent.size());
+    }
+
+    /**
+     * 从上次的窗口起点到最新消息，超出预算或起点已被丢弃时返回null
+     */
+    private List<Message> anchored(int budgetTokens) {
+        if (anchorSeq < firstSeq) {
+            return null;
+        }
+        List<Message> recent = new ArrayList<>();
+        int tokens = 0;
+        long seq = firstSeq;
+        for (Message message : messages) {
+            if (seq++ < anchorSeq) {
+                continue;
+            }
+            tokens += message.tokens();
+            if (tokens > budgetTokens) {
+                return null;
+            }
+            recent.add(message);
+        }
+        return recent;
+    }
+
+    /**
+     * 从最近的消息往前取，直到超出预算
+     */
+    private List<Message> newest(int budgetTokens) {
+        int remaining = budgetTokens;
+        List<Message> recent = new ArrayList<>();
+        Iterator<Message> newest = messages.descendingIterator();
+        while (newest.hasNext()) {
+            Message message = newest.next();
+            if (message.tokens() > remaining) {
+                break;
+            }
+            remaining -= message.tokens();
+            recent.add(message);
+        }
+        Collections.reverse(recent);
+        if (!recent.isEmpty() && !USER.equals(recent.get(0).role())) {
+            recent.remove(0);
+        }
+        return recent;
+    }
+
+    /**
+     * 开始压缩最早的count条消息（取整到完整的一问一答），已有压缩在进行时返回null
+     */
+    public synchronized SummaryTask startSummary(int count) {
+        int pairs = Math.min(count, messages.size()) / 2 * 2;
+        if (summarizing || pairs == 0) {
+            return null;
+        }
+        summarizing = true;
+        StringBuilder text = new StringBuilder();
+        if (summary != null) {
+            text.append("之前的摘要：").append(new String(summary, StandardCharsets.UTF_8)).append("\n\n");
+        }
+        Iterator<Message> oldest = messages.iterator();
+        for (int i = 0; i < pairs; i++) {
+            Message message = oldest.next();
+            text.append(USER.equals(message.role()) ? "用户：" : "助手：").append(message.text()).append('\n');
+        }
+        return new SummaryTask(text.toString(), firstSeq + pairs);
+    }
+
+    /**
+     * 用摘要替换已压缩的消息；压缩期间已被丢弃的消息不再重复处理
+     */
+    public synchronized void finishSummary(SummaryTask task, String text) {
+        summarizing = false;
+        if (text == null || text.isBlank()) {
+            return;
+        }
+        while (firstSeq < task.toSeq() && !messages.isEmpty()) {
+            removeFirst();
+        }
+        summary = text.strip().getBytes(StandardCharsets.UTF_8);
+        summaryTokens = TokenEstimator.estimate(SUMMARY_PREFIX) + TokenEstimator.estimate(text);
+        trim();
+    }
+
+    /**
+     * 压缩失败，下次请求时重试
+     */
+    public synchronized void abortSummary() {
+        summarizing = false;
+    }
+
+    /**
+     * 估算的内存占用（字节）
+     */
+    public synchronized int weight() {
+        return CONVERSATION_OVERHEAD + bytes + summaryBytes() + messages.size() * MESSAGE_OVERHEAD;
+    }
+
+    public synchronized int size() {
+        return messages.size();
+    }
+
+    public synchronized String getSummary() {
+        return summary == null ? null : new String(summary, StandardCharsets.UTF_8);
+    }
+
+    private int summaryBytes() {
+        return summary == null ? 0 : summary.length;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.deepseek.conversation;
+
+import com.example.deepseek.config.AiConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * 对话记忆存储
+ * 以“会话标识|conversationId”为键，按估算的内存占用（字节）限制全部会话的总大小，
+ * 空闲超过idle-timeout的会话过期淘汰。统计通过Micrometer以 cache.* 指标暴露（cache=conversation）。
+ */
+@Component
+public class ConversationStore {
+
+    // conversationId最大长度，避免客户端用超长标识占用内存
+    static final int MAX_ID_LENGTH = 64;
+    private static final String DEFAULT_ID = "default";
+
+    private final boolean enabled;
+    private final int maxBytesPerConversation;
+    private final Cache<String, Conversation> cache;
+
+    public ConversationStore(AiConfig aiConfig, MeterRegistry meterRegistry) {
+        AiConfig.ConversationMemory spec = aiConfig.getConversation();
+        this.enabled = spec.isEnabled();
+        this.maxBytesPerConversation = spec.getMaxBytesPerConversation();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(spec.getMaxTotalBytes())
+                .weigher((String key, Conversation conversation) -> key.getBytes(StandardCharsets.UTF_8).length
+                        + conversation.weight())
+                .expireAfterAccess(Duration.ofMillis(spec.getIdleTimeout()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "conversation");
+    }
+
+    /**
+     * 生成存储键，conversationId为空时使用默认会话
+     */
+    public static String key(String owner, String conversationId) {
+        String id = conversationId == null || conversationId.isBlank() ? DEFAULT_ID : conversationId.strip();
+        if (id.length() > MAX_ID_LENGTH) {
+            id = id.substring(0, MAX_ID_LENGTH);
+        }
+        return owner + '|' + id;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 获取会话，不存在时创建
+     */
+    public Conversation get(String key) {
+        return cache.get(key, k -> new Conversation(maxBytesPerConversation));
+    }
+
+    /**
+     * 会话内容变化后重新计算占用；会话已被淘汰或替换时不再放回
+     */
+    public void update(String key, Conversation conversation) {
+        cache.asMap().replace(key, conversation, conversation);
+    }
+
+    /**
+     * 清空会话
+     */
+    public void clear(String key) {
+        cache.invalidate(key);
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * 当前全部会话的估算占用（字节）
+     */
+    long weightedSize() {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    void cleanUp() {
+        cache.cleanUp();
+    }
+}
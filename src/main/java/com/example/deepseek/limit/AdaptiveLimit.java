@@ -0,0 +1,92 @@
+package com.example.deepseek.limit;
+
+import com.example.deepseek.config.AiConfig;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 自适应并发上限（AIMD）
+ * 以首个token耗时和每秒token数为信号：与基线相比明显变差或请求失败时按比例下调上限，
+ * 未拥塞且有排队需求时每轮（约limit个样本）上调1。基线分别是缓慢上浮的最小首token耗时和缓慢下降的最大生成速率，
+ * 模型或主机负载变化后会逐渐跟随。
+ */
+@Slf4j
+public final class AdaptiveLimit {
+
+    // 基线每个样本的漂移比例
+    private static final double DRIFT = 0.01;
+
+    private final FairConcurrencyLimiter limiter;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoffRatio;
+
+    private double limit;
+    private double baselineTtft = Double.NaN;
+    private double baselineTokensPerSecond = Double.NaN;
+
+    public AdaptiveLimit(FairConcurrencyLimiter limiter, AiConfig.Adaptive adaptive) {
+        this.limiter = limiter;
+        this.minLimit = Math.max(1, adaptive.getMinLimit());
+        this.maxLimit = Math.max(minLimit, adaptive.getMaxLimit());
+        this.tolerance = adaptive.getTolerance();
+        this.backoffRatio = adaptive.getBackoffRatio();
+        this.limit = Math.min(maxLimit, Math.max(minLimit, limiter.getMaxInFlight()));
+        limiter.setMaxInFlight((int) limit);
+    }
+
+    /**
+     * 记录一次正常结束的请求
+     *
+     * @param ttftNanos       获得许可到首个响应块的耗时
+     * @param tokensPerSecond 首个响应块之后的生成速率，未知时传0
+     */
+    public synchronized void onSample(long ttftNanos, double tokensPerSecond) {
+        double ttft = ttftNanos;
+        baselineTtft = Double.isNaN(baselineTtft) ? ttft : Math.min(ttft, baselineTtft * (1 + DRIFT));
+        if (tokensPerSecond > 0) {
+            baselineTokensPerSecond = Double.isNaN(baselineTokensPerSecond)
+                    ? tokensPerSecond
+                    : Math.max(tokensPerSecond, baselineTokensPerSecond * (1 - DRIFT));
+        }
+
+        boolean congested = ttft > baselineTtft * tolerance
+                || tokensPerSecond > 0 && tokensPerSecond < baselineTokensPerSecond / tolerance;
+        if (congested) {
+            decrease();
+        } else if (isSaturated()) {
+            update(Math.min(maxLimit, limit + 1.0 / limit));
+        }
+    }
+
+    /**
+     * 记录一次失败（超时、连接失败等）的请求
+     */
+    public synchronized void onFailure() {
+        decrease();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    private void decrease() {
+        update(Math.max(minLimit, limit * backoffRatio));
+    }
+
+    /**
+     * 有排队或并发已用满时才值得上调
+     */
+    private boolean isSaturated() {
+        return limiter.getQueued() > 0 || limiter.getInFlight() + 1 >= (int) limit;
+    }
+
+    private void update(double newLimit) {
+        int previous = (int) limit;
+        limit = newLimit;
+        if ((int) newLimit != previous) {
+            log.info("{}并发上限调整: {} -> {}", limiter.getName(), previous, (int) newLimit);
+            limiter.setMaxInFlight((int) newLimit);
+        }
+    }
+}
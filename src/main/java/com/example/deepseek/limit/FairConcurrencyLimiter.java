@@ -0,0 +1,251 @@
+package com.example.deepseek.limit;
+
+import com.example.deepseek.config.AiConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 公平并发限制器
+ * 同时执行的请求数不超过上限，超出的请求按客户端（会话）分队排队，许可释放时在客户端之间轮转分配，
+ * 单个客户端的大量请求不会饿死其他客户端。排队数已满时立即拒绝，排队超过时限时以超时拒绝。
+ */
+public final class FairConcurrencyLimiter {
+
+    private final String name;
+    private final int maxQueue;
+    private final long queueTimeout;
+    private final Scheduler timer;
+
+    private int maxInFlight;
+    private int inFlight;
+    private int queued;
+    // 每个客户端一个FIFO队列；LinkedHashMap的顺序即轮转顺序
+    private final Map<String, ArrayDeque<Waiter>> queues = new LinkedHashMap<>();
+
+    private final Timer waitTimer;
+    private final Counter queueFullCounter;
+    private final Counter queueTimeoutCounter;
+
+    public FairConcurrencyLimiter(String name, AiConfig.Limit limit, Scheduler timer, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxInFlight = Math.max(1, limit.getMaxInFlight());
+        this.maxQueue = Math.max(0, limit.getMaxQueue());
+        this.queueTimeout = limit.getQueueTimeout();
+        this.timer = timer;
+
+        Gauge.builder("ai.limiter.in.flight", this, FairConcurrencyLimiter::getInFlight)
+                .description("正在执行的上游请求数").tag("limiter", name).register(meterRegistry);
+        Gauge.builder("ai.limiter.queue.depth", this, FairConcurrencyLimiter::getQueued)
+                .description("排队等待的上游请求数").tag("limiter", name).register(meterRegistry);
+        Gauge.builder("ai.limiter.limit", this, FairConcurrencyLimiter::getMaxInFlight)
+                .description("当前并发上限").tag("limiter", name).register(meterRegistry);
+        this.waitTimer = Timer.builder("ai.limiter.wait")
+                .description("获得执行许可前的排队时长").tag("limiter", name).register(meterRegistry);
+        this.queueFullCounter = rejectedCounter(meterRegistry, LimitExceededException.Reason.QUEUE_FULL);
+        this.queueTimeoutCounter = rejectedCounter(meterRegistry, LimitExceededException.Reason.QUEUE_TIMEOUT);
+    }
+
+    /**
+     * 在获得许可后订阅source，source结束、出错或被取消时释放许可
+     */
+    public <T> Flux<T> limit(String clientId, Flux<T> source) {
+        return acquire(clientId).flatMapMany(permit -> source.doFinally(signal -> permit.release()));
+    }
+
+    /**
+     * 申请执行许可；排队中取消会退出队列，许可发出时订阅方已取消则立即归还
+     */
+    public Mono<Permit> acquire(String clientId) {
+        String key = clientId != null ? clientId : "";
+        return Mono.<Permit>create(sink -> {
+            Waiter waiter = null;
+            Permit permit = null;
+            synchronized (this) {
+                if (inFlight < maxInFlight && queued == 0) {
+                    inFlight++;
+                    permit = new Permit();
+                } else if (queued < maxQueue) {
+                    waiter = new Waiter(key, sink, System.nanoTime());
+                    queues.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(waiter);
+                    queued++;
+                }
+            }
+            if (permit != null) {
+                waitTimer.record(0, TimeUnit.NANOSECONDS);
+                sink.success(permit);
+            } else if (waiter == null) {
+                queueFullCounter.increment();
+                sink.error(new LimitExceededException(name, LimitExceededException.Reason.QUEUE_FULL));
+            } else {
+                Waiter queuedWaiter = waiter;
+                sink.onCancel(() -> leave(queuedWaiter));
+                if (queueTimeout > 0) {
+                    queuedWaiter.timeoutTask = timer.schedule(() -> expire(queuedWaiter),
+                            queueTimeout, TimeUnit.MILLISECONDS);
+                }
+            }
+        }).doOnDiscard(Permit.class, Permit::release);
+    }
+
+    /**
+     * 调整并发上限（自适应限流使用），调大时立即放行排队请求
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        synchronized (this) {
+            this.maxInFlight = Math.max(1, maxInFlight);
+        }
+        dispatch();
+    }
+
+    public synchronized int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+        dispatch();
+    }
+
+    /**
+     * 在并发上限内按客户端轮转放行排队请求
+     */
+    private void dispatch() {
+        List<Waiter> granted = null;
+        synchronized (this) {
+            while (inFlight < maxInFlight && queued > 0) {
+                Waiter waiter = pollNext();
+                inFlight++;
+                if (granted == null) {
+                    granted = new ArrayList<>();
+                }
+                granted.add(waiter);
+            }
+        }
+        if (granted != null) {
+            for (Waiter waiter : granted) {
+                if (waiter.timeoutTask != null) {
+                    waiter.timeoutTask.dispose();
+                }
+                waitTimer.record(System.nanoTime() - waiter.enqueuedAt, TimeUnit.NANOSECONDS);
+                waiter.sink.success(new Permit());
+            }
+        }
+    }
+
+    /**
+     * 取出轮转顺序中第一个客户端的队首请求，并把该客户端移到末尾
+     */
+    private Waiter pollNext() {
+        Iterator<Map.Entry<String, ArrayDeque<Waiter>>> it = queues.entrySet().iterator();
+        Map.Entry<String, ArrayDeque<Waiter>> first = it.next();
+        ArrayDeque<Waiter> queue = first.getValue();
+        Waiter waiter = queue.pollFirst();
+        it.remove();
+        if (!queue.isEmpty()) {
+            queues.put(first.getKey(), queue);
+        }
+        queued--;
+        waiter.dequeued = true;
+        return waiter;
+    }
+
+    /**
+     * 从队列中移除等待者，返回是否仍在队列中
+     */
+    private synchronized boolean remove(Waiter waiter) {
+        if (waiter.dequeued) {
+            return false;
+        }
+        ArrayDeque<Waiter> queue = queues.get(waiter.clientId);
+        queue.remove(waiter);
+        if (queue.isEmpty()) {
+            queues.remove(waiter.clientId);
+        }
+        queued--;
+        waiter.dequeued = true;
+        return true;
+    }
+
+    private void leave(Waiter waiter) {
+        if (remove(waiter) && waiter.timeoutTask != null) {
+            waiter.timeoutTask.dispose();
+        }
+    }
+
+    private void expire(Waiter waiter) {
+        if (remove(waiter)) {
+            queueTimeoutCounter.increment();
+            waiter.sink.error(new LimitExceededException(name, LimitExceededException.Reason.QUEUE_TIMEOUT));
+        }
+    }
+
+    private Counter rejectedCounter(MeterRegistry meterRegistry, LimitExceededException.Reason reason) {
+        return Counter.builder("ai.limiter.rejected")
+                .description("因排队已满或排队超时被拒绝的请求数")
+                .tag("limiter", name)
+                .tag("reason", reason.name().toLowerCase())
+                .register(meterRegistry);
+    }
+
+    /**
+     * 执行许可，释放是幂等的
+     */
+    public final class Permit {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                FairConcurrencyLimiter.this.release();
+            }
+        }
+    }
+
+    private static final class Waiter {
+
+        private final String clientId;
+        private final MonoSink<Permit> sink;
+        private final long enqueuedAt;
+        private boolean dequeued;
+        private volatile Disposable timeoutTask;
+
+        private Waiter(String clientId, MonoSink<Permit> sink, long enqueuedAt) {
+            this.clientId = clientId;
+            this.sink = sink;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.deepseek.limit;
+
+import lombok.Getter;
+
+/**
+ * 并发限制拒绝异常
+ * 标明被拒绝的原因（排队已满、排队超时），便于给出提示和统计。
+ */
+@Getter
+public class LimitExceededException extends RuntimeException {
+
+    public enum Reason {
+        QUEUE_FULL("排队已满"),
+        QUEUE_TIMEOUT("排队超时");
+
+        private final String description;
+
+        Reason(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final String limiter;
+    private final Reason reason;
+
+    public LimitExceededException(String limiter, Reason reason) {
+        super(limiter + "并发限制：" + reason.getDescription(), null, false, false);
+        this.limiter = limiter;
+        this.reason = reason;
+    }
+}
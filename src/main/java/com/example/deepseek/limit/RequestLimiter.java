@@ -0,0 +1,64 @@
+package com.example.deepseek.limit;
+
+import com.example.deepseek.config.AiConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 上游请求并发限制
+ * 先申请提供商许可，再申请全局许可；两级都按客户端（会话）公平排队。
+ * Ollama的上限可根据请求反馈自适应调整（见 {@link AdaptiveLimit}）。
+ */
+@Component
+public class RequestLimiter {
+
+    private final FairConcurrencyLimiter global;
+    private final FairConcurrencyLimiter ollama;
+    private final FairConcurrencyLimiter deepseek;
+    // Ollama的并发上限随负载自适应调整，关闭时为null
+    private final AdaptiveLimit ollamaAdaptive;
+
+    public RequestLimiter(AiConfig aiConfig, MeterRegistry meterRegistry) {
+        this.global = new FairConcurrencyLimiter("global", aiConfig.getLimit(), Schedulers.parallel(), meterRegistry);
+        this.ollama = new FairConcurrencyLimiter("ollama", aiConfig.getOllama().getLimit(),
+                Schedulers.parallel(), meterRegistry);
+        this.deepseek = new FairConcurrencyLimiter("deepseek", aiConfig.getDeepseek().getLimit(),
+                Schedulers.parallel(), meterRegistry);
+        AiConfig.Adaptive adaptive = aiConfig.getOllama().getAdaptive();
+        this.ollamaAdaptive = adaptive.isEnabled() ? new AdaptiveLimit(ollama, adaptive) : null;
+    }
+
+    /**
+     * 在提供商和全局并发限制内执行上游请求
+     */
+    public <T> Flux<T> limit(String provider, String clientId, Flux<T> upstream) {
+        return forProvider(provider).limit(clientId, global.limit(clientId, upstream));
+    }
+
+    /**
+     * 反馈一次正常结束的请求（首token耗时、生成速率）
+     */
+    public void onSample(String provider, long ttftNanos, double tokensPerSecond) {
+        if ("ollama".equals(provider) && ollamaAdaptive != null) {
+            ollamaAdaptive.onSample(ttftNanos, tokensPerSecond);
+        }
+    }
+
+    /**
+     * 反馈一次失败的请求
+     */
+    public void onFailure(String provider) {
+        if ("ollama".equals(provider) && ollamaAdaptive != null) {
+            ollamaAdaptive.onFailure();
+        }
+    }
+
+    /**
+     * 获取提供商的限制器
+     */
+    public FairConcurrencyLimiter forProvider(String provider) {
+        return "ollama".equals(provider) ? ollama : deepseek;
+    }
+}
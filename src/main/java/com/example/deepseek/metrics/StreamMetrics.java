@@ -0,0 +1,308 @@
+package com.example.deepseek.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 流式链路指标与追踪
+ * 上游流的指标按提供商（provider）、模型（model）和请求类型（type，如聊天/翻译/天气查询）打标签；
+ * 面向浏览器的输出按传输方式（transport：emitter为SseEmitter，reactive为响应式SSE）打标签。
+ * 每次AI请求对应一个ai.request观测，每次上游尝试对应一个ai.upstream子观测，启用链路追踪时即为span。
+ */
+@Component
+public class StreamMetrics {
+
+    public static final String TRANSPORT_EMITTER = "emitter";
+    public static final String TRANSPORT_REACTIVE = "reactive";
+
+    // 完整响应token数的指数滑动平均权重
+    private static final double AVERAGE_WEIGHT = 0.2;
+    // 首token耗时统计的分位数，用于决定对冲请求的发起时机
+    private static final double TTFT_PERCENTILE = 0.95;
+
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+    private final Map<Tags, Double> averageTokens = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> activeStreams = new ConcurrentHashMap<>();
+
+    public StreamMetrics(MeterRegistry meterRegistry) {
+        this(meterRegistry, ObservationRegistry.NOOP);
+    }
+
+    @Autowired
+    public StreamMetrics(MeterRegistry meterRegistry, ObservationRegistry observationRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry;
+        for (String transport : new String[]{TRANSPORT_EMITTER, TRANSPORT_REACTIVE}) {
+            AtomicInteger active = new AtomicInteger();
+            activeStreams.put(transport, active);
+            Gauge.builder("ai.stream.active", active, AtomicInteger::get)
+                    .description("正在向浏览器输出的流数")
+                    .tag("transport", transport)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * 上游流的公共标签
+     */
+    public static Tags tags(String provider, String model, String requestType) {
+        return Tags.of("provider", provider, "model", model == null ? "unknown" : model, "type", requestType);
+    }
+
+    /**
+     * 开始观测一次上游流，context中的当前观测（通常是ai.request）作为父观测
+     */
+    public StreamObservation start(String provider, String model, String requestType, ContextView context) {
+        Tags tags = tags(provider, model, requestType);
+        Observation span = Observation.createNotStarted("ai.upstream", observationRegistry)
+                .parentObservation(currentObservation(context));
+        tags.forEach(tag -> span.lowCardinalityKeyValue(tag.getKey(), tag.getValue()));
+        return new StreamObservation(this, tags, span.start());
+    }
+
+    /**
+     * 观测一次AI请求，覆盖并发排队、路由切换和各次上游尝试
+     * 父观测取自Reactor上下文（响应式端点）或当前线程（SseEmitter端点，在控制器线程中订阅）
+     */
+    public <T> Flux<T> observeRequest(String provider, String requestType, Flux<T> content) {
+        return observeRequest(provider, requestType, content, item -> provider);
+    }
+
+    /**
+     * 观测一次AI请求，servedBy给出每个元素实际来自的提供商
+     * provider为请求的提供商；路由切换或对冲后内容可能来自另一提供商，结束时以served_by标签记录（没有内容时为none）
+     */
+    public <T> Flux<T> observeRequest(String provider, String requestType, Flux<T> content,
+                                      Function<? super T, String> servedBy) {
+        return Flux.deferContextual(context -> {
+            Observation request = Observation.createNotStarted("ai.request", observationRegistry)
+                    .lowCardinalityKeyValue("provider", provider)
+                    .lowCardinalityKeyValue("type", requestType)
+                    .parentObservation(currentObservation(context))
+                    .start();
+            AtomicReference<String> served = new AtomicReference<>("none");
+            return inScope(request, content.doOnNext(item -> served.set(servedBy.apply(item))))
+                    .doOnError(request::error)
+                    .doFinally(signal -> request.lowCardinalityKeyValue("outcome", outcome(signal))
+                            .lowCardinalityKeyValue("served_by", served.get())
+                            .stop())
+                    .contextWrite(Context.of(ObservationThreadLocalAccessor.KEY, request));
+        });
+    }
+
+    /**
+     * 在观测的作用域内订阅source
+     * SseEmitter端点在控制器线程中同步订阅，线程上仍是控制器的span，而追踪处理器优先以线程上的当前span为父span，
+     * 因此订阅期间切换到该观测，使同步创建的子观测（上游尝试、WebClient请求）挂在正确的父span下
+     */
+    static <T> Flux<T> inScope(Observation observation, Flux<T> source) {
+        return Flux.from(subscriber -> {
+            try (Observation.Scope scope = observation.openScope()) {
+                source.subscribe(subscriber);
+            }
+        });
+    }
+
+    private Observation currentObservation(ContextView context) {
+        return context.getOrDefault(ObservationThreadLocalAccessor.KEY, observationRegistry.getCurrentObservation());
+    }
+
+    /**
+     * 流的结束方式：completed/error/cancelled
+     */
+    static String outcome(SignalType signal) {
+        return switch (signal) {
+            case ON_COMPLETE -> "completed";
+            case ON_ERROR -> "error";
+            default -> "cancelled";
+        };
+    }
+
+    /**
+     * 记录被丢弃的上游数据（解析失败、[DONE]之后的事件等）
+     */
+    public void recordDropped(Tags tags, String reason, long count) {
+        if (count > 0) {
+            Counter.builder("ai.stream.dropped")
+                    .description("上游流中被丢弃或损坏的数据块数")
+                    .tags(tags)
+                    .tag("reason", reason)
+                    .register(meterRegistry)
+                    .increment(count);
+        }
+    }
+
+    /**
+     * 记录正常结束的上游流，更新平均响应token数
+     */
+    public void recordCompleted(Tags tags, long tokens) {
+        averageTokens.merge(tags, (double) tokens,
+                (average, latest) -> average + (latest - average) * AVERAGE_WEIGHT);
+    }
+
+    /**
+     * 记录被提前取消的上游流（如客户端断开），按平均响应长度估算节省的token数
+     *
+     * @return 估算节省的token数
+     */
+    public long recordCancelled(Tags tags, long tokens) {
+        Counter.builder("ai.stream.cancelled")
+                .description("因客户端断开等原因提前取消的上游流")
+                .tags(tags)
+                .register(meterRegistry)
+                .increment();
+
+        long saved = Math.max(0, Math.round(averageTokens.getOrDefault(tags, 0.0)) - tokens);
+        if (saved > 0) {
+            Counter.builder("ai.stream.tokens.saved")
+                    .description("提前取消上游流估算节省的token数")
+                    .tags(tags)
+                    .register(meterRegistry)
+                    .increment(saved);
+        }
+        return saved;
+    }
+
+    /**
+     * 记录首个token耗时和生成速率
+     */
+    public void recordLatency(Tags tags, long ttftNanos, double tokensPerSecond) {
+        Timer.builder("ai.stream.ttft")
+                .description("获得执行许可到首个响应块的耗时")
+                .tags(tags)
+                .publishPercentiles(TTFT_PERCENTILE)
+                .register(meterRegistry)
+                .record(ttftNanos, TimeUnit.NANOSECONDS);
+        if (tokensPerSecond > 0) {
+            DistributionSummary.builder("ai.stream.tokens.per.second")
+                    .description("首个响应块之后的生成速率")
+                    .tags(tags)
+                    .register(meterRegistry)
+                    .record(tokensPerSecond);
+        }
+    }
+
+    /**
+     * 记录获取连接（含连接池等待和建立连接）到请求发出的耗时
+     */
+    public void recordConnect(Tags tags, long nanos) {
+        Timer.builder("ai.stream.connect")
+                .description("获取上游连接到请求发出的耗时")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录上游流的总时长，outcome为completed/error/cancelled
+     */
+    public void recordDuration(Tags tags, String outcome, long nanos) {
+        Timer.builder("ai.stream.duration")
+                .description("上游流从发起到结束的总时长")
+                .tags(tags)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录输出的可见内容字节数和被<think>过滤掉的字符数
+     */
+    public void recordContent(Tags tags, long emittedBytes, long filteredChars) {
+        if (emittedBytes > 0) {
+            Counter.builder("ai.stream.bytes.emitted")
+                    .description("输出的可见内容字节数（UTF-8）")
+                    .baseUnit("bytes")
+                    .tags(tags)
+                    .register(meterRegistry)
+                    .increment(emittedBytes);
+        }
+        if (filteredChars > 0) {
+            Counter.builder("ai.stream.think.filtered.chars")
+                    .description("被<think>标签过滤掉的字符数")
+                    .tags(tags)
+                    .register(meterRegistry)
+                    .increment(filteredChars);
+        }
+    }
+
+    /**
+     * 记录上游错误，按异常类型区分
+     */
+    public void recordError(Tags tags, Throwable error) {
+        Counter.builder("ai.stream.errors")
+                .description("上游流错误数")
+                .tags(tags)
+                .tag("exception", error.getClass().getSimpleName())
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 记录浏览器断开（发送失败或取消订阅）
+     */
+    public void recordDisconnect(String transport, String requestType) {
+        Counter.builder("ai.stream.client.disconnects")
+                .description("输出过程中浏览器断开的次数")
+                .tag("transport", transport)
+                .tag("type", requestType)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 向浏览器输出的流开始
+     */
+    public void streamOpened(String transport) {
+        activeStreams.get(transport).incrementAndGet();
+    }
+
+    /**
+     * 向浏览器输出的流结束
+     */
+    public void streamClosed(String transport) {
+        activeStreams.get(transport).decrementAndGet();
+    }
+
+    /**
+     * 最近一段时间首token耗时的p95（该提供商各模型、请求类型中的最大值）
+     *
+     * @return 纳秒，尚无样本时返回0
+     */
+    public long ttftP95(String provider) {
+        long p95 = 0;
+        for (Timer timer : meterRegistry.find("ai.stream.ttft").tag("provider", provider).timers()) {
+            if (timer.count() == 0) {
+                continue;
+            }
+            for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+                if (value.percentile() == TTFT_PERCENTILE) {
+                    p95 = Math.max(p95, (long) value.value(TimeUnit.NANOSECONDS));
+                }
+            }
+        }
+        return p95;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.deepseek.metrics;
+
+import com.example.deepseek.stream.TokenCoalescer;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.Context;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单次上游流的观测数据
+ * 在上游流开始时创建，记录连接、首个响应块、内容字节数等时间点和计数，流结束时统一写入指标。
+ * 通过Reactor上下文传给HttpClient，在请求发出时记录连接耗时；对应的ai.upstream观测同时放入上下文，
+ * WebClient的HTTP观测以它为父观测，并把追踪上下文写入上游请求头。
+ */
+public final class StreamObservation {
+
+    // Reactor上下文中的键
+    public static final String CONTEXT_KEY = StreamObservation.class.getName();
+
+    // span事件：已获得连接、请求已发出
+    private static final Observation.Event CONNECTED = Observation.Event.of("connected");
+    // span事件：收到首个响应块
+    private static final Observation.Event FIRST_TOKEN = Observation.Event.of("first-token");
+
+    private final StreamMetrics metrics;
+    private final Tags tags;
+    private final Observation span;
+    private final long startedAt = System.nanoTime();
+    private final AtomicLong firstChunkAt = new AtomicLong();
+    private final AtomicLong connectedAt = new AtomicLong();
+    private volatile boolean failed;
+
+    // 只在上游流的onNext中修改，结束信号之后读取
+    private long rawChars;
+    private long visibleChars;
+    private long emittedBytes;
+
+    StreamObservation(StreamMetrics metrics, Tags tags, Observation span) {
+        this.metrics = metrics;
+        this.tags = tags;
+        this.span = span;
+    }
+
+    /**
+     * 在本次上游流的观测范围内执行上游请求：写入Reactor上下文，并在订阅期间打开ai.upstream的作用域
+     */
+    public <T> Flux<T> observe(Flux<T> upstream) {
+        return StreamMetrics.inScope(span, upstream)
+                .contextWrite(Context.of(CONTEXT_KEY, this, ObservationThreadLocalAccessor.KEY, span));
+    }
+
+    public Tags getTags() {
+        return tags;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * 首个响应块到达的时间（System.nanoTime），尚未到达时为0
+     */
+    public long getFirstChunkAt() {
+        return firstChunkAt.get();
+    }
+
+    /**
+     * 首个响应块耗时（纳秒），尚未到达时为0
+     */
+    public long getTtft() {
+        long first = firstChunkAt.get();
+        return first > 0 ? first - startedAt : 0;
+    }
+
+    /**
+     * 已获得连接，请求即将发出
+     */
+    public void connected() {
+        long now = System.nanoTime();
+        if (connectedAt.compareAndSet(0, now)) {
+            metrics.recordConnect(tags, now - startedAt);
+            span.event(CONNECTED);
+        }
+    }
+
+    /**
+     * 收到一个上游响应块
+     */
+    public void chunk() {
+        if (firstChunkAt.compareAndSet(0, System.nanoTime())) {
+            span.event(FIRST_TOKEN);
+        }
+    }
+
+    /**
+     * 记录一段上游内容及其过滤后的可见部分
+     *
+     * @return 可见部分
+     */
+    public String content(String raw, String visible) {
+        rawChars += raw.length();
+        visibleChars += visible.length();
+        emittedBytes += TokenCoalescer.utf8Length(visible);
+        return visible;
+    }
+
+    public void error(Throwable error) {
+        failed = true;
+        metrics.recordError(tags, error);
+        span.error(error);
+    }
+
+    /**
+     * 上游流的实际结束方式
+     * 错误向下游传递时，下游（如重试）可能同步取消上游，doFinally收到的是CANCEL，这种情况仍按错误处理
+     */
+    public SignalType outcome(SignalType signal) {
+        return failed && signal == SignalType.CANCEL ? SignalType.ON_ERROR : signal;
+    }
+
+    /**
+     * 上游流结束：记录总时长、输出字节数和被过滤的字符数，结束ai.upstream观测
+     */
+    public void finish(SignalType signal, long tokens) {
+        String outcome = StreamMetrics.outcome(signal);
+        metrics.recordDuration(tags, outcome, System.nanoTime() - startedAt);
+        metrics.recordContent(tags, emittedBytes, Math.max(0, rawChars - visibleChars));
+        span.lowCardinalityKeyValue("outcome", outcome)
+                .highCardinalityKeyValue("tokens", String.valueOf(tokens))
+                .highCardinalityKeyValue("bytes", String.valueOf(emittedBytes))
+                .stop();
+    }
+}
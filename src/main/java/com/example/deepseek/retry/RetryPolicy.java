@@ -0,0 +1,196 @@
+package com.example.deepseek.retry;
+
+import com.example.deepseek.config.AiConfig;
+import com.example.deepseek.routing.TokenBudget;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 上游请求重试策略
+ * 只重试尚未收到任何数据、且上游未处理请求的失败：连接建立/发送失败、502/503/504和429。
+ * 生成请求在没有任何输出前重放是安全的；一旦收到首个响应块，之后的错误不再重试，避免内容重复。
+ * 退避时长按指数增长并加随机抖动；429/503带Retry-After时按其等待，过长则放弃。
+ * 所有上游共享一个重试预算，上游整体故障时重试量不超过请求量的固定比例。
+ */
+@Slf4j
+@Component
+public class RetryPolicy {
+
+    private final AiConfig.Retry config;
+    private final MeterRegistry meterRegistry;
+    private final Scheduler scheduler;
+    private final TokenBudget budget;
+
+    @Autowired
+    public RetryPolicy(AiConfig aiConfig, MeterRegistry meterRegistry) {
+        this(aiConfig.getRetry(), meterRegistry, Schedulers.parallel());
+    }
+
+    RetryPolicy(AiConfig.Retry config, MeterRegistry meterRegistry, Scheduler scheduler) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        this.scheduler = scheduler;
+        this.budget = new TokenBudget(config.getBudget(), config.getBurst());
+    }
+
+    /**
+     * 为流式请求加上重试，source每次订阅都会重新发起请求
+     */
+    public <T> Flux<T> retryBeforeFirstItem(String upstream, Flux<T> source) {
+        if (!config.isEnabled() || config.getMaxAttempts() <= 1) {
+            return source;
+        }
+        return Flux.defer(() -> {
+            budget.deposit();
+            AtomicBoolean started = new AtomicBoolean();
+            return source
+                    .doOnNext(item -> started.set(true))
+                    .retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                        Duration delay = started.get() ? null
+                                : nextDelay(upstream, signal.failure(), signal.totalRetries() + 1);
+                        return delay == null ? Mono.error(signal.failure()) : Mono.delay(delay, scheduler);
+                    })));
+        });
+    }
+
+    /**
+     * 为同步请求加上重试，退避期间阻塞当前线程（调用方应在虚拟线程中执行）
+     */
+    public <T> T call(String upstream, Supplier<T> supplier) {
+        if (!config.isEnabled()) {
+            return supplier.get();
+        }
+        budget.deposit();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return supplier.get();
+            } catch (RuntimeException e) {
+                Duration delay = nextDelay(upstream, e, attempt);
+                if (delay == null) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * 第attempt次失败后的等待时长，不应重试时返回null
+     */
+    Duration nextDelay(String upstream, Throwable error, long attempt) {
+        if (attempt >= config.getMaxAttempts() || !isRetryable(error)) {
+            return null;
+        }
+        Duration retryAfter = retryAfter(error);
+        if (retryAfter != null && retryAfter.toMillis() > config.getMaxRetryAfter()) {
+            log.warn("{}要求{}ms后重试，超过上限，不再重试", upstream, retryAfter.toMillis());
+            return null;
+        }
+        if (!budget.tryWithdraw()) {
+            Counter.builder("ai.retry.budget.exhausted")
+                    .description("因重试预算不足而放弃的重试")
+                    .tag("upstream", upstream)
+                    .register(meterRegistry)
+                    .increment();
+            return null;
+        }
+        Duration delay = retryAfter != null ? retryAfter : backoff(attempt);
+        log.info("{}请求失败（{}），{}ms后第{}次重试", upstream, error.getMessage(), delay.toMillis(), attempt);
+        Counter.builder("ai.retry.attempts")
+                .description("上游请求的重试次数")
+                .tag("upstream", upstream)
+                .register(meterRegistry)
+                .increment();
+        return delay;
+    }
+
+    /**
+     * 指数退避加随机抖动
+     */
+    Duration backoff(long attempt) {
+        double base = Math.min(config.getMaxBackoff(),
+                config.getInitialBackoff() * Math.pow(config.getMultiplier(), attempt - 1));
+        double jitter = Math.min(1, Math.max(0, config.getJitter()));
+        double delay = base * (1 - jitter * ThreadLocalRandom.current().nextDouble());
+        return Duration.ofMillis(Math.round(delay));
+    }
+
+    /**
+     * 是否为可安全重试的失败
+     */
+    static boolean isRetryable(Throwable error) {
+        if (error instanceof WebClientRequestException || error instanceof ResourceAccessException) {
+            return true;
+        }
+        HttpStatusCode status = statusOf(error);
+        if (status == null) {
+            return false;
+        }
+        int code = status.value();
+        return code == 429 || code == 502 || code == 503 || code == 504;
+    }
+
+    /**
+     * 解析Retry-After响应头（秒数或HTTP日期）
+     */
+    static Duration retryAfter(Throwable error) {
+        HttpHeaders headers = null;
+        if (error instanceof WebClientResponseException e) {
+            headers = e.getHeaders();
+        } else if (error instanceof HttpStatusCodeException e) {
+            headers = e.getResponseHeaders();
+        }
+        String value = headers != null ? headers.getFirst(HttpHeaders.RETRY_AFTER) : null;
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                Duration wait = Duration.between(ZonedDateTime.now(at.getZone()), at);
+                return wait.isNegative() ? Duration.ZERO : wait;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    private static HttpStatusCode statusOf(Throwable error) {
+        if (error instanceof WebClientResponseException e) {
+            return e.getStatusCode();
+        }
+        if (error instanceof HttpStatusCodeException e) {
+            return e.getStatusCode();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.deepseek.routing;
+
+import com.example.deepseek.config.AiConfig;
+import com.example.deepseek.metrics.StreamMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 提供商路由
+ * failover：首选提供商出错或超过期限仍无首个响应块时，取消它并改用另一提供商；
+ * hedge：首选提供商超过首token耗时p95仍未响应时，在预算内同时请求另一提供商，先产出数据的一方胜出，另一方被取消。
+ * 内容流中的任何元素（包括空串）都视为上游已开始响应，已开始响应后的错误不再切换。
+ */
+@Slf4j
+@Component
+public class ProviderRouter {
+
+    private final AiConfig.Routing routing;
+    private final StreamMetrics streamMetrics;
+    private final MeterRegistry meterRegistry;
+    private final Scheduler scheduler;
+    private final TokenBudget hedgeBudget;
+
+    @Autowired
+    public ProviderRouter(AiConfig aiConfig, StreamMetrics streamMetrics, MeterRegistry meterRegistry) {
+        this(aiConfig.getRouting(), streamMetrics, meterRegistry, Schedulers.parallel());
+    }
+
+    ProviderRouter(AiConfig.Routing routing, StreamMetrics streamMetrics, MeterRegistry meterRegistry,
+                   Scheduler scheduler) {
+        this.routing = routing;
+        this.streamMetrics = streamMetrics;
+        this.meterRegistry = meterRegistry;
+        this.scheduler = scheduler;
+        this.hedgeBudget = new TokenBudget(routing.getHedgeBudget(), routing.getHedgeBurst());
+    }
+
+    /**
+     * 是否启用了切换或对冲
+     */
+    public boolean isEnabled() {
+        return routing.getPolicy() != AiConfig.Routing.Policy.NONE;
+    }
+
+    /**
+     * 按路由策略组合首选提供商和另一提供商的内容流
+     */
+    public <T> Flux<T> route(String provider, Flux<T> primary, String alternateProvider, Flux<T> alternate) {
+        return switch (routing.getPolicy()) {
+            case NONE -> primary;
+            case FAILOVER -> failover(provider, primary, alternateProvider, alternate);
+            case HEDGE -> hedge(provider, primary, alternateProvider, alternate);
+        };
+    }
+
+    private <T> Flux<T> failover(String provider, Flux<T> primary, String alternateProvider, Flux<T> alternate) {
+        Duration deadline = Duration.ofMillis(routing.getFailoverDeadline());
+        return Flux.defer(() -> {
+            AtomicBoolean started = new AtomicBoolean();
+            return primary
+                    .timeout(Mono.delay(deadline, scheduler), first -> Mono.never())
+                    .doOnNext(item -> started.set(true))
+                    .onErrorResume(error -> {
+                        if (started.get()) {
+                            return Flux.error(error);
+                        }
+                        log.warn("{}未能开始响应（{}），切换到{}", provider, error.getMessage(), alternateProvider);
+                        recordSwitch(provider, alternateProvider, "failover");
+                        return alternate;
+                    });
+        });
+    }
+
+    private <T> Flux<T> hedge(String provider, Flux<T> primary, String alternateProvider, Flux<T> alternate) {
+        return Flux.defer(() -> {
+            hedgeBudget.deposit();
+            Duration delay = hedgeDelay(provider);
+            Sinks.Empty<Void> primaryEnded = Sinks.empty();
+            AtomicReference<Throwable> lastError = new AtomicReference<>();
+
+            Flux<T> first = primary
+                    .doOnError(lastError::set)
+                    .doOnTerminate(primaryEnded::tryEmitEmpty);
+            // 到达对冲时间发起对冲请求（受预算限制）；首选提供商先结束且没有数据时直接切换
+            Mono<Boolean> trigger = Mono.firstWithSignal(
+                    Mono.delay(delay, scheduler).map(tick -> true),
+                    primaryEnded.asMono().thenReturn(false));
+            Flux<T> second = trigger
+                    .filter(hedged -> !hedged || allowHedge(provider))
+                    .flatMapMany(hedged -> {
+                        if (hedged) {
+                            log.info("{}超过{}ms未响应，对冲请求{}", provider, delay.toMillis(), alternateProvider);
+                        } else {
+                            log.warn("{}未能开始响应，切换到{}", provider, alternateProvider);
+                        }
+                        recordSwitch(provider, alternateProvider, hedged ? "hedge" : "failover");
+                        return alternate;
+                    })
+                    .doOnError(lastError::set);
+
+            return Flux.firstWithValue(first, second)
+                    .onErrorMap(NoSuchElementException.class,
+                            error -> lastError.get() != null ? lastError.get() : error);
+        });
+    }
+
+    /**
+     * 对冲时间：首选提供商首token耗时的p95，限制在配置的上下限之间
+     */
+    Duration hedgeDelay(String provider) {
+        long p95 = TimeUnit.NANOSECONDS.toMillis(streamMetrics.ttftP95(provider));
+        long delay = p95 > 0 ? p95 : routing.getHedgeDelay();
+        return Duration.ofMillis(Math.min(routing.getMaxHedgeDelay(), Math.max(routing.getMinHedgeDelay(), delay)));
+    }
+
+    private boolean allowHedge(String provider) {
+        if (hedgeBudget.tryWithdraw()) {
+            return true;
+        }
+        Counter.builder("ai.routing.hedge.skipped")
+                .description("因预算不足未发起的对冲请求")
+                .tag("provider", provider)
+                .register(meterRegistry)
+                .increment();
+        return false;
+    }
+
+    private void recordSwitch(String from, String to, String reason) {
+        Counter.builder("ai.routing.switched")
+                .description("切换或对冲到另一提供商的请求数")
+                .tag("from", from)
+                .tag("to", to)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+}
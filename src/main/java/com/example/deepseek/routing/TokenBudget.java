@@ -0,0 +1,39 @@
+package com.example.deepseek.routing;
+
+/**
+ * 额外请求预算
+ * 每个原始请求存入ratio个令牌（余额不超过burst），每次额外请求（对冲、重试）取出1个，
+ * 使额外请求长期不超过原始请求的ratio比例，避免上游故障时成倍放大负载。
+ */
+public final class TokenBudget {
+
+    private final double ratio;
+    private final double maxBalance;
+    private double balance;
+
+    public TokenBudget(double ratio, int burst) {
+        this.ratio = Math.max(0, ratio);
+        this.maxBalance = Math.max(0, burst);
+        this.balance = maxBalance;
+    }
+
+    /**
+     * 记录一次原始请求
+     */
+    public synchronized void deposit() {
+        balance = Math.min(maxBalance, balance + ratio);
+    }
+
+    /**
+     * 尝试发起一次额外请求
+     *
+     * @return 预算充足时返回true并扣减
+     */
+    public synchronized boolean tryWithdraw() {
+        if (balance < 1) {
+            return false;
+        }
+        balance -= 1;
+        return true;
+    }
+}
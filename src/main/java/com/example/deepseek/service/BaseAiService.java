@@ -1,26 +1,77 @@
 package com.example.deepseek.service;
 
+import com.example.deepseek.breaker.CircuitBreakerOpenException;
+import com.example.deepseek.breaker.CircuitBreakerRegistry;
+import com.example.deepseek.client.AiClientRegistry;
+import com.example.deepseek.client.OllamaBalancer;
+import com.example.deepseek.client.OllamaEndpoint;
+import com.example.deepseek.client.StreamDeadline;
+import com.example.deepseek.client.UpstreamTimeoutException;
 import com.example.deepseek.config.AiConfig;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.deepseek.limit.LimitExceededException;
+import com.example.deepseek.limit.RequestLimiter;
+import com.example.deepseek.metrics.StreamMetrics;
+import com.example.deepseek.metrics.StreamObservation;
+import com.example.deepseek.retry.RetryPolicy;
+import com.example.deepseek.routing.ProviderRouter;
+import com.example.deepseek.stream.JsonContentDecoder;
+import com.example.deepseek.stream.SseContentDecoder;
+import com.example.deepseek.stream.ThinkTagFilter;
+import com.example.deepseek.stream.TokenCoalescer;
 import jakarta.servlet.http.HttpSession;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
-import org.springframework.web.reactive.function.client.WebClient;
-import java.util.concurrent.atomic.AtomicBoolean;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @Slf4j
 public abstract class BaseAiService {
     
+    // SseEmitter.send是阻塞写，放到虚拟线程中执行，慢客户端不会卡住Netty事件循环
+    private static final Scheduler SEND_SCHEDULER =
+            Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "sse-send");
+    private static final Pattern LINE_BREAK = Pattern.compile("\r\n|\r|\n");
+    
     protected final AiConfig aiConfig;
-    protected final ObjectMapper objectMapper = new ObjectMapper();
+    protected final AiClientRegistry clientRegistry;
+    protected final StreamMetrics streamMetrics;
+    protected final RequestLimiter requestLimiter;
+    protected final ProviderRouter providerRouter;
+    protected final CircuitBreakerRegistry circuitBreakers;
+    protected final RetryPolicy retryPolicy;
     
-    protected BaseAiService(AiConfig aiConfig) {
+    protected BaseAiService(AiConfig aiConfig, AiClientRegistry clientRegistry, StreamMetrics streamMetrics,
+                            RequestLimiter requestLimiter, ProviderRouter providerRouter,
+                            CircuitBreakerRegistry circuitBreakers, RetryPolicy retryPolicy) {
         this.aiConfig = aiConfig;
+        this.clientRegistry = clientRegistry;
+        this.streamMetrics = streamMetrics;
+        this.requestLimiter = requestLimiter;
+        this.providerRouter = providerRouter;
+        this.circuitBreakers = circuitBreakers;
+        this.retryPolicy = retryPolicy;
     }
     
     /**
@@ -28,236 +79,435 @@ public abstract class BaseAiService {
      */
     protected void executeStreamRequest(String prompt, HttpSession session, SseEmitter emitter, 
                                       String provider, String requestType) {
-        // 检查是否已选择AI提供商
-        if (provider == null || provider.trim().isEmpty()) {
-            try {
-                emitter.send("请先选择AI提供商（本地Ollama或远程DeepSeek）后再进行" + requestType + "。");
-                emitter.complete();
-            } catch (Exception e) {
-                emitter.completeWithError(e);
-            }
-            return;
+        Flux<String> content = streamContent(null, prompt, session, provider, requestType)
+                .onErrorResume(error -> Flux.just(errorMessage(provider, error)));
+        subscribeEmitter(content, emitter, requestType);
+    }
+    
+    /**
+     * 获取AI流式输出的可见内容（已通过ThinkTagFilter过滤<think>标签）
+     * 上游错误以错误信号透传，由调用方决定提示文案或回退策略
+     */
+    protected Flux<String> streamContent(String systemPrompt, String prompt, HttpSession session,
+                                         String provider, String requestType) {
+        return streamContent(systemPrompt, prompt, provider, sessionApiKey(session), session.getId(),
+                requestType);
+    }
+    
+    /**
+     * 获取AI流式输出的可见内容，API Key由调用方传入（不依赖Servlet会话，供响应式端点使用）
+     * 上游请求受并发限制，clientId用于在客户端之间公平排队；启用路由策略时可切换或对冲到另一提供商
+     */
+    protected Flux<String> streamContent(String systemPrompt, String prompt, String provider, String apiKey,
+                                         String clientId, String requestType) {
+        return streamContent(systemPrompt, List.of(), prompt, provider, apiKey, clientId, requestType);
+    }
+    
+    /**
+     * 获取AI流式输出的可见内容，history为放在本轮用户消息之前的历史消息（多轮对话）
+     */
+    protected Flux<String> streamContent(String systemPrompt, List<Map<String, String>> history, String prompt,
+                                         String provider, String apiKey, String clientId, String requestType) {
+        return streamContent(systemPrompt, history, prompt, provider, apiKey, clientId, requestType, null);
+    }
+    
+    /**
+     * 获取AI流式输出的可见内容，answered记录实际给出内容的提供商
+     * 启用路由策略时内容可能来自另一提供商，按提供商区分的结果（如翻译缓存）应以它为准；没有内容时保持为空
+     */
+    protected Flux<String> streamContent(String systemPrompt, List<Map<String, String>> history, String prompt,
+                                         String provider, String apiKey, String clientId, String requestType,
+                                         AtomicReference<String> answered) {
+        String problem = providerProblem(provider, apiKey, requestType);
+        if (problem != null) {
+            return Flux.just(problem);
         }
         
-        if ("ollama".equals(provider)) {
-            executeOllamaStreamRequest(prompt, emitter, requestType);
-        } else if ("deepseek".equals(provider)) {
-            executeDeepSeekStreamRequest(prompt, session, emitter, requestType);
-        } else {
-            try {
-                emitter.send("不支持的AI提供商：" + provider + "，请选择本地Ollama或远程DeepSeek。");
-                emitter.complete();
-            } catch (Exception e) {
-                emitter.completeWithError(e);
-            }
+        Flux<ProviderText> content = providerStream(provider, systemPrompt, history, prompt, apiKey, clientId,
+                requestType).map(text -> new ProviderText(provider, text));
+        String alternate = "ollama".equals(provider) ? "deepseek" : "ollama";
+        if (providerRouter.isEnabled() && isProviderReady(alternate, apiKey)) {
+            content = providerRouter.route(provider, content, alternate,
+                    providerStream(alternate, systemPrompt, history, prompt, apiKey, clientId, requestType)
+                            .map(text -> new ProviderText(alternate, text)));
         }
+        // 上游流保留空串作为“已开始响应”的信号供路由判断，此处再过滤
+        Flux<ProviderText> visible = content
+                .filter(item -> !item.text().isEmpty())
+                .doOnNext(item -> {
+                    if (answered != null) {
+                        answered.set(item.provider());
+                    }
+                });
+        return streamMetrics.observeRequest(provider, requestType, visible, ProviderText::provider)
+                .map(ProviderText::text);
     }
     
     /**
-     * 执行Ollama流式请求
+     * 路由前为内容标记来源提供商
      */
-    private void executeOllamaStreamRequest(String prompt, SseEmitter emitter, String requestType) {
-        String url = aiConfig.getOllama().getFullUrl();
-        Map<String, Object> requestBody = buildOllamaRequestBody(prompt);
-        
-        WebClient webClient = buildOllamaWebClient(url);
-        AtomicBoolean inThinkBlock = new AtomicBoolean(false);
-        
-        webClient.post()
-                .bodyValue(requestBody)
-                .retrieve()
-                .bodyToFlux(String.class)
-                .subscribe(
-                        chunk -> {
-                            log.debug("[Ollama{}原始流] {}", requestType, chunk);
-                            processOllamaChunk(chunk, emitter, inThinkBlock);
-                        },
-                        error -> {
-                            log.error("Ollama{} API 错误: {}", requestType, error.getMessage());
-                            handleOllamaError(error, emitter);
-                        },
-                        () -> completeEmitter(emitter)
-                );
+    private record ProviderText(String provider, String text) {
     }
     
     /**
-     * 执行DeepSeek流式请求
+     * 单个提供商在并发限制和熔断保护内的内容流
+     * 熔断器在获得并发许可之后统计，排队等待不会被当作慢调用；
+     * 首个响应块之前的临时失败在同一许可内退避重试，每次尝试都经过熔断器
      */
-    private void executeDeepSeekStreamRequest(String prompt, HttpSession session, SseEmitter emitter, 
-                                            String requestType) {
-        String apiKey = (String) session.getAttribute("deepseekApiKey");
-        
-        if (apiKey == null || apiKey.isEmpty()) {
-            handleMissingApiKey(emitter);
-            return;
+    private Flux<String> providerStream(String provider, String systemPrompt, List<Map<String, String>> history,
+                                        String prompt, String apiKey, String clientId, String requestType) {
+        List<Map<String, String>> messages = buildMessages(systemPrompt, history, prompt);
+        Flux<String> upstream = "ollama".equals(provider)
+                ? ollamaStream(messages, clientId, requestType)
+                : deepSeekStream(messages, apiKey, requestType);
+        return requestLimiter.limit(provider, clientId,
+                retryPolicy.retryBeforeFirstItem(provider, circuitBreakers.forProvider(provider).protect(upstream)));
+    }
+    
+    /**
+     * 将内容流转换为SSE事件流，由WebFlux（或Spring MVC的响应式返回值支持）直接写出，不经过SseEmitter
+     * 与Emitter路径使用相同的token合并策略；背压和取消由框架传递到上游
+     */
+    protected Flux<ServerSentEvent<String>> toServerSentEvents(Flux<String> content, String requestType) {
+        AiConfig.Streaming streaming = aiConfig.getStreaming();
+        Flux<String> frames = streaming.isCoalesce()
+                ? content.transform(TokenCoalescer.of(streaming)::apply)
+                : content;
+        return frames
+                .doOnSubscribe(subscription -> streamMetrics.streamOpened(StreamMetrics.TRANSPORT_REACTIVE))
+                .doOnCancel(() -> streamMetrics.recordDisconnect(StreamMetrics.TRANSPORT_REACTIVE, requestType))
+                .doFinally(signal -> streamMetrics.streamClosed(StreamMetrics.TRANSPORT_REACTIVE))
+                .map(text -> ServerSentEvent.builder(text).build());
+    }
+    
+    /**
+     * 将内容流写入SseEmitter
+     * token先按配置合并再发送；发送在有界缓冲之后执行，客户端写得慢时停止向上游请求数据。
+     * 客户端断开（发送失败）、Emitter超时或结束时取消订阅，从而中止上游HTTP请求，避免模型继续生成无人接收的内容
+     */
+    protected void subscribeEmitter(Flux<String> content, SseEmitter emitter, String requestType) {
+        subscribeEmitter(content, emitter, requestType, null);
+    }
+    
+    /**
+     * 将内容流写入SseEmitter，内容结束后单独发送doneFrame（如[DONE]结束标记，为null时不发送）
+     */
+    protected void subscribeEmitter(Flux<String> content, SseEmitter emitter, String requestType,
+                                    String doneFrame) {
+        AiConfig.Streaming streaming = aiConfig.getStreaming();
+        Flux<String> frames = streaming.isCoalesce()
+                ? content.transform(TokenCoalescer.of(streaming)::apply)
+                : content;
+        if (doneFrame != null) {
+            frames = frames.concatWith(Flux.just(doneFrame));
         }
+
+        Disposable.Swap subscription = Disposables.swap();
+        emitter.onCompletion(subscription::dispose);
+        emitter.onError(error -> subscription.dispose());
+        emitter.onTimeout(() -> {
+            log.warn("{}SSE连接超时，取消上游请求", requestType);
+            subscription.dispose();
+            emitter.complete();
+        });
+
+        Flux<String> sending = frames.publishOn(SEND_SCHEDULER, streaming.getSendBuffer())
+                .doFinally(signal -> streamMetrics.streamClosed(StreamMetrics.TRANSPORT_EMITTER));
+        streamMetrics.streamOpened(StreamMetrics.TRANSPORT_EMITTER);
+        subscription.update(sending.subscribe(
+                text -> {
+                    if (!sendQuietly(emitter, text)) {
+                        log.info("{}客户端已断开，取消上游请求", requestType);
+                        streamMetrics.recordDisconnect(StreamMetrics.TRANSPORT_EMITTER, requestType);
+                        subscription.dispose();
+                    }
+                },
+                error -> {
+                    log.error("{}流式输出异常: {}", requestType, error.getMessage());
+                    emitter.completeWithError(error);
+                },
+                () -> completeEmitter(emitter)
+        ));
+    }
+    
+    /**
+     * Ollama流式请求，多实例时按客户端标识优先选择同一实例
+     */
+    private Flux<String> ollamaStream(List<Map<String, String>> messages, String clientId, String requestType) {
+        Map<String, Object> requestBody = buildOllamaRequestBody(messages);
         
-        String url = aiConfig.getDeepseek().getFullUrl();
-        Map<String, Object> requestBody = buildDeepSeekRequestBody(prompt);
-        
-        WebClient webClient = buildDeepSeekWebClient(url, apiKey);
+        return Flux.deferContextual(context -> {
+            ThinkTagFilter thinkFilter = new ThinkTagFilter();
+            StreamObservation observation = streamMetrics.start("ollama", aiConfig.getOllama().getModel(),
+                    requestType, context);
+            JsonContentDecoder decoder = new JsonContentDecoder(JsonContentDecoder.OLLAMA_CONTENT_PATH);
+            OllamaBalancer balancer = clientRegistry.ollamaBalancer();
+            OllamaEndpoint endpoint = balancer.choose(aiConfig.getOllama().isAffinity() ? clientId : null);
+            return observation.observe(endpoint.client().post()
+                    .uri(aiConfig.getOllama().getApiPath())
+                    .bodyValue(requestBody)
+                    .retrieve()
+                    .bodyToFlux(DataBuffer.class)
+                    .transform(StreamDeadline.of(aiConfig.getOllama())::apply)
+                    .doOnNext(chunk -> observation.chunk())
+                    .map(chunk -> {
+                        String raw = processOllamaChunk(chunk, decoder, requestType);
+                        return observation.content(raw, thinkFilter.filter(raw));
+                    })
+                    .concatWith(Mono.fromSupplier(() -> observation.content("", thinkFilter.flush())))
+                    .doOnError(error -> {
+                        log.error("Ollama{} API 错误({}): {}", requestType, endpoint, error.getMessage());
+                        observation.error(error);
+                    })
+                    .doFinally(signal -> {
+                        SignalType outcome = observation.outcome(signal);
+                        balancer.release(endpoint, outcome, observation.getTtft());
+                        streamMetrics.recordDropped(observation.getTags(), "parse_error", decoder.getParseErrors());
+                        recordStreamEnd("ollama", observation, outcome, decoder.getValues());
+                    }));
+        });
+    }
+    
+    /**
+     * DeepSeek流式请求
+     */
+    private Flux<String> deepSeekStream(List<Map<String, String>> messages, String apiKey, String requestType) {
+        Map<String, Object> requestBody = buildDeepSeekRequestBody(messages);
         
-        webClient.post()
-                .bodyValue(requestBody)
-                .retrieve()
-                .bodyToFlux(String.class)
-                .subscribe(
-                        chunk -> {
-                            log.debug("[DeepSeek{}原始流] {}", requestType, chunk);
-                            processDeepSeekChunk(chunk, emitter);
-                        },
-                        error -> {
-                            log.error("DeepSeek{} API 错误: {}", requestType, error.getMessage());
-                            handleDeepSeekError(error, emitter);
-                        },
-                        () -> completeEmitter(emitter)
-                );
+        return Flux.deferContextual(context -> {
+            ThinkTagFilter thinkFilter = new ThinkTagFilter();
+            StreamObservation observation = streamMetrics.start("deepseek", aiConfig.getDeepseek().getModel(),
+                    requestType, context);
+            SseContentDecoder decoder = new SseContentDecoder(JsonContentDecoder.OPENAI_DELTA_CONTENT_PATH);
+            return observation.observe(clientRegistry.deepseek().post()
+                    .uri(aiConfig.getDeepseek().getApiPath())
+                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                    .bodyValue(requestBody)
+                    .retrieve()
+                    .bodyToFlux(DataBuffer.class)
+                    .transform(StreamDeadline.of(aiConfig.getDeepseek())::apply)
+                    .doOnNext(chunk -> observation.chunk())
+                    .map(chunk -> {
+                        String raw = processDeepSeekChunk(chunk, decoder, requestType);
+                        return observation.content(raw, thinkFilter.filter(raw));
+                    })
+                    .concatWith(Mono.fromSupplier(() -> {
+                        String raw = decoder.finish();
+                        return observation.content(raw, thinkFilter.filter(raw) + thinkFilter.flush());
+                    }))
+                    .doOnError(error -> {
+                        log.error("DeepSeek{} API 错误: {}", requestType, error.getMessage());
+                        observation.error(error);
+                    })
+                    .doFinally(signal -> {
+                        streamMetrics.recordDropped(observation.getTags(), "parse_error", decoder.getParseErrors());
+                        streamMetrics.recordDropped(observation.getTags(), "after_done", decoder.getEventsAfterDone());
+                        recordStreamEnd("deepseek", observation, observation.outcome(signal), decoder.getEvents());
+                    }));
+        });
+    }
+    
+    /**
+     * 记录上游流的结束方式：正常结束时统计平均响应长度、首token耗时和生成速率，并反馈给自适应并发限制；
+     * 失败时通知并发限制下调；取消时估算节省的token数
+     */
+    private void recordStreamEnd(String provider, StreamObservation observation, SignalType signal, long tokens) {
+        observation.finish(signal, tokens);
+        if (signal == SignalType.ON_COMPLETE) {
+            streamMetrics.recordCompleted(observation.getTags(), tokens);
+            long firstChunkAt = observation.getFirstChunkAt();
+            if (firstChunkAt > 0) {
+                long ttft = observation.getTtft();
+                double generating = (System.nanoTime() - firstChunkAt) / 1e9;
+                double tokensPerSecond = generating > 0 ? tokens / generating : 0;
+                streamMetrics.recordLatency(observation.getTags(), ttft, tokensPerSecond);
+                requestLimiter.onSample(provider, ttft, tokensPerSecond);
+            }
+        } else if (signal == SignalType.ON_ERROR) {
+            requestLimiter.onFailure(provider);
+        } else if (signal == SignalType.CANCEL) {
+            long saved = streamMetrics.recordCancelled(observation.getTags(), tokens);
+            log.info("{}上游流已取消，已生成{}个token，估算节省{}个token", provider, tokens, saved);
+        }
     }
     
     /**
-     * 构建Ollama请求体
+     * 构建Ollama请求体，配置了keep-alive时让模型在请求结束后继续驻留内存
      */
-    private Map<String, Object> buildOllamaRequestBody(String prompt) {
+    private Map<String, Object> buildOllamaRequestBody(List<Map<String, String>> messages) {
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("model", aiConfig.getOllama().getModel());
-        List<Map<String, String>> messages = new ArrayList<>();
-        messages.add(Map.of("role", "user", "content", prompt));
         requestBody.put("messages", messages);
         requestBody.put("stream", true);
+        String keepAlive = aiConfig.getOllama().getKeepAlive();
+        if (keepAlive != null && !keepAlive.isBlank()) {
+            requestBody.put("keep_alive", keepAlive);
+        }
         return requestBody;
     }
     
     /**
      * 构建DeepSeek请求体
      */
-    private Map<String, Object> buildDeepSeekRequestBody(String prompt) {
+    private Map<String, Object> buildDeepSeekRequestBody(List<Map<String, String>> messages) {
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("model", aiConfig.getDeepseek().getModel());
-        List<Map<String, String>> messages = new ArrayList<>();
-        messages.add(Map.of("role", "user", "content", prompt));
         requestBody.put("messages", messages);
         requestBody.put("stream", true);
         return requestBody;
     }
     
     /**
-     * 构建Ollama WebClient
+     * 构建消息列表（可选的系统提示词 + 历史消息 + 用户消息）
      */
-    private WebClient buildOllamaWebClient(String url) {
-        return WebClient.builder()
-                .baseUrl(url)
-                .defaultHeader("Content-Type", "application/json")
-                .build();
+    private List<Map<String, String>> buildMessages(String systemPrompt, List<Map<String, String>> history,
+                                                    String prompt) {
+        List<Map<String, String>> messages = new ArrayList<>(history.size() + 2);
+        if (systemPrompt != null) {
+            messages.add(Map.of("role", "system", "content", systemPrompt));
+        }
+        messages.addAll(history);
+        // 消息为null时按空消息发送，Map.of不接受null
+        messages.add(Map.of("role", "user", "content", prompt == null ? "" : prompt));
+        return messages;
     }
     
     /**
-     * 构建DeepSeek WebClient
+     * 处理Ollama响应块（NDJSON字节流），返回其中的content内容，处理后释放缓冲区
      */
-    private WebClient buildDeepSeekWebClient(String url, String apiKey) {
-        return WebClient.builder()
-                .baseUrl(url)
-                .defaultHeader("Authorization", "Bearer " + apiKey)
-                .defaultHeader("Content-Type", "application/json")
-                .build();
+    static String processOllamaChunk(DataBuffer chunk, JsonContentDecoder decoder, String requestType) {
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("[Ollama{}原始流] {}", requestType, chunk.toString(StandardCharsets.UTF_8));
+            }
+            return decoder.decode(chunk);
+        } finally {
+            DataBufferUtils.release(chunk);
+        }
     }
     
     /**
-     * 处理Ollama响应块
+     * 处理DeepSeek响应块（SSE字节流），返回其中完整事件delta中的content内容，处理后释放缓冲区
      */
-    private void processOllamaChunk(String chunk, SseEmitter emitter, AtomicBoolean inThinkBlock) {
+    static String processDeepSeekChunk(DataBuffer chunk, SseContentDecoder decoder, String requestType) {
         try {
-            JsonNode node = objectMapper.readTree(chunk);
-            if (node.has("message")) {
-                JsonNode messageNode = node.get("message");
-                if (messageNode.has("content")) {
-                    String content = messageNode.get("content").asText();
-                    content = processThinkTags(content, inThinkBlock);
-                    
-                    if (!content.isEmpty()) {
-                        emitter.send(content);
-                    }
-                }
+            if (log.isDebugEnabled()) {
+                log.debug("[DeepSeek{}原始流] {}", requestType, chunk.toString(StandardCharsets.UTF_8));
             }
-        } catch (Exception e) {
-            // 忽略解析异常，继续流
+            return decoder.decode(chunk);
+        } finally {
+            DataBufferUtils.release(chunk);
         }
     }
     
     /**
-     * 处理DeepSeek响应块
+     * 未选择提供商、DeepSeek缺少API Key或提供商不受支持时返回提示，否则返回null
      */
-    private void processDeepSeekChunk(String chunk, SseEmitter emitter) {
-        try {
-            JsonNode node = objectMapper.readTree(chunk);
-            if (node.has("choices")) {
-                JsonNode choices = node.get("choices");
-                if (choices.isArray() && choices.size() > 0) {
-                    JsonNode delta = choices.get(0).get("delta");
-                    if (delta != null && delta.has("content")) {
-                        String content = delta.get("content").asText();
-                        emitter.send(content);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            // 忽略解析异常，继续流
+    protected String providerProblem(String provider, String apiKey, String requestType) {
+        // 检查是否已选择AI提供商
+        if (provider == null || provider.trim().isEmpty()) {
+            return "请先选择AI提供商（本地Ollama或远程DeepSeek）后再进行" + requestType + "。";
         }
+        if ("deepseek".equals(provider) && (apiKey == null || apiKey.isEmpty())) {
+            return "请先设置 DeepSeek API Key";
+        }
+        if (!"ollama".equals(provider) && !"deepseek".equals(provider)) {
+            return "不支持的AI提供商：" + provider + "，请选择本地Ollama或远程DeepSeek。";
+        }
+        return null;
     }
     
     /**
-     * 处理<think>标签
+     * 提供商是否已选择且可用（DeepSeek需已设置API Key）
      */
-    private String processThinkTags(String content, AtomicBoolean inThinkBlock) {
-        if (content.contains("<think>")) {
-            inThinkBlock.set(true);
-            content = content.replaceAll("<think>.*", "");
+    protected boolean isProviderReady(HttpSession session, String provider) {
+        return isProviderReady(provider, sessionApiKey(session));
+    }
+    
+    /**
+     * 提供商是否已选择且可用（DeepSeek需传入API Key）
+     */
+    protected boolean isProviderReady(String provider, String apiKey) {
+        if ("ollama".equals(provider)) {
+            return true;
         }
-        
-        if (content.contains("</think>")) {
-            inThinkBlock.set(false);
-            content = content.replaceAll(".*</think>", "");
+        if ("deepseek".equals(provider)) {
+            return apiKey != null && !apiKey.isEmpty();
         }
-        
-        if (inThinkBlock.get()) {
-            return "";
-        }
-        
-        return content.replaceAll("\\n+", "\n").trim();
+        return false;
     }
     
     /**
-     * 处理Ollama错误
+     * 从会话中读取DeepSeek API Key（选择Ollama时也读取，供路由策略切换到DeepSeek时使用）
      */
-    private void handleOllamaError(Throwable error, SseEmitter emitter) {
-        try {
-            emitter.send("抱歉，本地Ollama服务未启动或连接失败。请确保Ollama已安装并运行在 " + aiConfig.getOllama().getBaseUrl());
-            emitter.complete();
-        } catch (Exception e) {
-            emitter.completeWithError(e);
+    protected String sessionApiKey(HttpSession session) {
+        return (String) session.getAttribute("deepseekApiKey");
+    }
+    
+    /**
+     * 获取提供商当前使用的模型
+     */
+    protected String getModel(String provider) {
+        return "ollama".equals(provider) ? aiConfig.getOllama().getModel() : aiConfig.getDeepseek().getModel();
+    }
+    
+    /**
+     * 根据提供商和错误类型生成提示文案
+     */
+    protected String errorMessage(String provider, Throwable error) {
+        if (error instanceof UpstreamTimeoutException timeout) {
+            return "\n抱歉，AI服务响应超时（" + timeout.getPhase().getDescription() + "），请稍后重试。";
+        }
+        if (error instanceof LimitExceededException limited) {
+            return "抱歉，当前请求较多（" + limited.getReason().getDescription() + "），请稍后重试。";
         }
+        if (error instanceof CircuitBreakerOpenException) {
+            return "抱歉，AI服务近期连续失败，已暂停请求（熔断中），请稍后重试。";
+        }
+        if ("ollama".equals(provider)) {
+            return "抱歉，本地Ollama服务未启动或连接失败。请确保Ollama已安装并运行在 " + failedOllamaEndpoint(error);
+        }
+        return "抱歉，请求失败，请检查API Key是否正确";
     }
     
     /**
-     * 处理DeepSeek错误
+     * 出错请求所在的Ollama实例地址；错误中没有请求地址时列出所有配置的实例
      */
-    private void handleDeepSeekError(Throwable error, SseEmitter emitter) {
-        try {
-            emitter.send("抱歉，请求失败，请检查API Key是否正确");
-            emitter.complete();
-        } catch (Exception e) {
-            emitter.completeWithError(e);
+    private String failedOllamaEndpoint(Throwable error) {
+        URI uri = null;
+        if (error instanceof WebClientRequestException requestError) {
+            uri = requestError.getUri();
+        } else if (error instanceof WebClientResponseException responseError && responseError.getRequest() != null) {
+            uri = responseError.getRequest().getURI();
+        }
+        List<OllamaEndpoint> endpoints = clientRegistry.ollamaBalancer().getEndpoints();
+        if (uri != null) {
+            String url = uri.toString();
+            return endpoints.stream()
+                    .map(OllamaEndpoint::getBaseUrl)
+                    .filter(url::startsWith)
+                    .findFirst()
+                    .orElse(uri.getScheme() + "://" + uri.getRawAuthority());
         }
+        return endpoints.stream().map(OllamaEndpoint::getBaseUrl).collect(Collectors.joining("、"));
     }
     
     /**
-     * 处理缺失的API Key
+     * 发送内容，发送失败（如客户端已断开）时返回false
+     * SseEmitter.send(String)不会按行拆分，内容中的换行会破坏SSE帧；多行内容按行写成多个data行，
+     * 客户端按规范以换行拼接，得到的事件数据与原内容一致
      */
-    private void handleMissingApiKey(SseEmitter emitter) {
+    private boolean sendQuietly(SseEmitter emitter, String content) {
         try {
-            emitter.send("请先设置 DeepSeek API Key");
-            emitter.complete();
+            SseEmitter.SseEventBuilder event = SseEmitter.event();
+            for (String line : LINE_BREAK.split(content, -1)) {
+                event.data(line);
+            }
+            emitter.send(event);
+            return true;
         } catch (Exception e) {
-            emitter.completeWithError(e);
+            log.debug("发送SSE内容失败: {}", e.getMessage());
+            return false;
         }
     }
     
@@ -1,19 +1,124 @@
 package com.example.deepseek.service;
 
+import com.example.deepseek.breaker.CircuitBreakerRegistry;
+import com.example.deepseek.client.AiClientRegistry;
 import com.example.deepseek.config.AiConfig;
+import com.example.deepseek.conversation.Conversation;
+import com.example.deepseek.conversation.ConversationStore;
+import com.example.deepseek.limit.RequestLimiter;
+import com.example.deepseek.metrics.StreamMetrics;
+import com.example.deepseek.retry.RetryPolicy;
+import com.example.deepseek.routing.ProviderRouter;
+import com.example.deepseek.stream.TokenEstimator;
 import jakarta.servlet.http.HttpSession;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 
+import java.util.stream.Collectors;
+
+@Slf4j
 @Service
 public class ChatService extends BaseAiService {
 
-    public ChatService(AiConfig aiConfig) {
-        super(aiConfig);
+    private static final String SUMMARY_PROMPT = "请把下面的对话压缩成一段摘要，保留用户的身份、偏好、已确认的事实和尚未解决的问题，"
+            + "不超过%d字，只输出摘要本身。";
+
+    private final ConversationStore conversationStore;
+
+    public ChatService(AiConfig aiConfig, AiClientRegistry clientRegistry, StreamMetrics streamMetrics,
+                       RequestLimiter requestLimiter, ProviderRouter providerRouter,
+                       CircuitBreakerRegistry circuitBreakers, RetryPolicy retryPolicy,
+                       ConversationStore conversationStore) {
+        super(aiConfig, clientRegistry, streamMetrics, requestLimiter, providerRouter, circuitBreakers,
+                retryPolicy);
+        this.conversationStore = conversationStore;
     }
 
-    public void streamChat(String message, HttpSession session, SseEmitter emitter) {
+    /**
+     * 流式聊天，同一会话内相同conversationId的消息共享对话记忆
+     */
+    public void streamChat(String message, String conversationId, HttpSession session, SseEmitter emitter) {
         String provider = getDefaultProvider(session);
-        executeStreamRequest(message, session, emitter, provider, "聊天");
+        subscribeEmitter(chatContent(message, provider, sessionApiKey(session), session.getId(),
+                ConversationStore.key("session:" + session.getId(), conversationId)), emitter, "聊天");
+    }
+
+    /**
+     * 响应式聊天：直接返回SSE事件流；传入客户端标识时按客户端标识和conversationId保存对话记忆
+     */
+    public Flux<ServerSentEvent<String>> chatEvents(String message, String conversationId, String provider,
+                                                    String apiKey, String clientId) {
+        String memoryKey = clientId == null ? null : ConversationStore.key("client:" + clientId, conversationId);
+        return toServerSentEvents(chatContent(message, provider, apiKey, clientId, memoryKey), "聊天");
+    }
+
+    /**
+     * 清空对话记忆
+     */
+    public void resetConversation(String conversationId, HttpSession session) {
+        conversationStore.clear(ConversationStore.key("session:" + session.getId(), conversationId));
+    }
+
+    /**
+     * 聊天内容流：携带token预算内的历史消息，正常结束后记录本轮问答；
+     * 出错、超时或中途取消的回答不进入历史
+     */
+    private Flux<String> chatContent(String message, String provider, String apiKey, String clientId,
+                                     String memoryKey) {
+        if (memoryKey == null || message == null || !conversationStore.isEnabled()
+                || !isProviderReady(provider, apiKey)) {
+            return streamContent(null, message, provider, apiKey, clientId, "聊天")
+                    .onErrorResume(error -> Flux.just(errorMessage(provider, error)));
+        }
+
+        return Flux.defer(() -> {
+            Conversation conversation = conversationStore.get(memoryKey);
+            AiConfig.ConversationMemory spec = aiConfig.getConversation();
+            Conversation.Window window = conversation.window(
+                    spec.getHistoryTokens() - TokenEstimator.estimate(message),
+                    (int) (spec.getHistoryTokens() * spec.getPrefixHeadroom()));
+            summarizeEarlyMessages(memoryKey, conversation, window, provider, apiKey, clientId);
+            StringBuilder answer = new StringBuilder();
+            return streamContent(null, window.messages(), message, provider, apiKey, clientId, "聊天")
+                    .doOnNext(answer::append)
+                    .doOnComplete(() -> {
+                        conversation.append(message, answer.toString());
+                        conversationStore.update(memoryKey, conversation);
+                    })
+                    .onErrorResume(error -> Flux.just(errorMessage(provider, error)));
+        });
+    }
+
+    /**
+     * 窗口之外的早期消息累计到min-turns轮时，在后台由模型压缩为摘要（与聊天请求共用并发限制和熔断）
+     */
+    private void summarizeEarlyMessages(String memoryKey, Conversation conversation, Conversation.Window window,
+                                        String provider, String apiKey, String clientId) {
+        AiConfig.ConversationSummary spec = aiConfig.getConversation().getSummary();
+        if (!spec.isEnabled() || window.excludedMessages() < spec.getMinTurns() * 2) {
+            return;
+        }
+        Conversation.SummaryTask task = conversation.startSummary(window.excludedMessages());
+        if (task == null) {
+            return;
+        }
+        int maxTokens = spec.getMaxTokens();
+        streamContent(String.format(SUMMARY_PROMPT, maxTokens), task.text(), provider, apiKey, clientId, "对话摘要")
+                .collect(Collectors.joining())
+                .subscribe(summary -> {
+                    // 每个字符至多估算为1个token，超出时按字符数截断
+                    String text = TokenEstimator.estimate(summary) > maxTokens && summary.length() > maxTokens
+                            ? summary.substring(0, maxTokens)
+                            : summary;
+                    conversation.finishSummary(task, text);
+                    conversationStore.update(memoryKey, conversation);
+                    log.debug("对话摘要已更新: {}, {}字", memoryKey, text.length());
+                }, error -> {
+                    log.warn("对话摘要生成失败: {}", error.getMessage());
+                    conversation.abortSummary();
+                });
     }
-} 
\ No newline at end of file
+}
@@ -1,33 +1,200 @@
 package com.example.deepseek.service;
 
+import com.example.deepseek.batch.BatchTranslator;
+import com.example.deepseek.cache.TranslationCache;
+import com.example.deepseek.breaker.CircuitBreakerRegistry;
+import com.example.deepseek.client.AiClientRegistry;
 import com.example.deepseek.config.AiConfig;
+import com.example.deepseek.limit.RequestLimiter;
+import com.example.deepseek.metrics.StreamMetrics;
+import com.example.deepseek.retry.RetryPolicy;
+import com.example.deepseek.routing.ProviderRouter;
 import jakarta.servlet.http.HttpSession;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+@Slf4j
 @Service
 public class TranslateService extends BaseAiService {
 
-    public TranslateService(AiConfig aiConfig) {
-        super(aiConfig);
+    private final TranslationCache translationCache;
+
+    public TranslateService(AiConfig aiConfig, AiClientRegistry clientRegistry, StreamMetrics streamMetrics,
+                            RequestLimiter requestLimiter, ProviderRouter providerRouter,
+                            CircuitBreakerRegistry circuitBreakers, RetryPolicy retryPolicy,
+                            TranslationCache translationCache) {
+        super(aiConfig, clientRegistry, streamMetrics, requestLimiter, providerRouter, circuitBreakers,
+                retryPolicy);
+        this.translationCache = translationCache;
     }
     
     public void streamTranslate(String text, String targetLang, HttpSession session, SseEmitter emitter) {
         String provider = getDefaultProvider(session);
+        subscribeEmitter(translateContent(text, targetLang, provider, sessionApiKey(session),
+                session.getId()), emitter, "翻译");
+    }
+    
+    /**
+     * 响应式翻译：直接返回SSE事件流
+     */
+    public Flux<ServerSentEvent<String>> translateEvents(String text, String targetLang, String provider,
+                                                         String apiKey, String clientId) {
+        return toServerSentEvents(translateContent(text, targetLang, provider, apiKey, clientId), "翻译");
+    }
+    
+    /**
+     * 翻译内容流：命中缓存直接回放，否则请求模型并在正常结束后写入缓存
+     */
+    private Flux<String> translateContent(String text, String targetLang, String provider, String apiKey,
+                                          String clientId) {
         String prompt = buildTranslatePrompt(text, targetLang);
-        executeStreamRequest(prompt, session, emitter, provider, "翻译");
+        if (text == null || !isProviderReady(provider, apiKey)) {
+            return streamContent(null, prompt, provider, apiKey, clientId, "翻译")
+                    .onErrorResume(error -> Flux.just(errorMessage(provider, error)));
+        }
+        
+        // 命中缓存直接回放，不再请求模型
+        String cacheKey = TranslationCache.key(provider, getModel(provider), targetLang, text);
+        String cached = translationCache.get(cacheKey);
+        if (cached != null) {
+            log.debug("翻译缓存命中: {}", cacheKey);
+            return Flux.just(cached);
+        }
+        
+        // 仅在流正常结束时写入缓存，超时、出错或中途取消的结果不缓存；
+        // 路由切换或对冲后译文来自另一提供商时，按实际响应的提供商写入
+        return Flux.defer(() -> {
+            StringBuilder translation = new StringBuilder();
+            AtomicReference<String> answered = new AtomicReference<>();
+            return streamContent(null, List.of(), prompt, provider, apiKey, clientId, "翻译", answered)
+                    .doOnNext(translation::append)
+                    .doOnComplete(() -> store(answered.get(), targetLang, text, translation.toString()))
+                    .onErrorResume(error -> Flux.just(errorMessage(provider, error)));
+        });
+    }
+    
+    /**
+     * 批量翻译，使用会话中选择的提供商
+     */
+    public Flux<ServerSentEvent<Object>> batchEvents(List<String> segments, String targetLang, HttpSession session) {
+        String provider = getDefaultProvider(session);
+        return batchEvents(segments, targetLang, provider, sessionApiKey(session), session.getId());
+    }
+    
+    /**
+     * 批量翻译：按原顺序逐个返回片段译文（JSON：index、translation或error），最后以done事件返回汇总；
+     * 无法执行时只返回一个error事件。模型请求与单条翻译共用缓存、并发限制和熔断
+     */
+    public Flux<ServerSentEvent<Object>> batchEvents(List<String> segments, String targetLang, String provider,
+                                                     String apiKey, String clientId) {
+        AiConfig.TranslateBatch spec = aiConfig.getTranslate().getBatch();
+        String problem = providerProblem(provider, apiKey, "批量翻译");
+        if (problem == null && (targetLang == null || targetLang.isBlank())) {
+            problem = "请指定目标语言";
+        }
+        if (problem == null && segments.size() > spec.getMaxSegments()) {
+            problem = "片段数超过上限（" + spec.getMaxSegments() + "），请分批提交。";
+        }
+        if (problem != null) {
+            return Flux.just(ServerSentEvent.<Object>builder(problem).event("error").build());
+        }
+        
+        // 同一批次的请求数不超过提供商当前的并发上限，避免占满排队队列
+        int concurrency = Math.min(spec.getConcurrency(), requestLimiter.forProvider(provider).getMaxInFlight());
+        BatchTranslator translator = new BatchTranslator(spec.getChunkTokens(), spec.getMaxSegmentsPerChunk(),
+                concurrency);
+        BatchTranslator.Backend backend = new BatchTranslator.Backend() {
+            @Override
+            public String cached(String text) {
+                return translationCache.get(TranslationCache.key(provider, getModel(provider), targetLang, text));
+            }
+            
+            @Override
+            public void store(String text, String translation, String source) {
+                TranslateService.this.store(source, targetLang, text, translation);
+            }
+            
+            @Override
+            public Mono<BatchTranslator.Reply> translate(String text) {
+                return request(buildTranslatePrompt(text, targetLang));
+            }
+            
+            @Override
+            public Mono<BatchTranslator.Reply> translateNumbered(String numbered, int count) {
+                return request(buildNumberedPrompt(numbered, targetLang));
+            }
+            
+            private Mono<BatchTranslator.Reply> request(String prompt) {
+                return Mono.defer(() -> {
+                    AtomicReference<String> answered = new AtomicReference<>();
+                    return streamContent(null, List.of(), prompt, provider, apiKey, clientId, "批量翻译", answered)
+                            .collect(Collectors.joining())
+                            .map(text -> new BatchTranslator.Reply(text, answered.get()));
+                });
+            }
+            
+            @Override
+            public String describe(Throwable error) {
+                return errorMessage(provider, error).strip();
+            }
+        };
+        
+        long start = System.nanoTime();
+        return translator.translate(segments, backend)
+                .doOnNext(event -> {
+                    if (event instanceof BatchTranslator.Summary summary) {
+                        log.info("批量翻译完成: {}, 耗时{}ms", summary,
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    }
+                })
+                .map(event -> event instanceof BatchTranslator.Summary
+                        ? ServerSentEvent.<Object>builder(event).event("done").build()
+                        : ServerSentEvent.<Object>builder(event).build());
+    }
+    
+    /**
+     * 按实际给出译文的提供商写入缓存，没有提供商（未收到内容）时不写入
+     */
+    private void store(String provider, String targetLang, String text, String translation) {
+        if (provider != null) {
+            translationCache.put(TranslationCache.key(provider, getModel(provider), targetLang, text), translation);
+        }
     }
     
     /**
      * 构建翻译提示词
      */
     private String buildTranslatePrompt(String text, String targetLang) {
+        String language = languageName(targetLang);
+        return String.format("请将以下文本翻译成%s（如果原文已经是%s，请直接返回原文，不要做任何解释）：\n\n%s",
+                language, language, text);
+    }
+    
+    /**
+     * 构建多段翻译提示词，每段以【编号】开头
+     */
+    private String buildNumberedPrompt(String numbered, String targetLang) {
+        String language = languageName(targetLang);
+        return String.format("下面每行是一段以【编号】开头的文本，请将每段翻译成%s（已经是%s的段落原样返回），"
+                + "每段译文单独一行并以相同的【编号】开头，不要合并、拆分或省略段落，不要做任何解释：\n\n%s",
+                language, language, numbered);
+    }
+    
+    private static String languageName(String targetLang) {
         if ("zh".equals(targetLang)) {
-            return String.format("请将以下文本翻译成中文（如果原文已经是中文，请直接返回原文，不要做任何解释）：\n\n%s", text);
+            return "中文";
         } else if ("en".equals(targetLang)) {
-            return String.format("请将以下文本翻译成英文（如果原文已经是英文，请直接返回原文，不要做任何解释）：\n\n%s", text);
-        } else {
-            return String.format("请将以下文本翻译成%s（如果原文已经是%s，请直接返回原文，不要做任何解释）：\n\n%s", targetLang, targetLang, text);
+            return "英文";
         }
+        return targetLang;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,205 @@
+package com.example.deepseek.stream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 流式JSON内容提取器
+ * 基于Jackson非阻塞解析器，每个流复用同一个解析器实例，按字节增量喂入；
+ * JSON值可以跨多个输入块，也可以一块包含多个值（如Ollama的NDJSON）。
+ * 只跟踪目标字段路径，提取其字符串值，不构建JsonNode树。
+ * 每个流使用一个实例，非线程安全。
+ */
+@Slf4j
+public final class JsonContentDecoder {
+
+    /** Ollama: {"message":{"content":"..."}} */
+    public static final String[] OLLAMA_CONTENT_PATH = {"message", "content"};
+    /** OpenAI兼容（DeepSeek）: {"choices":[{"delta":{"content":"..."}}]} */
+    public static final String[] OPENAI_DELTA_CONTENT_PATH = {"choices", "0", "delta", "content"};
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int MAX_TRACKED_DEPTH = 32;
+
+    private final String[] targetPath;
+    private final StringBuilder out = new StringBuilder(64);
+
+    // 每层容器的状态：是否为数组、数组当前元素下标、对象当前字段名
+    private final boolean[] isArray = new boolean[MAX_TRACKED_DEPTH + 1];
+    private final int[] index = new int[MAX_TRACKED_DEPTH + 1];
+    private final String[] fieldName = new String[MAX_TRACKED_DEPTH + 1];
+    private int depth;
+    // 从根开始连续位于目标路径上的容器层数
+    private int matched;
+
+    private JsonParser parser;
+    // 读取DataBuffer时复用的字节缓冲区
+    private byte[] scratch = new byte[1024];
+    private long parseErrors;
+    private long values;
+
+    public JsonContentDecoder(String[] targetPath) {
+        this.targetPath = targetPath;
+        resetParser();
+    }
+
+    /**
+     * 喂入一段UTF-8字节，返回其中完整解析出的目标字段内容（可能为空串）
+     * 调用返回前会消费完全部输入，调用方可以复用传入的数组
+     */
+    public String decode(byte[] bytes, int offset, int length) {
+        out.setLength(0);
+        if (length == 0) {
+            return "";
+        }
+        try {
+            ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).feedInput(bytes, offset, offset + length);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                onToken(token);
+            }
+        } catch (IOException e) {
+            // 输入已损坏，丢弃当前解析状态，从下一段输入重新开始
+            parseErrors++;
+            log.debug("流式JSON解析失败，已重置解析器: {}", e.getMessage());
+            resetParser();
+        }
+        return out.isEmpty() ? "" : out.toString();
+    }
+
+    /**
+     * 喂入一个响应缓冲区（不负责释放缓冲区）
+     */
+    public String decode(DataBuffer buffer) {
+        int length = buffer.readableByteCount();
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.read(scratch, 0, length);
+        return decode(scratch, 0, length);
+    }
+
+    /**
+     * 喂入一段文本（便于处理已解码为字符串的响应块）
+     */
+    public String decode(String chunk) {
+        byte[] encoded = chunk.getBytes(StandardCharsets.UTF_8);
+        return decode(encoded, 0, encoded.length);
+    }
+
+    /**
+     * 输入在一个JSON值中途结束时（如SSE事件被截断），丢弃未完成的值并计为一次解析失败
+     * 用于按帧喂入的场景：每帧都应是完整的JSON，残缺的值不能与下一帧拼接
+     *
+     * @return 是否丢弃了未完成的值
+     */
+    public boolean discardIncomplete() {
+        if (depth == 0) {
+            return false;
+        }
+        parseErrors++;
+        log.debug("流式JSON帧不完整，已重置解析器");
+        resetParser();
+        return true;
+    }
+
+    /**
+     * 累计的解析失败次数
+     */
+    public long getParseErrors() {
+        return parseErrors;
+    }
+
+    /**
+     * 累计完整解析的顶层JSON值个数（流式响应中约等于生成的token数）
+     */
+    public long getValues() {
+        return values;
+    }
+
+    private void onToken(JsonToken token) throws IOException {
+        switch (token) {
+            case FIELD_NAME -> {
+                if (depth <= MAX_TRACKED_DEPTH) {
+                    fieldName[depth] = parser.currentName();
+                }
+            }
+            case START_OBJECT, START_ARRAY -> {
+                boolean onPath = valueOnPath();
+                depth++;
+                if (depth <= MAX_TRACKED_DEPTH) {
+                    isArray[depth] = token == JsonToken.START_ARRAY;
+                    index[depth] = -1;
+                    fieldName[depth] = null;
+                }
+                if (onPath) {
+                    matched = depth;
+                }
+            }
+            case END_OBJECT, END_ARRAY -> {
+                if (matched == depth) {
+                    matched--;
+                }
+                depth--;
+                if (depth == 0) {
+                    values++;
+                }
+            }
+            case VALUE_STRING -> {
+                if (valueOnPath() && depth == targetPath.length) {
+                    out.append(parser.getText());
+                }
+            }
+            default -> valueOnPath();
+        }
+    }
+
+    /**
+     * 判断当前值是否位于目标路径上（同时推进数组下标）
+     * 根值总在路径上；第d层容器中的值需要其字段名或下标与targetPath[d-1]一致
+     */
+    private boolean valueOnPath() {
+        if (depth == 0) {
+            return true;
+        }
+        if (depth > MAX_TRACKED_DEPTH) {
+            return false;
+        }
+        String segment = null;
+        if (isArray[depth]) {
+            index[depth]++;
+        } else {
+            segment = fieldName[depth];
+        }
+        if (matched != depth || depth > targetPath.length) {
+            return false;
+        }
+        String expected = targetPath[depth - 1];
+        return segment != null ? expected.equals(segment) : isIndex(expected, index[depth]);
+    }
+
+    private static boolean isIndex(String expected, int index) {
+        return expected.length() == 1 && expected.charAt(0) - '0' == index
+                || expected.equals(Integer.toString(index));
+    }
+
+    private void resetParser() {
+        try {
+            if (parser != null) {
+                parser.close();
+            }
+            parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("无法创建JSON解析器", e);
+        }
+        depth = 0;
+        matched = 0;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.deepseek.stream;
+
+import org.springframework.core.io.buffer.DataBuffer;
+
+/**
+ * OpenAI兼容SSE流的内容提取器
+ * 由 {@link SseEventDecoder} 切分事件，再逐事件交给 {@link JsonContentDecoder} 提取目标字段；
+ * 单个事件损坏只丢弃该事件，不影响同一响应块中的其他事件。
+ * 每个流使用一个实例，非线程安全。
+ */
+public final class SseContentDecoder implements SseEventDecoder.DataHandler {
+
+    private final SseEventDecoder events = new SseEventDecoder();
+    private final JsonContentDecoder json;
+    private final StringBuilder out = new StringBuilder(64);
+
+    public SseContentDecoder(String[] targetPath) {
+        this.json = new JsonContentDecoder(targetPath);
+    }
+
+    /**
+     * 喂入一个响应缓冲区（不负责释放缓冲区），返回其中完整事件的内容（可能为空串）
+     */
+    public String decode(DataBuffer buffer) {
+        out.setLength(0);
+        events.decode(buffer, this);
+        return result();
+    }
+
+    /**
+     * 喂入一段字节，返回其中完整事件的内容（可能为空串）
+     */
+    public String decode(byte[] bytes, int offset, int length) {
+        out.setLength(0);
+        events.decode(bytes, offset, length, this);
+        return result();
+    }
+
+    /**
+     * 流结束时调用，返回最后一个未以空行结束的事件的内容
+     */
+    public String finish() {
+        out.setLength(0);
+        events.finish(this);
+        return result();
+    }
+
+    @Override
+    public void onData(byte[] data, int offset, int length) {
+        out.append(json.decode(data, offset, length));
+        json.discardIncomplete();
+    }
+
+    /**
+     * 是否已收到[DONE]
+     */
+    public boolean isDone() {
+        return events.isDone();
+    }
+
+    /**
+     * 无法解析或不完整的事件数
+     */
+    public long getParseErrors() {
+        return json.getParseErrors();
+    }
+
+    /**
+     * 已收到的数据事件数（流式响应中约等于生成的token数）
+     */
+    public long getEvents() {
+        return events.getEvents();
+    }
+
+    /**
+     * [DONE]之后被丢弃的事件数
+     */
+    public long getEventsAfterDone() {
+        return events.getEventsAfterDone();
+    }
+
+    private String result() {
+        return out.isEmpty() ? "" : out.toString();
+    }
+}
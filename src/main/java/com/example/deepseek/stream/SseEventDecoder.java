@@ -0,0 +1,177 @@
+package com.example.deepseek.stream;
+
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.util.Arrays;
+
+/**
+ * 增量式SSE（text/event-stream）解码器
+ * 按字节扫描响应块，跨缓冲区边界拼接行，支持\n、\r\n、\r换行；
+ * 去掉"data:"前缀（及其后一个空格），同一事件的多行data以\n连接，空行结束事件；
+ * 注释行和event/id/retry字段被忽略；识别OpenAI风格的"[DONE]"结束标记。
+ * 全程不使用异常做流程控制。每个流使用一个实例，非线程安全。
+ */
+public final class SseEventDecoder {
+
+    /**
+     * 事件数据回调，data数组仅在回调期间有效
+     */
+    @FunctionalInterface
+    public interface DataHandler {
+        void onData(byte[] data, int offset, int length);
+    }
+
+    private static final byte[] DATA_FIELD = {'d', 'a', 't', 'a'};
+    private static final byte[] DONE_MARKER = {'[', 'D', 'O', 'N', 'E', ']'};
+
+    private byte[] scratch = new byte[1024];
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private byte[] eventData = new byte[256];
+    private int eventDataLength;
+    private boolean eventHasData;
+    private boolean lastWasCr;
+
+    private boolean done;
+    private long events;
+    private long eventsAfterDone;
+
+    /**
+     * 解码一个响应缓冲区（不负责释放缓冲区）
+     */
+    public void decode(DataBuffer buffer, DataHandler handler) {
+        int length = buffer.readableByteCount();
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.read(scratch, 0, length);
+        decode(scratch, 0, length, handler);
+    }
+
+    /**
+     * 解码一段字节，每个完整事件的data回调一次
+     */
+    public void decode(byte[] bytes, int offset, int length, DataHandler handler) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            byte b = bytes[i];
+            if (b == '\n') {
+                if (lastWasCr) {
+                    lastWasCr = false;
+                    continue;
+                }
+                processLine(handler);
+            } else if (b == '\r') {
+                lastWasCr = true;
+                processLine(handler);
+            } else {
+                lastWasCr = false;
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[lineLength++] = b;
+            }
+        }
+    }
+
+    /**
+     * 流结束时调用，分发最后一个未以空行结束的事件
+     */
+    public void finish(DataHandler handler) {
+        if (lineLength > 0) {
+            processLine(handler);
+        }
+        dispatchEvent(handler);
+    }
+
+    /**
+     * 是否已收到[DONE]
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * 已分发的数据事件数（不含[DONE]）
+     */
+    public long getEvents() {
+        return events;
+    }
+
+    /**
+     * [DONE]之后仍收到的事件数（已丢弃）
+     */
+    public long getEventsAfterDone() {
+        return eventsAfterDone;
+    }
+
+    private void processLine(DataHandler handler) {
+        int length = lineLength;
+        lineLength = 0;
+        if (length == 0) {
+            dispatchEvent(handler);
+            return;
+        }
+        if (line[0] == ':') {
+            // 注释行（常用作心跳）
+            return;
+        }
+
+        int colon = indexOf(line, length, (byte) ':');
+        int nameLength = colon < 0 ? length : colon;
+        if (!Arrays.equals(line, 0, nameLength, DATA_FIELD, 0, DATA_FIELD.length)) {
+            // event、id、retry等字段不影响内容
+            return;
+        }
+
+        int valueStart = colon < 0 ? length : colon + 1;
+        if (valueStart < length && line[valueStart] == ' ') {
+            valueStart++;
+        }
+        if (eventHasData) {
+            appendEventData(line, 0, 0);
+            eventData[eventDataLength++] = '\n';
+        }
+        appendEventData(line, valueStart, length - valueStart);
+        eventHasData = true;
+    }
+
+    private void dispatchEvent(DataHandler handler) {
+        if (!eventHasData) {
+            return;
+        }
+        int length = eventDataLength;
+        eventHasData = false;
+        eventDataLength = 0;
+
+        if (done) {
+            eventsAfterDone++;
+            return;
+        }
+        if (Arrays.equals(eventData, 0, length, DONE_MARKER, 0, DONE_MARKER.length)) {
+            done = true;
+            return;
+        }
+        events++;
+        handler.onData(eventData, 0, length);
+    }
+
+    /**
+     * 追加事件数据，并保证之后至少还能再写入一个字节
+     */
+    private void appendEventData(byte[] src, int offset, int length) {
+        if (eventDataLength + length + 1 > eventData.length) {
+            eventData = Arrays.copyOf(eventData, Math.max(eventData.length * 2, eventDataLength + length + 1));
+        }
+        System.arraycopy(src, offset, eventData, eventDataLength, length);
+        eventDataLength += length;
+    }
+
+    private static int indexOf(byte[] bytes, int length, byte target) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.deepseek.stream;
+
+/**
+ * 增量式<think>标签过滤器
+ * 逐字符扫描每个响应块，跨块保留标签的部分匹配状态，输出<think>...</think>之外的可见文本。
+ * 不使用正则，不裁剪token之间的空白；仅在思考块结束后丢弃紧随其后的空白。
+ * 没有结束标签的<think>只去掉标签本身：思考块中的内容暂存，流结束时仍未闭合则由flush()作为普通文本输出。
+ * 每个流使用一个实例，非线程安全（同一流的信号是串行的）。
+ */
+public final class ThinkTagFilter {
+
+    private static final String OPEN_TAG = "<think>";
+    private static final String CLOSE_TAG = "</think>";
+
+    private final StringBuilder out = new StringBuilder(64);
+    // 当前思考块中已过滤的内容，思考块未闭合时由flush()输出
+    private final StringBuilder thought = new StringBuilder();
+    private boolean inThink;
+    private boolean skipLeadingWhitespace;
+    // 当前期望标签已匹配的字符数
+    private int matched;
+    // 累计被过滤掉的字符数（思考内容和标签本身）
+    private long filteredChars;
+
+    /**
+     * 过滤一个响应块，返回可见文本（可能为空串）
+     */
+    public String filter(CharSequence chunk) {
+        out.setLength(0);
+        for (int i = 0, length = chunk.length(); i < length; i++) {
+            accept(chunk.charAt(i));
+        }
+        return drain();
+    }
+
+    /**
+     * 流结束时调用，输出尚未确认的标签前缀（如末尾孤立的"<"）；
+     * 思考块未闭合时去掉开始标签，其后的内容按普通文本重新过滤后输出
+     */
+    public String flush() {
+        out.setLength(0);
+        while (inThink) {
+            filteredChars -= thought.length();
+            thought.append(CLOSE_TAG, 0, matched);
+            String rest = thought.toString();
+            thought.setLength(0);
+            inThink = false;
+            matched = 0;
+            for (int i = 0, length = rest.length(); i < length; i++) {
+                accept(rest.charAt(i));
+            }
+        }
+        if (matched > 0) {
+            for (int i = 0; i < matched; i++) {
+                emit(OPEN_TAG.charAt(i));
+            }
+        }
+        matched = 0;
+        return drain();
+    }
+
+    public boolean isInThink() {
+        return inThink;
+    }
+
+    public long getFilteredChars() {
+        return filteredChars;
+    }
+
+    private void accept(char c) {
+        String expected = inThink ? CLOSE_TAG : OPEN_TAG;
+        if (c == expected.charAt(matched)) {
+            if (++matched == expected.length()) {
+                filteredChars += matched;
+                matched = 0;
+                inThink = !inThink;
+                skipLeadingWhitespace = !inThink;
+                thought.setLength(0);
+            }
+            return;
+        }
+
+        // 部分匹配失败：两个标签都没有自重叠前缀，只需释放已匹配部分并从当前字符重新开始
+        releasePartialMatch(expected);
+        if (c == expected.charAt(0)) {
+            matched = 1;
+        } else if (inThink) {
+            filteredChars++;
+            thought.append(c);
+        } else {
+            emit(c);
+        }
+    }
+
+    private void releasePartialMatch(String expected) {
+        if (matched == 0) {
+            return;
+        }
+        if (inThink) {
+            filteredChars += matched;
+            thought.append(expected, 0, matched);
+        } else {
+            for (int i = 0; i < matched; i++) {
+                emit(expected.charAt(i));
+            }
+        }
+        matched = 0;
+    }
+
+    private void emit(char c) {
+        if (skipLeadingWhitespace) {
+            if (Character.isWhitespace(c)) {
+                filteredChars++;
+                return;
+            }
+            skipLeadingWhitespace = false;
+        }
+        out.append(c);
+    }
+
+    private String drain() {
+        return out.isEmpty() ? "" : out.toString();
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.deepseek.stream;
+
+import com.example.deepseek.config.AiConfig;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * token合并器
+ * 把上游逐个到达的小文本片段合并后再向下游发出，满足任一条件即发出：
+ * 累计字节数达到上限、首个片段等待超过最长时长、片段包含换行、片段以句末标点结尾。
+ * 一帧满足发出条件后不再并入后续片段，下游据此保持按行、按句的帧边界。
+ * 上游按1个片段请求，帧待发出而下游没有需求时停止请求，慢客户端会反压到上游而不是无限缓冲。
+ */
+public final class TokenCoalescer {
+
+    private final int maxBytes;
+    private final long maxDelay;
+    private final boolean sentenceBoundary;
+    private final Scheduler timer;
+
+    public TokenCoalescer(int maxBytes, long maxDelay, boolean sentenceBoundary, Scheduler timer) {
+        this.maxBytes = Math.max(1, maxBytes);
+        this.maxDelay = maxDelay;
+        this.sentenceBoundary = sentenceBoundary;
+        this.timer = timer;
+    }
+
+    public static TokenCoalescer of(AiConfig.Streaming streaming) {
+        return new TokenCoalescer(streaming.getMaxBytes(), streaming.getMaxDelay(),
+                streaming.isSentenceBoundary(), Schedulers.parallel());
+    }
+
+    public Flux<String> apply(Flux<String> source) {
+        return Flux.create(sink -> {
+            Coalescing coalescing = new Coalescing(sink);
+            sink.onRequest(coalescing::downstreamRequest);
+            sink.onDispose(coalescing::release);
+            source.subscribe(coalescing);
+        });
+    }
+
+    /**
+     * 片段是否以句末标点或换行结尾（忽略末尾空格）
+     */
+    static boolean endsSentence(String token) {
+        for (int i = token.length() - 1; i >= 0; i--) {
+            char c = token.charAt(i);
+            if (c == ' ' || c == '\t') {
+                continue;
+            }
+            return switch (c) {
+                case '\n', '。', '！', '？', '；', '…', '.', '!', '?', ';' -> true;
+                default -> false;
+            };
+        }
+        return false;
+    }
+
+    /**
+     * UTF-8编码后的字节数
+     */
+    public static int utf8Length(String token) {
+        int bytes = 0;
+        for (int i = 0, n = token.length(); i < n; i++) {
+            char c = token.charAt(i);
+            bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        }
+        return bytes;
+    }
+
+    /**
+     * 单个流的合并状态
+     * 所有状态在锁内修改；发出和请求由drain循环串行执行，避免重入和乱序
+     */
+    private final class Coalescing extends BaseSubscriber<String> {
+
+        private final FluxSink<String> sink;
+        private final AtomicInteger wip = new AtomicInteger();
+        private final StringBuilder buffer = new StringBuilder();
+
+        private int bufferedBytes;
+        // 帧已满足发出条件后到达的片段，留到下一帧
+        private String carry;
+        private long requested;
+        // 下游的request可能早于上游订阅到达，订阅完成前不向上游请求
+        private boolean subscribed;
+        private boolean upstreamPending;
+        private boolean flushReady;
+        private long generation;
+        private Disposable timerTask;
+
+        private boolean terminated;
+        private Throwable error;
+        private boolean finished;
+
+        Coalescing(FluxSink<String> sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * 向上游传递下游的Reactor上下文（如追踪观测）
+         */
+        @Override
+        public Context currentContext() {
+            return Context.of(sink.contextView());
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            synchronized (this) {
+                subscribed = true;
+            }
+            drain();
+        }
+
+        @Override
+        protected void hookOnNext(String token) {
+            synchronized (this) {
+                upstreamPending = false;
+                if (!buffer.isEmpty() && flushReady) {
+                    carry = token;
+                    flushReady = true;
+                } else {
+                    append(token);
+                }
+            }
+            drain();
+        }
+
+        private void append(String token) {
+            if (buffer.isEmpty() && maxDelay > 0) {
+                long expected = generation;
+                timerTask = timer.schedule(() -> onTimer(expected), maxDelay, TimeUnit.MILLISECONDS);
+            }
+            buffer.append(token);
+            bufferedBytes += utf8Length(token);
+            if (bufferedBytes >= maxBytes || maxDelay <= 0 || token.indexOf('\n') >= 0
+                    || sentenceBoundary && endsSentence(token)) {
+                flushReady = true;
+            }
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            synchronized (this) {
+                terminated = true;
+            }
+            drain();
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            synchronized (this) {
+                terminated = true;
+                error = throwable;
+            }
+            drain();
+        }
+
+        void downstreamRequest(long n) {
+            synchronized (this) {
+                requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+            }
+            drain();
+        }
+
+        private void onTimer(long expected) {
+            synchronized (this) {
+                if (expected != generation) {
+                    return;
+                }
+                flushReady = true;
+            }
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (true) {
+                    String out = null;
+                    boolean finish = false;
+                    boolean requestMore = false;
+                    synchronized (this) {
+                        if (finished) {
+                            return;
+                        }
+                        if (!buffer.isEmpty() && requested > 0 && (flushReady || terminated)) {
+                            out = take();
+                            if (requested != Long.MAX_VALUE) {
+                                requested--;
+                            }
+                        } else if (buffer.isEmpty() && terminated) {
+                            finished = true;
+                            finish = true;
+                        } else if (subscribed && !terminated && !upstreamPending && !flushReady) {
+                            upstreamPending = true;
+                            requestMore = true;
+                        } else {
+                            break;
+                        }
+                    }
+                    if (out != null) {
+                        sink.next(out);
+                    } else if (finish) {
+                        if (error != null) {
+                            sink.error(error);
+                        } else {
+                            sink.complete();
+                        }
+                        return;
+                    } else if (requestMore) {
+                        request(1);
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private String take() {
+            String out = buffer.toString();
+            buffer.setLength(0);
+            bufferedBytes = 0;
+            flushReady = false;
+            generation++;
+            if (timerTask != null) {
+                timerTask.dispose();
+                timerTask = null;
+            }
+            if (carry != null) {
+                String next = carry;
+                carry = null;
+                append(next);
+            }
+            return out;
+        }
+
+        void release() {
+            cancel();
+            synchronized (this) {
+                finished = true;
+                if (timerTask != null) {
+                    timerTask.dispose();
+                    timerTask = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.deepseek.stream;
+
+/**
+ * token数估算（不依赖模型分词器）
+ * 中日韩字符按每字1个token计，其余字符按每4个字符1个token计，用于上下文窗口等预算控制，结果偏保守。
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int wide = 0;
+        int other = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (Character.isLowSurrogate(c)) {
+                continue;
+            }
+            if (isWide(c)) {
+                wide++;
+            } else {
+                other++;
+            }
+        }
+        return wide + (other + 3) / 4;
+    }
+
+    /**
+     * 中日韩统一表意文字、假名、谚文和全角标点
+     */
+    public static boolean isWide(char c) {
+        return (c >= '\u4e00' && c <= '\u9fff')
+                || (c >= '\u3400' && c <= '\u4dbf')
+                || (c >= '\u3000' && c <= '\u30ff')
+                || (c >= '\uac00' && c <= '\ud7af')
+                || (c >= '\uff00' && c <= '\uffef')
+                || Character.isHighSurrogate(c);
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.deepseek.batch;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BatchTranslator 单元测试
+ */
+class BatchTranslatorTest {
+
+    /**
+     * 模拟模型：译文为“T:原文”，回复来源默认为primary，可设置延迟、漏译的编号、失败的原文和回复来源
+     */
+    private static class FakeBackend implements BatchTranslator.Backend {
+
+        final Map<String, String> cache = new HashMap<>();
+        final Map<String, String> storedSources = new HashMap<>();
+        final Map<String, String> sources = new HashMap<>();
+        final List<String> requests = new ArrayList<>();
+        final Map<String, String> translations = new HashMap<>();
+        final Map<String, Duration> delays = new HashMap<>();
+        final Set<Integer> omitted = new HashSet<>();
+        final Set<String> failing = new HashSet<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public String cached(String text) {
+            return cache.get(text);
+        }
+
+        @Override
+        public void store(String text, String translation, String source) {
+            cache.put(text, translation);
+            storedSources.put(text, source);
+        }
+
+        @Override
+        public Mono<BatchTranslator.Reply> translate(String text) {
+            if (failing.contains(text)) {
+                return Mono.error(new IllegalStateException("upstream failed"));
+            }
+            return request(text, translations.getOrDefault(text, "T:" + text));
+        }
+
+        @Override
+        public Mono<BatchTranslator.Reply> translateNumbered(String numbered, int count) {
+            StringBuilder response = new StringBuilder();
+            String[] lines = numbered.split("\n");
+            for (int i = 0; i < lines.length; i++) {
+                if (!omitted.contains(i + 1)) {
+                    String text = lines[i].substring(lines[i].indexOf('】') + 1);
+                    response.append("【").append(i + 1).append("】T:").append(text).append('\n');
+                }
+            }
+            return request(numbered, response.toString());
+        }
+
+        @Override
+        public String describe(Throwable error) {
+            return "失败：" + error.getMessage();
+        }
+
+        private Mono<BatchTranslator.Reply> request(String key, String response) {
+            Duration delay = delays.getOrDefault(key, Duration.ZERO);
+            BatchTranslator.Reply reply = new BatchTranslator.Reply(response, sources.getOrDefault(key, "primary"));
+            return Mono.defer(() -> {
+                        synchronized (requests) {
+                            requests.add(key);
+                        }
+                        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        return Mono.delay(delay).thenReturn(reply);
+                    })
+                    .doOnTerminate(inFlight::decrementAndGet);
+        }
+    }
+
+    private static List<BatchTranslator.Event> run(BatchTranslator translator, List<String> segments,
+                                                   FakeBackend backend) {
+        return translator.translate(segments, backend).collectList().block(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testDeduplicateAndPack() {
+        // 测试相同片段只翻译一次、短片段合并为一个请求，结果按原顺序返回，空白片段原样返回
+        FakeBackend backend = new FakeBackend();
+        List<BatchTranslator.Event> events = run(new BatchTranslator(100, 10, 2),
+                List.of("你好", " ", "世界", "你好 "), backend);
+
+        assertEquals(List.of(
+                new BatchTranslator.SegmentResult(0, "T:你好", null),
+                new BatchTranslator.SegmentResult(1, " ", null),
+                new BatchTranslator.SegmentResult(2, "T:世界", null),
+                new BatchTranslator.SegmentResult(3, "T:你好", null),
+                new BatchTranslator.Summary(4, 2, 0, 1, 0)), events);
+        assertEquals(List.of("【1】你好\n【2】世界\n"), backend.requests);
+    }
+
+    @Test
+    void testCachedUnitsSkipped() {
+        // 测试命中缓存的片段不再请求，新译文写入缓存
+        FakeBackend backend = new FakeBackend();
+        backend.cache.put("你好", "Hello");
+
+        List<BatchTranslator.Event> events = run(new BatchTranslator(100, 10, 2), List.of("你好", "世界"), backend);
+
+        assertEquals(new BatchTranslator.SegmentResult(0, "Hello", null), events.get(0));
+        assertEquals(new BatchTranslator.Summary(2, 2, 1, 1, 0), events.get(2));
+        assertEquals(List.of("世界"), backend.requests);
+        assertEquals("T:世界", backend.cache.get("世界"));
+    }
+
+    @Test
+    void testLongSegmentSplitAndJoined() {
+        // 测试超出预算的片段按句子拆分翻译，译文按顺序拼接，西文译文之间补空格
+        FakeBackend backend = new FakeBackend();
+        backend.translations.put("第一句话。", "First.");
+        backend.translations.put("第二句话。", "Second.");
+
+        List<BatchTranslator.Event> events = run(new BatchTranslator(5, 10, 2), List.of("第一句话。第二句话。"), backend);
+
+        assertEquals(new BatchTranslator.SegmentResult(0, "First. Second.", null), events.get(0));
+        assertEquals(2, backend.requests.size());
+    }
+
+    @Test
+    void testOmittedNumberTranslatedAlone() {
+        // 测试模型漏掉的编号单独请求
+        FakeBackend backend = new FakeBackend();
+        backend.omitted.add(2);
+
+        List<BatchTranslator.Event> events = run(new BatchTranslator(100, 10, 2), List.of("一", "二", "三"), backend);
+
+        assertEquals(new BatchTranslator.SegmentResult(1, "T:二", null), events.get(1));
+        assertEquals(List.of("【1】一\n【2】二\n【3】三\n", "二"), backend.requests);
+    }
+
+    @Test
+    void testStoreWithReplySource() {
+        // 测试译文按实际给出回复的来源写入缓存，漏译后单独请求的单元使用其自身回复的来源
+        FakeBackend backend = new FakeBackend();
+        backend.omitted.add(2);
+        backend.sources.put("【1】一\n【2】二\n", "alternate");
+
+        run(new BatchTranslator(100, 10, 2), List.of("一", "二"), backend);
+
+        assertEquals("alternate", backend.storedSources.get("一"));
+        assertEquals("primary", backend.storedSources.get("二"));
+    }
+
+    @Test
+    void testParallelChunksEmittedInOrder() {
+        // 测试请求并行执行但不超过并发数，先完成的后续片段等待前面的片段
+        FakeBackend backend = new FakeBackend();
+        backend.delays.put("一", Duration.ofMillis(200));
+
+        List<BatchTranslator.Event> events = run(new BatchTranslator(100, 1, 2), List.of("一", "二", "三", "四"),
+                backend);
+
+        assertEquals(List.of(0, 1, 2, 3), events.subList(0, 4).stream()
+                .map(event -> ((BatchTranslator.SegmentResult) event).index()).toList());
+        assertEquals(2, backend.maxInFlight.get());
+        assertEquals(4, backend.requests.size());
+    }
+
+    @Test
+    void testFailedChunkDoesNotStopBatch() {
+        // 测试单个请求失败时只有对应片段返回错误，其余片段继续翻译
+        FakeBackend backend = new FakeBackend();
+        backend.failing.add("二");
+
+        List<BatchTranslator.Event> events = run(new BatchTranslator(100, 1, 2), List.of("一", "二", "三"), backend);
+
+        assertEquals(new BatchTranslator.SegmentResult(1, null, "失败：upstream failed"), events.get(1));
+        assertEquals(new BatchTranslator.SegmentResult(2, "T:三", null), events.get(2));
+        assertEquals(new BatchTranslator.Summary(3, 3, 0, 3, 1), events.get(3));
+        assertFalse(backend.cache.containsKey("二"));
+    }
+
+    @Test
+    void testParseNumbered() {
+        // 测试按编号解析译文，兼容方括号编号，缺失和重复的编号为null
+        String[] translations = BatchTranslator.parseNumbered("【1】Hello\n[3] World\n【1】again\n【9】x", 3);
+
+        assertArrayEquals(new String[]{"Hello", null, "World"}, translations);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.deepseek.batch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SentenceSplitter 单元测试
+ */
+class SentenceSplitterTest {
+
+    @Test
+    void testShortTextNotSplit() {
+        // 测试未超出预算的文本原样返回
+        assertEquals(List.of("你好。世界。"), SentenceSplitter.split("你好。世界。", 100));
+    }
+
+    @Test
+    void testSplitOnSentenceBoundaries() {
+        // 测试在句末断开并合并相邻短句，各片段拼接后等于原文
+        String text = "今天天气很好。我们去公园吧！Let's go. OK?";
+        List<String> pieces = SentenceSplitter.split(text, 8);
+
+        assertEquals(List.of("今天天气很好。", "我们去公园吧！", "Let's go. OK?"), pieces);
+        assertEquals(text, String.join("", pieces));
+    }
+
+    @Test
+    void testDecimalPointIsNotSentenceEnd() {
+        // 测试小数点不断句，句后的引号和空白归入前一句
+        assertEquals(List.of("Pi is 3.14 today. ", "He said \"yes.\" ", "Done"),
+                SentenceSplitter.sentences("Pi is 3.14 today. He said \"yes.\" Done"));
+    }
+
+    @Test
+    void testOverlongSentenceSplitByCharacters() {
+        // 测试单句超出预算时按字符硬拆分
+        assertEquals(List.of("一二三四", "五六七八", "九十"), SentenceSplitter.split("一二三四五六七八九十", 4));
+    }
+}
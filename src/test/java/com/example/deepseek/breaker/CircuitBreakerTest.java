@@ -0,0 +1,154 @@
+package com.example.deepseek.breaker;
+
+import com.example.deepseek.config.AiConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CircuitBreaker 单元测试
+ */
+class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong(1);
+    private AiConfig.Breaker config;
+    private CircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        config = new AiConfig.Breaker(100);
+        config.setWindowSize(10);
+        config.setMinimumCalls(4);
+        config.setFailureRateThreshold(50);
+        config.setSlowCallRateThreshold(50);
+        config.setOpenDuration(1000);
+        config.setHalfOpenCalls(2);
+        breaker = new CircuitBreaker("test", config, CircuitBreakerRegistry::isUpstreamFailure, clock::get);
+    }
+
+    private void succeed() {
+        breaker.call(() -> "ok");
+    }
+
+    private void fail() {
+        assertThrows(IllegalStateException.class, () -> breaker.call(() -> {
+            throw new IllegalStateException("down");
+        }));
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            fail();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void testOpensOnFailureRateAndFailsFast() {
+        // 测试失败率达到阈值后熔断，熔断期间不再调用上游
+        succeed();
+        succeed();
+        fail();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        fail();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        AtomicInteger invoked = new AtomicInteger();
+        assertThrows(CircuitBreakerOpenException.class, () -> breaker.call(invoked::incrementAndGet));
+        assertEquals(0, invoked.get());
+        assertEquals(1, breaker.status().rejected());
+    }
+
+    @Test
+    void testOpensOnSlowCalls() {
+        // 测试慢调用率达到阈值后熔断
+        for (int i = 0; i < 4; i++) {
+            breaker.call(() -> clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(200)));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(100.0, breaker.status().slowCallRate());
+    }
+
+    @Test
+    void testHalfOpenProbesThenClose() {
+        // 测试熔断到期后半开放行有限探测请求，探测全部成功后关闭
+        open();
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        long first = breaker.tryAcquire();
+        long second = breaker.tryAcquire();
+        assertTrue(first >= 0 && second >= 0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals(-1, breaker.tryAcquire());
+
+        breaker.onResult(first, false, false);
+        breaker.onResult(second, false, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.status().calls());
+    }
+
+    @Test
+    void testHalfOpenFailureReopens() {
+        // 测试半开探测失败后重新熔断
+        open();
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        fail();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(CircuitBreakerOpenException.class, this::succeed);
+    }
+
+    @Test
+    void testClientErrorsAreNotFailures() {
+        // 测试4xx客户端错误不计入失败，429计入
+        assertFalse(CircuitBreakerRegistry.isUpstreamFailure(new HttpClientErrorException(HttpStatus.NOT_FOUND)));
+        assertTrue(CircuitBreakerRegistry.isUpstreamFailure(
+                new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS)));
+        assertTrue(CircuitBreakerRegistry.isUpstreamFailure(new IllegalStateException("down")));
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(HttpClientErrorException.class, () -> breaker.call(() -> {
+                throw new HttpClientErrorException(HttpStatus.NOT_FOUND);
+            }));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void testProtectStream() {
+        // 测试流式调用：失败计入统计，未收到数据即取消不计入
+        assertThrows(IllegalStateException.class,
+                () -> breaker.protect(Flux.error(new IllegalStateException("down"))).blockLast());
+        assertEquals(1, breaker.status().calls());
+
+        breaker.protect(Flux.never()).subscribe().dispose();
+        assertEquals(1, breaker.status().calls());
+
+        assertEquals("a", breaker.protect(Flux.just("a")).blockLast());
+        assertEquals(2, breaker.status().calls());
+        assertEquals(50.0, breaker.status().failureRate());
+    }
+
+    @Test
+    void testStaleResultsAreIgnored() {
+        // 测试状态切换前发放的许可，其迟到结果不影响新状态
+        long stale = breaker.tryAcquire();
+        open();
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        long probe = breaker.tryAcquire();
+
+        breaker.onResult(stale, true, false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onResult(probe, false, false);
+        succeed();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
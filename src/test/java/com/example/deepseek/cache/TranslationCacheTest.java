@@ -0,0 +1,130 @@
+package com.example.deepseek.cache;
+
+import com.example.deepseek.config.AiConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TranslationCache 单元测试
+ */
+class TranslationCacheTest {
+
+    private AiConfig aiConfig;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        aiConfig = new AiConfig();
+    }
+
+    @Test
+    void testPutAndGet() {
+        // 测试写入后命中缓存
+        TranslationCache cache = new TranslationCache(aiConfig, new SimpleMeterRegistry());
+        String key = TranslationCache.key("ollama", "deepseek-r1:7b", "zh", "Hello");
+
+        assertNull(cache.get(key));
+        cache.put(key, "你好");
+        assertEquals("你好", cache.get(key));
+    }
+
+    @Test
+    void testKeyIncludesProviderModelAndLanguage() {
+        // 测试提供商、模型、目标语言不同时缓存键不同，原文首尾空白和换行符不影响缓存键
+        String key = TranslationCache.key("ollama", "deepseek-r1:7b", "zh", "Hello\r\nWorld");
+        assertEquals(key, TranslationCache.key("ollama", "deepseek-r1:7b", "zh", "  Hello\nWorld \n"));
+        assertNotEquals(key, TranslationCache.key("deepseek", "deepseek-r1:7b", "zh", "Hello\nWorld"));
+        assertNotEquals(key, TranslationCache.key("ollama", "deepseek-chat", "zh", "Hello\nWorld"));
+        assertNotEquals(key, TranslationCache.key("ollama", "deepseek-r1:7b", "en", "Hello\nWorld"));
+    }
+
+    @Test
+    void testBoundedByBytes() {
+        // 测试缓存总大小按字节数限制
+        aiConfig.getTranslate().getCache().setMaxBytes(1024);
+        TranslationCache cache = new TranslationCache(aiConfig, new SimpleMeterRegistry());
+        for (int i = 0; i < 100; i++) {
+            cache.put(TranslationCache.key("ollama", "m", "zh", "text-" + i), "翻".repeat(100));
+        }
+        cache.cleanUp();
+        assertTrue(cache.weightedSize() <= 1024);
+    }
+
+    @Test
+    void testWeighedInBytes() {
+        // 测试键和值都按UTF-8字节数计入缓存大小
+        TranslationCache cache = new TranslationCache(aiConfig, new SimpleMeterRegistry());
+        String key = TranslationCache.key("ollama", "m", "中文", "Hello");
+        cache.put(key, "你好");
+        cache.cleanUp();
+        assertEquals(key.getBytes(StandardCharsets.UTF_8).length + 6, cache.weightedSize());
+    }
+
+    @Test
+    void testExpiredSnapshotEntriesDropped() throws InterruptedException {
+        // 测试快照保留写入时间，重启后超过有效期的条目不再加载
+        aiConfig.getTranslate().getCache().setSnapshotFile(tempDir.resolve("translation.snapshot").toString());
+        TranslationCache cache = new TranslationCache(aiConfig, new SimpleMeterRegistry());
+        String key = TranslationCache.key("deepseek", "deepseek-chat", "en", "你好");
+        cache.put(key, "Hello");
+        Thread.sleep(50);
+        cache.destroy();
+
+        aiConfig.getTranslate().getCache().setTtl(20);
+        TranslationCache restarted = new TranslationCache(aiConfig, new SimpleMeterRegistry());
+        assertNull(restarted.get(key));
+    }
+
+    @Test
+    void testSnapshotSurvivesRestart() {
+        // 测试热点条目写入快照后在新实例中加载
+        aiConfig.getTranslate().getCache().setSnapshotFile(tempDir.resolve("translation.snapshot").toString());
+        TranslationCache cache = new TranslationCache(aiConfig, new SimpleMeterRegistry());
+        String key = TranslationCache.key("deepseek", "deepseek-chat", "en", "你好");
+        cache.put(key, "Hello");
+        cache.destroy();
+
+        TranslationCache restarted = new TranslationCache(aiConfig, new SimpleMeterRegistry());
+        assertEquals("Hello", restarted.get(key));
+    }
+
+    @Test
+    void testTruncatedSnapshotKeepsCompleteEntries() throws IOException {
+        // 测试快照按头部记录的条目数读取，文件被截断时保留已完整读取的条目
+        Path snapshot = tempDir.resolve("translation.snapshot");
+        aiConfig.getTranslate().getCache().setSnapshotFile(snapshot.toString());
+        TranslationCache cache = new TranslationCache(aiConfig, new SimpleMeterRegistry());
+        String first = TranslationCache.key("deepseek", "deepseek-chat", "en", "你好");
+        String second = TranslationCache.key("deepseek", "deepseek-chat", "en", "再见");
+        cache.put(first, "Hello");
+        cache.put(second, "Goodbye");
+        cache.destroy();
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Files.write(snapshot, Arrays.copyOf(bytes, bytes.length - 1));
+
+        TranslationCache restarted = new TranslationCache(aiConfig, new SimpleMeterRegistry());
+        assertEquals(1, (restarted.get(first) == null ? 0 : 1) + (restarted.get(second) == null ? 0 : 1));
+    }
+
+    @Test
+    void testDisabledCache() {
+        // 测试关闭缓存后不命中
+        aiConfig.getTranslate().getCache().setEnabled(false);
+        TranslationCache cache = new TranslationCache(aiConfig, new SimpleMeterRegistry());
+        String key = TranslationCache.key("ollama", "deepseek-r1:7b", "zh", "Hello");
+        cache.put(key, "你好");
+        assertNull(cache.get(key));
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.deepseek.cache;
+
+import com.example.deepseek.config.AiConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * WeatherCache 单元测试
+ */
+class WeatherCacheTest {
+
+    private AiConfig aiConfig;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        aiConfig = new AiConfig();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testHitAfterMiss() {
+        // 测试首次未命中后再次查询命中缓存
+        WeatherCache weatherCache = new WeatherCache(aiConfig, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("Beijing: ☀️ +20°C", weatherCache.get("Beijing", city -> {
+            loads.incrementAndGet();
+            return "Beijing: ☀️ +20°C";
+        }));
+        assertEquals("Beijing: ☀️ +20°C", weatherCache.get("Beijing", city -> {
+            loads.incrementAndGet();
+            return "unexpected";
+        }));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, weatherCache.stats().hitCount());
+        assertEquals(1, weatherCache.stats().missCount());
+    }
+
+    @Test
+    void testNormalizedCityKey() {
+        // 测试城市名大小写和空白不同也命中同一条缓存
+        WeatherCache weatherCache = new WeatherCache(aiConfig, meterRegistry);
+        weatherCache.get("New York", city -> "sunny");
+
+        assertEquals("sunny", weatherCache.get("  new   YORK ", city -> "unexpected"));
+        assertEquals("new york", WeatherCache.normalize(" New\tYork "));
+    }
+
+    @Test
+    void testFailedLoadIsNotCached() {
+        // 测试查询失败（返回null）不会被缓存
+        WeatherCache weatherCache = new WeatherCache(aiConfig, meterRegistry);
+        assertNull(weatherCache.get("Beijing", city -> null));
+        assertEquals("cloudy", weatherCache.get("Beijing", city -> "cloudy"));
+    }
+
+    @Test
+    void testConcurrentMissesAreCoalesced() throws Exception {
+        // 测试同一城市的并发未命中只触发一次上游查询
+        WeatherCache weatherCache = new WeatherCache(aiConfig, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return weatherCache.get("Shanghai", city -> {
+                        loads.incrementAndGet();
+                        sleepQuietly(100);
+                        return "rainy";
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<String> result : results) {
+                assertEquals("rainy", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testSlowLoadDoesNotBlockOtherCities() throws Exception {
+        // 测试查询在Caffeine计算之外执行：一个城市的慢查询期间其他城市仍可读写，查询失败时抛出原异常且不缓存
+        WeatherCache weatherCache = new WeatherCache(aiConfig, meterRegistry);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> slow = executor.submit(() -> weatherCache.get("Beijing", city -> {
+                loading.countDown();
+                awaitQuietly(release);
+                throw new IllegalStateException("upstream failed");
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            assertEquals("sunny", weatherCache.get("Shanghai", city -> "sunny"));
+            release.countDown();
+            Exception error = assertThrows(Exception.class, () -> slow.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, error.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("cloudy", weatherCache.get("Beijing", city -> "cloudy"));
+    }
+
+    @Test
+    void testDisabledCache() {
+        // 测试关闭缓存后每次都查询上游
+        aiConfig.getWeather().getCache().setEnabled(false);
+        WeatherCache weatherCache = new WeatherCache(aiConfig, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+
+        weatherCache.get("Beijing", city -> "load-" + loads.incrementAndGet());
+        assertEquals("load-2", weatherCache.get("Beijing", city -> "load-" + loads.incrementAndGet()));
+    }
+
+    @Test
+    void testMetricsRegistered() {
+        // 测试缓存指标已注册到MeterRegistry
+        WeatherCache weatherCache = new WeatherCache(aiConfig, meterRegistry);
+        weatherCache.get("Beijing", city -> "sunny");
+        assertNotNull(meterRegistry.find("cache.gets").tag("cache", "weather").functionCounter());
+        assertNotNull(meterRegistry.find("cache.evictions").tag("cache", "weather").functionCounter());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
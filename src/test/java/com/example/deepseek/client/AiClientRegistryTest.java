@@ -0,0 +1,78 @@
+package com.example.deepseek.client;
+
+import com.example.deepseek.config.AiConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AiClientRegistry 单元测试
+ */
+class AiClientRegistryTest {
+
+    private AiClientRegistry clientRegistry;
+
+    @BeforeEach
+    void setUp() {
+        clientRegistry = new AiClientRegistry(new AiConfig());
+    }
+
+    @AfterEach
+    void tearDown() {
+        clientRegistry.destroy();
+    }
+
+    @Test
+    void testClientsAreReused() {
+        // 测试同一提供商多次获取的是同一个客户端实例
+        assertNotNull(clientRegistry.ollamaBalancer());
+        assertNotNull(clientRegistry.deepseek());
+        assertSame(clientRegistry.ollamaBalancer(), clientRegistry.ollamaBalancer());
+        assertSame(clientRegistry.deepseek(), clientRegistry.deepseek());
+    }
+
+    @Test
+    void testClientsAreIsolatedPerProvider() {
+        // 测试不同提供商使用不同的客户端
+        assertNotSame(clientRegistry.ollamaBalancer().getEndpoints().get(0).client(), clientRegistry.deepseek());
+    }
+
+    @Test
+    void testWarmupRequestBody() {
+        // 测试预热请求消息为空，携带keep-alive；keep-alive为空时不发送
+        AiConfig.Ollama ollama = new AiConfig.Ollama();
+        Map<String, Object> body = AiClientRegistry.warmupRequestBody(ollama);
+        assertEquals("deepseek-r1:7b", body.get("model"));
+        assertEquals(List.of(), body.get("messages"));
+        assertEquals("30m", body.get("keep_alive"));
+
+        ollama.setKeepAlive("");
+        assertFalse(AiClientRegistry.warmupRequestBody(ollama).containsKey("keep_alive"));
+    }
+
+    @Test
+    void testOllamaEndpointsFromConfig() {
+        // 测试未配置endpoints时使用baseUrl，配置后每个实例一个客户端
+        assertEquals(1, clientRegistry.ollamaBalancer().getEndpoints().size());
+        assertEquals("http://localhost:11434", clientRegistry.ollamaBalancer().getEndpoints().get(0).getBaseUrl());
+
+        AiConfig aiConfig = new AiConfig();
+        aiConfig.getOllama().setEndpoints(List.of(
+                new AiConfig.Endpoint("http://a:11434", 2),
+                new AiConfig.Endpoint("http://b:11434", 1)));
+        AiClientRegistry multi = new AiClientRegistry(aiConfig);
+        try {
+            List<OllamaEndpoint> endpoints = multi.ollamaBalancer().getEndpoints();
+            assertEquals(2, endpoints.size());
+            assertEquals(2, endpoints.get(0).getWeight());
+            assertNotSame(endpoints.get(0).client(), endpoints.get(1).client());
+        } finally {
+            multi.destroy();
+        }
+    }
+}
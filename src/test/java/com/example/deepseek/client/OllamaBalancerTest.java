@@ -0,0 +1,178 @@
+package com.example.deepseek.client;
+
+import com.example.deepseek.config.AiConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.SignalType;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * OllamaBalancer 单元测试
+ */
+class OllamaBalancerTest {
+
+    private final AtomicLong clock = new AtomicLong(1);
+    private AiConfig.Outlier outlier;
+
+    @BeforeEach
+    void setUp() {
+        outlier = new AiConfig.Outlier();
+        outlier.setConsecutiveFailures(3);
+        outlier.setEjectionTime(1000);
+        outlier.setSlowFirstToken(500);
+    }
+
+    private OllamaBalancer balancer(OllamaEndpoint... endpoints) {
+        return new OllamaBalancer(List.of(endpoints), new AiConfig.HealthCheck(), outlier, clock::get);
+    }
+
+    @Test
+    void testPrefersLessLoadedEndpoint() {
+        // 测试优先选择未完成请求较少的实例
+        OllamaEndpoint busy = new OllamaEndpoint("http://a", 1, null);
+        OllamaEndpoint idle = new OllamaEndpoint("http://b", 1, null);
+        OllamaBalancer balancer = balancer(busy, idle);
+        busy.onStart();
+        busy.onStart();
+
+        for (int i = 0; i < 20; i++) {
+            OllamaEndpoint chosen = balancer.choose();
+            assertSame(idle, chosen);
+            balancer.release(chosen, SignalType.CANCEL, 0);
+        }
+        assertEquals(0, idle.getOutstanding());
+    }
+
+    @Test
+    void testWeightedDistribution() {
+        // 测试并发请求按权重分配到各实例
+        OllamaEndpoint heavy = new OllamaEndpoint("http://a", 3, null);
+        OllamaEndpoint light = new OllamaEndpoint("http://b", 1, null);
+        OllamaBalancer balancer = balancer(heavy, light);
+
+        for (int i = 0; i < 40; i++) {
+            balancer.choose();
+        }
+        assertTrue(heavy.getOutstanding() >= 29 && heavy.getOutstanding() <= 31,
+                "heavy=" + heavy.getOutstanding());
+        assertEquals(40, heavy.getOutstanding() + light.getOutstanding());
+    }
+
+    @Test
+    void testAffinityKeepsClientOnSameEndpoint() {
+        // 测试同一亲和键总是选择同一实例，不同亲和键分散到各实例
+        OllamaEndpoint a = new OllamaEndpoint("http://a", 1, null);
+        OllamaEndpoint b = new OllamaEndpoint("http://b", 1, null);
+        OllamaBalancer balancer = balancer(a, b);
+
+        OllamaEndpoint first = balancer.choose("client-1");
+        balancer.release(first, SignalType.ON_COMPLETE, 0);
+        for (int i = 0; i < 20; i++) {
+            OllamaEndpoint chosen = balancer.choose("client-1");
+            assertSame(first, chosen);
+            balancer.release(chosen, SignalType.ON_COMPLETE, 0);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            balancer.choose("client-" + i);
+        }
+        assertTrue(a.getOutstanding() > 20 && b.getOutstanding() > 20,
+                "a=" + a.getOutstanding() + ", b=" + b.getOutstanding());
+    }
+
+    @Test
+    void testAffinityYieldsToOverloadedEndpoint() {
+        // 测试亲和实例负载超过另一实例两倍时改按负载选择
+        OllamaEndpoint a = new OllamaEndpoint("http://a", 1, null);
+        OllamaEndpoint b = new OllamaEndpoint("http://b", 1, null);
+        OllamaBalancer balancer = balancer(a, b);
+        OllamaEndpoint preferred = balancer.choose("client-1");
+        OllamaEndpoint other = preferred == a ? b : a;
+
+        // 亲和实例5个未完成请求（评分6），另一实例0个（评分1）
+        for (int i = 0; i < 4; i++) {
+            preferred.onStart();
+        }
+        assertSame(other, balancer.choose("client-1"));
+    }
+
+    @Test
+    void testEjectAfterConsecutiveFailures() {
+        // 测试连续失败达到阈值后摘除，摘除期结束后恢复
+        OllamaEndpoint failing = new OllamaEndpoint("http://a", 1, null);
+        OllamaEndpoint healthy = new OllamaEndpoint("http://b", 1, null);
+        OllamaBalancer balancer = balancer(failing, healthy);
+
+        for (int i = 0; i < 3; i++) {
+            failing.onStart();
+            balancer.release(failing, SignalType.ON_ERROR, 0);
+        }
+        assertFalse(failing.isAvailable(clock.get()));
+        for (int i = 0; i < 10; i++) {
+            assertSame(healthy, balancer.choose());
+        }
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertTrue(failing.isAvailable(clock.get()));
+    }
+
+    @Test
+    void testSlowFirstTokenCountsAsFailure() {
+        // 测试首token过慢按失败计入，正常完成会重置连续失败次数
+        OllamaEndpoint slow = new OllamaEndpoint("http://a", 1, null);
+        OllamaBalancer balancer = balancer(slow, new OllamaEndpoint("http://b", 1, null));
+        long slowTtft = TimeUnit.MILLISECONDS.toNanos(600);
+
+        balancer.release(slow, SignalType.ON_COMPLETE, slowTtft);
+        balancer.release(slow, SignalType.ON_COMPLETE, slowTtft);
+        balancer.release(slow, SignalType.ON_COMPLETE, TimeUnit.MILLISECONDS.toNanos(100));
+        balancer.release(slow, SignalType.ON_COMPLETE, slowTtft);
+        assertTrue(slow.isAvailable(clock.get()));
+
+        balancer.release(slow, SignalType.ON_COMPLETE, slowTtft);
+        balancer.release(slow, SignalType.ON_COMPLETE, slowTtft);
+        assertFalse(slow.isAvailable(clock.get()));
+    }
+
+    @Test
+    void testFallbackWhenNoEndpointAvailable() {
+        // 测试所有实例都不可用时仍退回全部实例选择
+        OllamaEndpoint a = new OllamaEndpoint("http://a", 1, null);
+        OllamaEndpoint b = new OllamaEndpoint("http://b", 1, null);
+        OllamaBalancer balancer = balancer(a, b);
+        a.markHealthy(false);
+        b.markHealthy(false);
+
+        assertNotNull(balancer.choose());
+    }
+
+    @Test
+    void testSingleEndpointIsNeverEjected() {
+        // 测试单实例时不做摘除
+        OllamaEndpoint only = new OllamaEndpoint("http://a", 1, null);
+        OllamaBalancer balancer = balancer(only);
+
+        for (int i = 0; i < 5; i++) {
+            balancer.release(balancer.choose(), SignalType.ON_ERROR, 0);
+        }
+        assertTrue(only.isAvailable(clock.get()));
+        assertEquals(0, only.getOutstanding());
+    }
+
+    @Test
+    void testProbeMarksUnreachableEndpointUnhealthy() {
+        // 测试健康检查失败的实例被标记为不健康
+        OllamaEndpoint down = new OllamaEndpoint("http://127.0.0.1:1", 1,
+                WebClient.builder().baseUrl("http://127.0.0.1:1").build());
+        OllamaBalancer balancer = balancer(down, new OllamaEndpoint("http://b", 1, null));
+
+        assertFalse(balancer.probe(down).block());
+        assertFalse(down.isHealthy());
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.deepseek.client;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * StreamDeadline 单元测试
+ */
+class StreamDeadlineTest {
+
+    @Test
+    void testStreamWithinDeadline() {
+        // 测试在截止时间内完成的流正常透传
+        StreamDeadline deadline = new StreamDeadline(Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(5));
+        List<String> chunks = Flux.just("a", "b", "c").transform(deadline::apply).collectList().block();
+        assertEquals(List.of("a", "b", "c"), chunks);
+    }
+
+    @Test
+    void testFirstChunkTimeout() {
+        // 测试首个响应块超时并取消上游
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        StreamDeadline deadline = new StreamDeadline(Duration.ofMillis(50), Duration.ofSeconds(1), Duration.ofSeconds(5));
+        Flux<String> upstream = Flux.<String>never().doOnCancel(() -> cancelled.set(true));
+
+        UpstreamTimeoutException e = assertThrows(UpstreamTimeoutException.class,
+                () -> upstream.transform(deadline::apply).blockLast());
+        assertEquals(UpstreamTimeoutException.Phase.FIRST_CHUNK, e.getPhase());
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void testIdleTimeout() {
+        // 测试响应块间隔超时
+        StreamDeadline deadline = new StreamDeadline(Duration.ofSeconds(1), Duration.ofMillis(50), Duration.ofSeconds(5));
+        Flux<String> upstream = Flux.concat(Flux.just("a"), Flux.never());
+
+        UpstreamTimeoutException e = assertThrows(UpstreamTimeoutException.class,
+                () -> upstream.transform(deadline::apply).blockLast());
+        assertEquals(UpstreamTimeoutException.Phase.IDLE, e.getPhase());
+    }
+
+    @Test
+    void testTotalTimeout() {
+        // 测试持续有数据但超过整体时长
+        StreamDeadline deadline = new StreamDeadline(Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofMillis(150));
+        Flux<Long> upstream = Flux.interval(Duration.ofMillis(20));
+
+        UpstreamTimeoutException e = assertThrows(UpstreamTimeoutException.class,
+                () -> upstream.transform(deadline::apply).blockLast());
+        assertEquals(UpstreamTimeoutException.Phase.TOTAL, e.getPhase());
+    }
+
+    @Test
+    void testBlockingTimeout() {
+        // 测试阻塞请求的整体超时
+        StreamDeadline deadline = new StreamDeadline(Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofMillis(50));
+        Mono<String> upstream = Mono.never();
+
+        UpstreamTimeoutException e = assertThrows(UpstreamTimeoutException.class,
+                () -> upstream.transform(deadline::apply).block());
+        assertEquals(UpstreamTimeoutException.Phase.TOTAL, e.getPhase());
+    }
+}
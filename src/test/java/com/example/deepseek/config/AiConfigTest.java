@@ -32,6 +32,9 @@ class AiConfigTest {
         assertEquals("deepseek-r1:7b", ollama.getModel());
         assertEquals(30000, ollama.getTimeout());
         assertEquals("http://localhost:11434/api/chat", ollama.getFullUrl());
+        assertEquals(5000, ollama.getConnectTimeout());
+        assertEquals(30000, ollama.getIdleTimeout());
+        assertEquals(300000, ollama.getStreamTimeout());
     }
 
     @Test
@@ -55,6 +58,17 @@ class AiConfigTest {
         assertEquals(10000, weather.getTimeout());
     }
 
+    @Test
+    void testPoolConfig() {
+        // 测试连接池默认配置
+        AiConfig.Pool pool = aiConfig.getOllama().getPool();
+        assertNotNull(pool);
+        assertEquals(100, pool.getMaxConnections());
+        assertEquals(30000, pool.getMaxIdleTime());
+        assertTrue(pool.isKeepAlive());
+        assertNotSame(pool, aiConfig.getDeepseek().getPool());
+    }
+
     @Test
     void testOllamaConfigSetters() {
         // 测试Ollama配置的setter方法
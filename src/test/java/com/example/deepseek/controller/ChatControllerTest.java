@@ -47,9 +47,9 @@ class ChatControllerTest {
         // 测试流式聊天
         String message = "Hello, how are you?";
         
-        SseEmitter result = chatController.streamChat(message, session);
+        SseEmitter result = chatController.streamChat(message, null, session);
         assert result != null;
-        verify(chatService).streamChat(message, session, result);
+        verify(chatService).streamChat(message, null, session, result);
     }
 
     @Test
@@ -57,9 +57,9 @@ class ChatControllerTest {
         // 测试空消息的流式聊天
         String message = "";
         
-        SseEmitter result = chatController.streamChat(message, session);
+        SseEmitter result = chatController.streamChat(message, null, session);
         assert result != null;
-        verify(chatService).streamChat(message, session, result);
+        verify(chatService).streamChat(message, null, session, result);
     }
 
     @Test
@@ -67,9 +67,9 @@ class ChatControllerTest {
         // 测试null消息的流式聊天
         String message = null;
         
-        SseEmitter result = chatController.streamChat(message, session);
+        SseEmitter result = chatController.streamChat(message, null, session);
         assert result != null;
-        verify(chatService).streamChat(message, session, result);
+        verify(chatService).streamChat(message, null, session, result);
     }
 
     @Test
@@ -77,8 +77,8 @@ class ChatControllerTest {
         // 测试包含特殊字符的消息
         String message = "Hello! How are you? 你好！";
         
-        SseEmitter result = chatController.streamChat(message, session);
+        SseEmitter result = chatController.streamChat(message, null, session);
         assert result != null;
-        verify(chatService).streamChat(message, session, result);
+        verify(chatService).streamChat(message, null, session, result);
     }
 } 
\ No newline at end of file
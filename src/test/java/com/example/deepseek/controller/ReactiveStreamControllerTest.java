@@ -0,0 +1,100 @@
+package com.example.deepseek.controller;
+
+import com.example.deepseek.batch.BatchTranslationRequest;
+import com.example.deepseek.config.AiConfig;
+import com.example.deepseek.metrics.StreamMetrics;
+import com.example.deepseek.service.ChatService;
+import com.example.deepseek.service.TranslateService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ReactiveStreamController 单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+class ReactiveStreamControllerTest {
+
+    @Mock
+    private ChatService chatService;
+
+    @Mock
+    private TranslateService translateService;
+
+    @InjectMocks
+    private ReactiveStreamController reactiveStreamController;
+
+    @Test
+    void testStreamChat() {
+        // 测试响应式聊天直接返回服务层的事件流
+        Flux<ServerSentEvent<String>> events = Flux.just(ServerSentEvent.builder("你好").build());
+        when(chatService.chatEvents("hi", null, "deepseek", "test-key", "client-1")).thenReturn(events);
+
+        assertSame(events, reactiveStreamController.streamChat("hi", null, "deepseek", "test-key", "client-1"));
+    }
+
+    @Test
+    void testTranslateStream() {
+        // 测试响应式翻译直接返回服务层的事件流
+        Flux<ServerSentEvent<String>> events = Flux.just(ServerSentEvent.builder("Hello").build());
+        when(translateService.translateEvents("你好", "en", "ollama", null, null)).thenReturn(events);
+
+        assertSame(events, reactiveStreamController.translateStream("你好", "en", "ollama", null, null));
+    }
+
+    @Test
+    void testChatEventsWithoutApiKey() {
+        // 测试未传入DeepSeek API Key时返回提示事件，不请求上游
+        ChatService service = new ChatService(new AiConfig(), null, new StreamMetrics(new SimpleMeterRegistry()), null,
+                null, null, null, null);
+
+        List<ServerSentEvent<String>> events = service.chatEvents("hi", null, "deepseek", null, null).collectList().block();
+        assertNotNull(events);
+        assertEquals(1, events.size());
+        assertEquals("请先设置 DeepSeek API Key", events.get(0).data());
+    }
+
+    @Test
+    void testTranslateBatch() {
+        // 测试批量翻译JSON请求直接返回服务层的事件流
+        Flux<ServerSentEvent<Object>> events = Flux.just(ServerSentEvent.<Object>builder("done").build());
+        when(translateService.batchEvents(List.of("你好", "世界"), "en", "ollama", null, "client-1"))
+                .thenReturn(events);
+
+        assertSame(events, reactiveStreamController.translateBatch(
+                new BatchTranslationRequest("en", List.of("你好", "世界")), "ollama", null, "client-1"));
+    }
+
+    @Test
+    void testTranslateBatchLines() {
+        // 测试纯文本批量翻译每行一个片段，保留空行，忽略末尾换行
+        Flux<ServerSentEvent<Object>> events = Flux.empty();
+        when(translateService.batchEvents(List.of("你好", "", "世界"), "en", "ollama", null, null)).thenReturn(events);
+
+        assertSame(events, reactiveStreamController.translateBatchLines("你好\r\n\n世界\n", "en", "ollama", null, null));
+    }
+
+    @Test
+    void testBatchEventsWithoutApiKey() {
+        // 测试未传入DeepSeek API Key时批量翻译只返回一个error事件
+        TranslateService service = new TranslateService(new AiConfig(), null,
+                new StreamMetrics(new SimpleMeterRegistry()), null, null, null, null, null);
+
+        List<ServerSentEvent<Object>> events = service.batchEvents(List.of("你好"), "en", "deepseek", null, null)
+                .collectList().block();
+        assertNotNull(events);
+        assertEquals(1, events.size());
+        assertEquals("error", events.get(0).event());
+        assertEquals("请先设置 DeepSeek API Key", events.get(0).data());
+    }
+}
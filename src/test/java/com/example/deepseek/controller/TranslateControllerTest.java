@@ -1,5 +1,6 @@
 package com.example.deepseek.controller;
 
+import com.example.deepseek.batch.BatchTranslationRequest;
 import com.example.deepseek.service.TranslateService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -7,9 +8,13 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 import jakarta.servlet.http.HttpSession;
 
+import java.util.List;
+
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -107,4 +112,15 @@ class TranslateControllerTest {
         assert result != null;
         verify(translateService).streamTranslate(text, targetLang, session, result);
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testTranslateBatch() {
+        // 测试批量翻译使用会话中的提供商，直接返回服务层的事件流
+        Flux<ServerSentEvent<Object>> events = Flux.empty();
+        when(translateService.batchEvents(List.of("你好", "世界"), "en", session)).thenReturn(events);
+
+        assert events == translateController.translateBatch(
+                new BatchTranslationRequest("en", List.of("你好", "世界")), session);
+        assert events == translateController.translateBatchLines("你好\n世界", "en", session);
+    }
+}
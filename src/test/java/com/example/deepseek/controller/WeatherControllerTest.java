@@ -8,6 +8,8 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ui.Model;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
 import static org.mockito.ArgumentMatchers.*;
@@ -27,6 +29,9 @@ class WeatherControllerTest {
     @Mock
     private HttpSession session;
 
+    @Mock
+    private HttpServletResponse response;
+
     @Mock
     private Model model;
 
@@ -45,5 +50,25 @@ class WeatherControllerTest {
         assert "weather".equals(result);
     }
 
+    @Test
+    void testWeatherStream() {
+        // 测试流式天气查询直接返回SseEmitter并允许跨域访问，查询交由服务异步执行
+        String city = "Beijing";
+
+        SseEmitter result = weatherController.getWeatherStream(city, session, response);
+        assert result != null;
+        verify(response).setHeader("Access-Control-Allow-Origin", "*");
+        verify(weatherService).streamWeather(city, session, result);
+    }
+
+    @Test
+    void testWeatherStreamWithChineseCity() {
+        // 测试中文城市名的流式天气查询
+        String city = "上海";
+
+        SseEmitter result = weatherController.getWeatherStream(city, session, response);
+        assert result != null;
+        verify(weatherService).streamWeather(city, session, result);
+    }
 
 } 
\ No newline at end of file
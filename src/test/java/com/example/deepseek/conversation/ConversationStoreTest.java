@@ -0,0 +1,108 @@
+package com.example.deepseek.conversation;
+
+import com.example.deepseek.config.AiConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ConversationStore 单元测试
+ */
+class ConversationStoreTest {
+
+    private AiConfig aiConfig;
+
+    @BeforeEach
+    void setUp() {
+        aiConfig = new AiConfig();
+    }
+
+    @Test
+    void testKey() {
+        // 测试conversationId为空时使用默认对话，超长标识被截断
+        assertEquals("session:abc|default", ConversationStore.key("session:abc", null));
+        assertEquals("session:abc|default", ConversationStore.key("session:abc", "  "));
+        assertEquals("session:abc|trip", ConversationStore.key("session:abc", " trip "));
+        assertEquals("session:abc|" + "x".repeat(ConversationStore.MAX_ID_LENGTH),
+                ConversationStore.key("session:abc", "x".repeat(200)));
+    }
+
+    @Test
+    void testSameKeySharesConversation() {
+        // 测试同一个键返回同一个会话，清空后重新创建
+        ConversationStore store = new ConversationStore(aiConfig, new SimpleMeterRegistry());
+        Conversation conversation = store.get("session:a|default");
+        conversation.append("你好", "你好！");
+
+        assertSame(conversation, store.get("session:a|default"));
+        assertNotSame(conversation, store.get("session:b|default"));
+
+        store.clear("session:a|default");
+        assertEquals(0, store.get("session:a|default").size());
+    }
+
+    @Test
+    void testUpdateRecalculatesWeight() {
+        // 测试会话追加消息后重新计算占用
+        ConversationStore store = new ConversationStore(aiConfig, new SimpleMeterRegistry());
+        Conversation conversation = store.get("k");
+        store.cleanUp();
+        long before = store.weightedSize();
+
+        conversation.append("a".repeat(1000), "b".repeat(1000));
+        store.update("k", conversation);
+        store.cleanUp();
+
+        assertTrue(store.weightedSize() >= before + 2000);
+    }
+
+    @Test
+    void testKeyWeighedInBytes() {
+        // 测试存储键按UTF-8字节数计入占用
+        ConversationStore store = new ConversationStore(aiConfig, new SimpleMeterRegistry());
+        store.get("k");
+        store.cleanUp();
+        long ascii = store.weightedSize();
+        store.clear("k");
+        store.get("键");
+        store.cleanUp();
+
+        assertEquals(ascii + 2, store.weightedSize());
+    }
+
+    @Test
+    void testBoundedByTotalBytes() {
+        // 测试全部会话的总占用按字节数限制
+        aiConfig.getConversation().setMaxTotalBytes(64 * 1024);
+        ConversationStore store = new ConversationStore(aiConfig, new SimpleMeterRegistry());
+        for (int i = 0; i < 200; i++) {
+            Conversation conversation = store.get("session:" + i + "|default");
+            conversation.append("问题".repeat(100), "回答".repeat(100));
+            store.update("session:" + i + "|default", conversation);
+        }
+        store.cleanUp();
+
+        assertTrue(store.weightedSize() <= 64 * 1024);
+        assertTrue(store.size() < 200);
+    }
+
+    @Test
+    void testManyConversationsFitDefaultLimit() {
+        // 测试默认配置下10万个各含三轮问答的会话不会被淘汰
+        ConversationStore store = new ConversationStore(aiConfig, new SimpleMeterRegistry());
+        for (int i = 0; i < 100_000; i++) {
+            String key = ConversationStore.key("session:" + i, null);
+            Conversation conversation = store.get(key);
+            for (int round = 0; round < 3; round++) {
+                conversation.append("请介绍一下第" + round + "个问题的背景", "这是第" + round + "个问题的回答，包含一些说明文字。");
+            }
+            store.update(key, conversation);
+        }
+        store.cleanUp();
+
+        assertEquals(100_000, store.size());
+        assertTrue(store.weightedSize() < aiConfig.getConversation().getMaxTotalBytes());
+    }
+}
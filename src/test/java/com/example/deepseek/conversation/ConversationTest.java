@@ -0,0 +1,152 @@
+package com.example.deepseek.conversation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Conversation 单元测试
+ */
+class ConversationTest {
+
+    private static List<String> contents(Conversation.Window window) {
+        return window.messages().stream().map(message -> message.get("content")).toList();
+    }
+
+    @Test
+    void testWindowKeepsChronologicalOrder() {
+        // 测试历史消息按时间顺序携带，角色交替为user/assistant
+        Conversation conversation = new Conversation(4096);
+        conversation.append("你好", "你好！");
+        conversation.append("今天星期几", "星期五");
+
+        Conversation.Window window = conversation.window(1000);
+
+        assertEquals(List.of("你好", "你好！", "今天星期几", "星期五"), contents(window));
+        assertEquals(List.of("user", "assistant", "user", "assistant"),
+                window.messages().stream().map(message -> message.get("role")).toList());
+        assertEquals(0, window.excludedMessages());
+    }
+
+    @Test
+    void testWindowBoundedByTokenBudget() {
+        // 测试只携带预算内最近的消息，且窗口从用户消息开始
+        Conversation conversation = new Conversation(4096);
+        conversation.append("一二三四五", "一二三四五");
+        conversation.append("一二三", "一二三四");
+
+        // 预算7个token：最近的回答4个 + 提问3个
+        Conversation.Window window = conversation.window(7);
+        assertEquals(List.of("一二三", "一二三四"), contents(window));
+        assertEquals(2, window.excludedMessages());
+
+        // 预算只够最近的回答时，丢弃以助手回复开头的窗口
+        window = conversation.window(5);
+        assertTrue(window.messages().isEmpty());
+        assertEquals(4, window.excludedMessages());
+    }
+
+    @Test
+    void testWindowPrefixStableAcrossTurns() {
+        // 测试窗口起点只在超出预算时前移，前移后预留空间，之后几轮的历史前缀保持不变
+        Conversation conversation = new Conversation(4096);
+        conversation.append("问一", "答一");
+        conversation.append("问二", "答二");
+
+        // 预算12个token，预留4个：每条消息2个token
+        Conversation.Window first = conversation.window(12, 4);
+        assertEquals(List.of("问一", "答一", "问二", "答二"), contents(first));
+
+        conversation.append("问三", "答三");
+        Conversation.Window second = conversation.window(12, 4);
+        assertEquals(contents(first), contents(second).subList(0, 4));
+        assertEquals(6, second.messages().size());
+
+        // 超出预算：起点前移，只取8个token
+        conversation.append("问四", "答四");
+        Conversation.Window third = conversation.window(12, 4);
+        assertEquals(List.of("问三", "答三", "问四", "答四"), contents(third));
+        assertEquals(4, third.excludedMessages());
+
+        conversation.append("问五", "答五");
+        Conversation.Window fourth = conversation.window(12, 4);
+        assertEquals(contents(third), contents(fourth).subList(0, 4));
+    }
+
+    @Test
+    void testOldestMessagesDroppedOverByteLimit() {
+        // 测试超出单个会话字节上限时丢弃最早的消息
+        Conversation conversation = new Conversation(100);
+        for (int i = 0; i < 10; i++) {
+            conversation.append("问题" + i, "回答" + i);
+        }
+
+        // 每条消息7字节（中文3字节/字）
+        assertEquals(14, conversation.size());
+        assertEquals("问题3", contents(conversation.window(1000)).get(0));
+        assertTrue(conversation.weight() <= Conversation.CONVERSATION_OVERHEAD + 100
+                + 14 * Conversation.MESSAGE_OVERHEAD);
+    }
+
+    @Test
+    void testSummaryReplacesEarlyMessages() {
+        // 测试摘要替换被压缩的早期消息，作为系统消息放在历史最前面
+        Conversation conversation = new Conversation(4096);
+        conversation.append("我叫小明", "你好，小明");
+        conversation.append("我喜欢爬山", "爬山很好");
+        conversation.append("推荐一座山", "黄山");
+
+        Conversation.SummaryTask task = conversation.startSummary(5);
+        assertNotNull(task);
+        assertEquals("用户：我叫小明\n助手：你好，小明\n用户：我喜欢爬山\n助手：爬山很好\n", task.text());
+        // 压缩进行中不重复发起
+        assertNull(conversation.startSummary(5));
+
+        conversation.finishSummary(task, "用户叫小明，喜欢爬山");
+
+        Map<String, String> first = conversation.window(1000).messages().get(0);
+        assertEquals("system", first.get("role"));
+        assertTrue(first.get("content").endsWith("用户叫小明，喜欢爬山"));
+        assertEquals(List.of("推荐一座山", "黄山"), contents(conversation.window(1000)).subList(1, 3));
+        assertEquals(2, conversation.size());
+
+        // 再次压缩时带上已有摘要
+        conversation.append("还有呢", "泰山");
+        Conversation.SummaryTask next = conversation.startSummary(2);
+        assertTrue(next.text().startsWith("之前的摘要：用户叫小明，喜欢爬山"));
+    }
+
+    @Test
+    void testSummaryAfterMessagesDropped() {
+        // 测试压缩期间早期消息已被字节上限丢弃时，不会多删后续消息
+        Conversation conversation = new Conversation(45);
+        conversation.append("问题一", "回答一");
+        conversation.append("问题二", "回答二");
+        Conversation.SummaryTask task = conversation.startSummary(2);
+
+        // 追加后超出上限，最早的一问一答被丢弃（每条消息9字节）
+        conversation.append("问题三", "回答三");
+        assertEquals(4, conversation.size());
+
+        conversation.finishSummary(task, "摘要");
+        assertEquals(List.of("问题二", "回答二", "问题三", "回答三"),
+                contents(conversation.window(1000)).subList(1, 5));
+    }
+
+    @Test
+    void testAbortedSummaryCanRetry() {
+        // 测试摘要失败后可以重新发起，空摘要不替换消息
+        Conversation conversation = new Conversation(4096);
+        conversation.append("问题", "回答");
+        Conversation.SummaryTask task = conversation.startSummary(2);
+        conversation.abortSummary();
+
+        assertNotNull(conversation.startSummary(2));
+        conversation.finishSummary(task, " ");
+        assertEquals(2, conversation.size());
+        assertNull(conversation.getSummary());
+    }
+}
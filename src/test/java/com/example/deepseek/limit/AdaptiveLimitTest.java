@@ -0,0 +1,93 @@
+package com.example.deepseek.limit;
+
+import com.example.deepseek.config.AiConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AdaptiveLimit 单元测试
+ */
+class AdaptiveLimitTest {
+
+    private static final long TTFT = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private FairConcurrencyLimiter limiter;
+    private AdaptiveLimit adaptiveLimit;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new FairConcurrencyLimiter("ollama", new AiConfig.Limit(2, 100, 60000),
+                Schedulers.parallel(), new SimpleMeterRegistry());
+        AiConfig.Adaptive adaptive = new AiConfig.Adaptive();
+        adaptive.setMinLimit(1);
+        adaptive.setMaxLimit(4);
+        adaptiveLimit = new AdaptiveLimit(limiter, adaptive);
+    }
+
+    /**
+     * 占满并发并保持有排队，使限制器处于饱和状态
+     */
+    private void saturate() {
+        for (int i = 0; i < 6; i++) {
+            limiter.acquire("client-" + i).subscribe();
+        }
+    }
+
+    @Test
+    void testIncreaseWhenSaturatedAndHealthy() {
+        // 测试有排队且延迟正常时逐步上调，不超过上限
+        saturate();
+        for (int i = 0; i < 50; i++) {
+            adaptiveLimit.onSample(TTFT, 20);
+        }
+        assertEquals(4, adaptiveLimit.getLimit());
+        assertEquals(4, limiter.getMaxInFlight());
+        assertEquals(4, limiter.getInFlight());
+    }
+
+    @Test
+    void testNoIncreaseWithoutDemand() {
+        // 测试没有排队需求时不上调
+        for (int i = 0; i < 50; i++) {
+            adaptiveLimit.onSample(TTFT, 20);
+        }
+        assertEquals(2, adaptiveLimit.getLimit());
+    }
+
+    @Test
+    void testDecreaseOnLatency() {
+        // 测试首token耗时明显超过基线时下调
+        saturate();
+        adaptiveLimit.onSample(TTFT, 20);
+        for (int i = 0; i < 10; i++) {
+            adaptiveLimit.onSample(TTFT, 20);
+        }
+        int before = adaptiveLimit.getLimit();
+        adaptiveLimit.onSample(TTFT * 5, 20);
+        assertTrue(adaptiveLimit.getLimit() < before);
+    }
+
+    @Test
+    void testDecreaseOnSlowGeneration() {
+        // 测试生成速率明显低于基线时下调
+        adaptiveLimit.onSample(TTFT, 20);
+        adaptiveLimit.onSample(TTFT, 5);
+        assertEquals(1, adaptiveLimit.getLimit());
+    }
+
+    @Test
+    void testDecreaseOnFailureNotBelowMin() {
+        // 测试失败时下调，且不低于下限
+        for (int i = 0; i < 10; i++) {
+            adaptiveLimit.onFailure();
+        }
+        assertEquals(1, adaptiveLimit.getLimit());
+        assertEquals(1, limiter.getMaxInFlight());
+    }
+}
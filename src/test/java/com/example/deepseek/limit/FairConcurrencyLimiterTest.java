@@ -0,0 +1,128 @@
+package com.example.deepseek.limit;
+
+import com.example.deepseek.config.AiConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FairConcurrencyLimiter 单元测试
+ */
+class FairConcurrencyLimiterTest {
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    private FairConcurrencyLimiter limiter(int maxInFlight, int maxQueue, long queueTimeout) {
+        return new FairConcurrencyLimiter("test", new AiConfig.Limit(maxInFlight, maxQueue, queueTimeout),
+                Schedulers.parallel(), registry);
+    }
+
+    @Test
+    void testPermitReleasedWhenStreamEnds() {
+        // 测试流结束后归还许可
+        FairConcurrencyLimiter limiter = limiter(1, 10, 1000);
+        assertEquals(List.of("a", "b"), limiter.limit("s1", Flux.just("a", "b")).collectList().block());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueued());
+    }
+
+    @Test
+    void testQueueFull() {
+        // 测试排队已满时立即拒绝并计数
+        FairConcurrencyLimiter limiter = limiter(1, 1, 10_000);
+        FairConcurrencyLimiter.Permit permit = limiter.acquire("s1").block();
+        Disposable waiting = limiter.acquire("s2").subscribe();
+
+        LimitExceededException error = assertThrows(LimitExceededException.class, () -> limiter.acquire("s3").block());
+        assertEquals(LimitExceededException.Reason.QUEUE_FULL, error.getReason());
+        assertEquals(1.0, registry.get("ai.limiter.rejected").tag("reason", "queue_full").counter().count());
+
+        waiting.dispose();
+        permit.release();
+    }
+
+    @Test
+    void testQueueTimeout() {
+        // 测试排队超过时限时以超时拒绝
+        FairConcurrencyLimiter limiter = limiter(1, 10, 50);
+        FairConcurrencyLimiter.Permit permit = limiter.acquire("s1").block();
+
+        LimitExceededException error = assertThrows(LimitExceededException.class,
+                () -> limiter.acquire("s2").block(Duration.ofSeconds(2)));
+        assertEquals(LimitExceededException.Reason.QUEUE_TIMEOUT, error.getReason());
+        assertEquals(0, limiter.getQueued());
+        permit.release();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testFairAcrossClients() {
+        // 测试许可在客户端之间轮转分配，单个客户端的大量请求不会饿死其他客户端
+        FairConcurrencyLimiter limiter = limiter(1, 10, 10_000);
+        List<String> order = new CopyOnWriteArrayList<>();
+        Map<String, FairConcurrencyLimiter.Permit> permits = new ConcurrentHashMap<>();
+        FairConcurrencyLimiter.Permit first = limiter.acquire("heavy").block();
+        for (String request : List.of("heavy-2", "heavy-3", "heavy-4", "light-1")) {
+            String client = request.substring(0, request.indexOf('-'));
+            limiter.acquire(client).subscribe(permit -> {
+                order.add(request);
+                permits.put(request, permit);
+            });
+        }
+        assertEquals(4, limiter.getQueued());
+
+        first.release();
+        permits.get("heavy-2").release();
+        permits.get("light-1").release();
+        permits.get("heavy-3").release();
+        assertEquals(List.of("heavy-2", "light-1", "heavy-3", "heavy-4"), order);
+        permits.get("heavy-4").release();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testCancelWhileQueued() {
+        // 测试排队中取消会退出队列，不占用许可
+        FairConcurrencyLimiter limiter = limiter(1, 10, 10_000);
+        FairConcurrencyLimiter.Permit permit = limiter.acquire("s1").block();
+        Disposable waiting = limiter.acquire("s2").subscribe();
+        assertEquals(1, limiter.getQueued());
+
+        waiting.dispose();
+        assertEquals(0, limiter.getQueued());
+        permit.release();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testRaiseLimitDispatchesWaiters() {
+        // 测试调大并发上限时立即放行排队请求，并暴露指标
+        FairConcurrencyLimiter limiter = limiter(1, 10, 10_000);
+        limiter.acquire("s1").block();
+        List<FairConcurrencyLimiter.Permit> granted = new CopyOnWriteArrayList<>();
+        limiter.acquire("s2").subscribe(granted::add);
+        limiter.acquire("s3").subscribe(granted::add);
+        assertEquals(2.0, registry.get("ai.limiter.queue.depth").gauge().value());
+
+        limiter.setMaxInFlight(3);
+        assertEquals(2, granted.size());
+        assertEquals(3.0, registry.get("ai.limiter.in.flight").gauge().value());
+        assertEquals(3, registry.get("ai.limiter.wait").timer().count());
+    }
+}
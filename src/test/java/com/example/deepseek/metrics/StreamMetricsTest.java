@@ -0,0 +1,102 @@
+package com.example.deepseek.metrics;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.Context;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * StreamMetrics 单元测试
+ */
+class StreamMetricsTest {
+
+    private static final Tags OLLAMA = StreamMetrics.tags("ollama", "deepseek-r1:7b", "聊天");
+    private static final Tags DEEPSEEK = StreamMetrics.tags("deepseek", "deepseek-chat", "翻译");
+
+    private SimpleMeterRegistry registry;
+    private StreamMetrics streamMetrics;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        streamMetrics = new StreamMetrics(registry);
+    }
+
+    @Test
+    void testDropped() {
+        // 测试丢弃计数按提供商、模型、请求类型和原因打标签，0不注册
+        streamMetrics.recordDropped(DEEPSEEK, "parse_error", 2);
+        streamMetrics.recordDropped(DEEPSEEK, "after_done", 0);
+        assertEquals(2.0, registry.get("ai.stream.dropped").tags(DEEPSEEK).tag("reason", "parse_error")
+                .counter().count());
+        assertNull(registry.find("ai.stream.dropped").tag("reason", "after_done").counter());
+    }
+
+    @Test
+    void testCancelledWithoutHistory() {
+        // 测试没有历史平均值时只记录取消次数，不估算节省量
+        assertEquals(0, streamMetrics.recordCancelled(OLLAMA, 5));
+        assertEquals(1.0, registry.get("ai.stream.cancelled").tag("provider", "ollama").counter().count());
+        assertNull(registry.find("ai.stream.tokens.saved").counter());
+    }
+
+    @Test
+    void testTokensSaved() {
+        // 测试按平均响应长度估算节省的token数
+        streamMetrics.recordCompleted(OLLAMA, 100);
+        assertEquals(70, streamMetrics.recordCancelled(OLLAMA, 30));
+        assertEquals(0, streamMetrics.recordCancelled(OLLAMA, 150));
+        assertEquals(70.0, registry.get("ai.stream.tokens.saved").tag("provider", "ollama").counter().count());
+        assertEquals(2.0, registry.get("ai.stream.cancelled").counter().count());
+    }
+
+    @Test
+    void testLatency() {
+        // 测试首token耗时与生成速率
+        streamMetrics.recordLatency(OLLAMA, 2_000_000, 25.0);
+        streamMetrics.recordLatency(OLLAMA, 4_000_000, 0);
+        assertEquals(2, registry.get("ai.stream.ttft").tag("provider", "ollama").timer().count());
+        assertEquals(1, registry.get("ai.stream.tokens.per.second").summary().count());
+        assertEquals(1, registry.get("ai.stream.ttft").tag("model", "deepseek-r1:7b").tag("type", "聊天")
+                .timers().size());
+    }
+
+    @Test
+    void testObservation() {
+        // 测试单次上游流的连接耗时、总时长、输出字节数、过滤字符数和错误
+        StreamObservation observation = streamMetrics.start("ollama", "deepseek-r1:7b", "聊天", Context.empty());
+        observation.connected();
+        observation.connected();
+        observation.chunk();
+        assertEquals("你好", observation.content("<think>嗯</think>你好", "你好"));
+        assertEquals(SignalType.CANCEL, observation.outcome(SignalType.CANCEL));
+        observation.error(new IllegalStateException("down"));
+        // 出错后下游同步取消，仍按错误结束
+        observation.finish(observation.outcome(SignalType.CANCEL), 1);
+
+        assertTrue(observation.getTtft() > 0);
+        assertEquals(1, registry.get("ai.stream.connect").tags(OLLAMA).timer().count());
+        assertEquals(1, registry.get("ai.stream.duration").tags(OLLAMA).tag("outcome", "error").timer().count());
+        assertEquals(6.0, registry.get("ai.stream.bytes.emitted").tags(OLLAMA).counter().count());
+        assertEquals(16.0, registry.get("ai.stream.think.filtered.chars").tags(OLLAMA).counter().count());
+        assertEquals(1.0, registry.get("ai.stream.errors").tag("exception", "IllegalStateException")
+                .counter().count());
+    }
+
+    @Test
+    void testActiveStreamsAndDisconnects() {
+        // 测试活跃输出流数量和浏览器断开计数
+        streamMetrics.streamOpened(StreamMetrics.TRANSPORT_EMITTER);
+        streamMetrics.streamOpened(StreamMetrics.TRANSPORT_EMITTER);
+        streamMetrics.streamClosed(StreamMetrics.TRANSPORT_EMITTER);
+        streamMetrics.recordDisconnect(StreamMetrics.TRANSPORT_REACTIVE, "聊天");
+
+        assertEquals(1.0, registry.get("ai.stream.active").tag("transport", "emitter").gauge().value());
+        assertEquals(0.0, registry.get("ai.stream.active").tag("transport", "reactive").gauge().value());
+        assertEquals(1.0, registry.get("ai.stream.client.disconnects").tag("type", "聊天").counter().count());
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.deepseek.metrics;
+
+import brave.Tracing;
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
+import brave.propagation.ThreadLocalCurrentTraceContext;
+import brave.propagation.TraceContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.tracing.brave.bridge.BraveBaggageManager;
+import io.micrometer.tracing.brave.bridge.BraveCurrentTraceContext;
+import io.micrometer.tracing.brave.bridge.BravePropagator;
+import io.micrometer.tracing.brave.bridge.BraveTracer;
+import io.micrometer.tracing.brave.bridge.W3CPropagation;
+import io.micrometer.tracing.handler.DefaultTracingObservationHandler;
+import io.micrometer.tracing.handler.PropagatingSenderTracingObservationHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * StreamMetrics 链路追踪单元测试（使用内存中的span导出器，不依赖外部追踪后端）
+ */
+class StreamTracingTest {
+
+    private final List<MutableSpan> spans = new CopyOnWriteArrayList<>();
+    private Tracing tracing;
+    private ObservationRegistry observationRegistry;
+    private StreamMetrics streamMetrics;
+
+    @BeforeEach
+    void setUp() {
+        tracing = Tracing.newBuilder()
+                .currentTraceContext(ThreadLocalCurrentTraceContext.create())
+                .propagationFactory(new W3CPropagation())
+                .addSpanHandler(new SpanHandler() {
+                    @Override
+                    public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+                        spans.add(span);
+                        return true;
+                    }
+                })
+                .build();
+        BraveTracer tracer = new BraveTracer(tracing.tracer(),
+                new BraveCurrentTraceContext(tracing.currentTraceContext()), new BraveBaggageManager());
+        observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(
+                new ObservationHandler.FirstMatchingCompositeObservationHandler(
+                        new PropagatingSenderTracingObservationHandler<>(tracer, new BravePropagator(tracing)),
+                        new DefaultTracingObservationHandler(tracer)));
+        streamMetrics = new StreamMetrics(new SimpleMeterRegistry(), observationRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracing.close();
+    }
+
+    private MutableSpan span(String name) {
+        return spans.stream().filter(span -> name.equals(span.name())).findFirst().orElseThrow();
+    }
+
+    @Test
+    void testUpstreamSpanIsChildOfRequest() {
+        // 测试上游尝试的span是AI请求span的子span，连接和首token记录为span事件
+        Flux<String> upstream = Flux.deferContextual(context -> {
+            StreamObservation observation = streamMetrics.start("ollama", "deepseek-r1:7b", "聊天", context);
+            observation.connected();
+            observation.chunk();
+            observation.content("你好", "你好");
+            observation.finish(SignalType.ON_COMPLETE, 1);
+            return Flux.just("你好");
+        });
+
+        assertEquals(List.of("你好"), streamMetrics.observeRequest("ollama", "聊天", upstream).collectList().block());
+
+        MutableSpan request = span("ai.request");
+        MutableSpan attempt = span("ai.upstream");
+        assertEquals(request.traceId(), attempt.traceId());
+        assertEquals(request.id(), attempt.parentId());
+        assertEquals("completed", request.tag("outcome"));
+        assertEquals("ollama", request.tag("served_by"));
+        assertEquals("1", attempt.tag("tokens"));
+        assertEquals("6", attempt.tag("bytes"));
+        assertEquals("deepseek-r1:7b", attempt.tag("model"));
+        List<String> events = attempt.annotations().stream().map(annotation -> annotation.getValue()).toList();
+        assertEquals(List.of("connected", "first-token"), events);
+    }
+
+    @Test
+    void testRequestTaggedWithServingProvider() {
+        // 测试路由切换后AI请求以served_by标签记录实际给出内容的提供商
+        Flux<String> upstream = Flux.just("deepseek:你好");
+
+        streamMetrics.observeRequest("ollama", "聊天", upstream, item -> item.substring(0, item.indexOf(':')))
+                .blockLast();
+
+        assertEquals("ollama", span("ai.request").tag("provider"));
+        assertEquals("deepseek", span("ai.request").tag("served_by"));
+    }
+
+    @Test
+    void testTraceContextPropagatedToUpstream() {
+        // 测试上游HTTP请求携带traceparent请求头，控制器、AI请求、上游尝试和HTTP请求的span逐级嵌套
+        AtomicReference<String> traceparent = new AtomicReference<>();
+        WebClient client = WebClient.builder()
+                .observationRegistry(observationRegistry)
+                .exchangeFunction(request -> {
+                    traceparent.set(request.headers().getFirst("traceparent"));
+                    return Mono.just(ClientResponse.create(HttpStatus.OK).body("ok").build());
+                })
+                .build();
+        Flux<String> upstream = Flux.deferContextual(context -> {
+            StreamObservation observation = streamMetrics.start("deepseek", "deepseek-chat", "翻译", context);
+            return observation.observe(client.get().uri("http://localhost/chat/completions").retrieve()
+                    .bodyToFlux(String.class)
+                    .doFinally(signal -> observation.finish(signal, 0)));
+        });
+
+        // 与SseEmitter端点一样，在控制器span的作用域内同步订阅
+        Observation server = Observation.start("http.server.requests", observationRegistry);
+        try (Observation.Scope scope = server.openScope()) {
+            streamMetrics.observeRequest("deepseek", "翻译", upstream).blockLast();
+        }
+        server.stop();
+
+        MutableSpan request = span("ai.request");
+        MutableSpan attempt = span("ai.upstream");
+        MutableSpan http = spans.stream().filter(span -> attempt.id().equals(span.parentId())).findFirst()
+                .orElseThrow();
+        assertEquals(span("http.server.requests").id(), request.parentId());
+        assertEquals(request.id(), attempt.parentId());
+        assertNotNull(traceparent.get());
+        assertTrue(traceparent.get().contains(attempt.traceId()));
+        assertTrue(traceparent.get().contains(http.id()));
+    }
+
+    @Test
+    void testErrorRecordedOnSpans() {
+        // 测试上游错误记录到上游尝试span和AI请求span
+        Flux<String> upstream = Flux.deferContextual(context -> {
+            StreamObservation observation = streamMetrics.start("ollama", "deepseek-r1:7b", "聊天", context);
+            return Flux.<String>error(new IllegalStateException("down"))
+                    .doOnError(observation::error)
+                    .doFinally(signal -> observation.finish(signal, 0));
+        });
+
+        assertThrows(IllegalStateException.class,
+                () -> streamMetrics.observeRequest("ollama", "聊天", upstream).blockLast());
+
+        assertInstanceOf(IllegalStateException.class, span("ai.upstream").error());
+        assertEquals("error", span("ai.upstream").tag("outcome"));
+        assertInstanceOf(IllegalStateException.class, span("ai.request").error());
+        assertEquals("none", span("ai.request").tag("served_by"));
+    }
+}
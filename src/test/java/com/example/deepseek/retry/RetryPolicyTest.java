@@ -0,0 +1,158 @@
+package com.example.deepseek.retry;
+
+import com.example.deepseek.config.AiConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RetryPolicy 单元测试
+ */
+class RetryPolicyTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AiConfig.Retry config;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        config = new AiConfig.Retry();
+        config.setInitialBackoff(1);
+        config.setMaxBackoff(10);
+    }
+
+    private RetryPolicy policy() {
+        return new RetryPolicy(config, meterRegistry, Schedulers.parallel());
+    }
+
+    private static WebClientRequestException connectionReset() {
+        return new WebClientRequestException(new IOException("Connection reset"), HttpMethod.POST,
+                URI.create("http://localhost:11434/api/chat"), new HttpHeaders());
+    }
+
+    private static WebClientResponseException status(int code, String retryAfter) {
+        HttpHeaders headers = new HttpHeaders();
+        if (retryAfter != null) {
+            headers.set(HttpHeaders.RETRY_AFTER, retryAfter);
+        }
+        return WebClientResponseException.create(code, "error", headers, new byte[0], null);
+    }
+
+    @Test
+    void testRetriesFailureBeforeFirstItem() {
+        // 测试首个数据之前的连接失败会重试，直到成功
+        AtomicInteger attempts = new AtomicInteger();
+        Flux<String> source = Flux.defer(() -> attempts.incrementAndGet() < 3
+                ? Flux.error(connectionReset())
+                : Flux.just("a", "b"));
+
+        assertEquals(List.of("a", "b"), policy().retryBeforeFirstItem("ollama", source).collectList()
+                .block(Duration.ofSeconds(5)));
+        assertEquals(3, attempts.get());
+        assertEquals(2, meterRegistry.counter("ai.retry.attempts", "upstream", "ollama").count());
+    }
+
+    @Test
+    void testNoRetryAfterFirstItem() {
+        // 测试已收到数据后的失败不重试，避免内容重复
+        AtomicInteger attempts = new AtomicInteger();
+        Flux<String> source = Flux.defer(() -> {
+            attempts.incrementAndGet();
+            return Flux.just("a").concatWith(Flux.error(status(503, null)));
+        });
+
+        assertThrows(WebClientResponseException.class,
+                () -> policy().retryBeforeFirstItem("ollama", source).blockLast(Duration.ofSeconds(5)));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void testOnlyTransientFailuresAreRetryable() {
+        // 测试只有连接失败和502/503/504/429可重试
+        assertTrue(RetryPolicy.isRetryable(connectionReset()));
+        assertTrue(RetryPolicy.isRetryable(new ResourceAccessException("timeout")));
+        assertTrue(RetryPolicy.isRetryable(status(503, null)));
+        assertTrue(RetryPolicy.isRetryable(status(429, null)));
+        assertFalse(RetryPolicy.isRetryable(status(500, null)));
+        assertFalse(RetryPolicy.isRetryable(status(401, null)));
+        assertFalse(RetryPolicy.isRetryable(new IllegalStateException("bug")));
+    }
+
+    @Test
+    void testHonorsRetryAfter() {
+        // 测试按Retry-After等待，超过上限时放弃重试
+        RetryPolicy policy = policy();
+        assertEquals(Duration.ofSeconds(2), policy.nextDelay("deepseek", status(429, "2"), 1));
+        assertNull(policy.nextDelay("deepseek", status(429, "60"), 1));
+        assertNull(policy.nextDelay("deepseek", status(429, "1"), config.getMaxAttempts()));
+    }
+
+    @Test
+    void testBackoffIsExponentialAndCapped() {
+        // 测试退避时长指数增长并受上限约束，抖动不超过退避时长
+        config.setInitialBackoff(100);
+        config.setMaxBackoff(300);
+        config.setJitter(0);
+        RetryPolicy policy = policy();
+        assertEquals(Duration.ofMillis(100), policy.backoff(1));
+        assertEquals(Duration.ofMillis(200), policy.backoff(2));
+        assertEquals(Duration.ofMillis(300), policy.backoff(3));
+
+        config.setJitter(1);
+        RetryPolicy jittered = policy();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(jittered.backoff(2).toMillis() <= 200);
+        }
+    }
+
+    @Test
+    void testBudgetLimitsRetries() {
+        // 测试重试预算耗尽后不再重试
+        config.setBudget(0);
+        config.setBurst(1);
+        RetryPolicy policy = policy();
+        AtomicInteger attempts = new AtomicInteger();
+        Flux<String> failing = Flux.defer(() -> {
+            attempts.incrementAndGet();
+            return Flux.error(connectionReset());
+        });
+
+        assertThrows(WebClientRequestException.class,
+                () -> policy.retryBeforeFirstItem("ollama", failing).blockLast(Duration.ofSeconds(5)));
+        assertEquals(2, attempts.get());
+        assertThrows(WebClientRequestException.class,
+                () -> policy.retryBeforeFirstItem("ollama", failing).blockLast(Duration.ofSeconds(5)));
+        assertEquals(3, attempts.get());
+        assertEquals(2, meterRegistry.counter("ai.retry.budget.exhausted", "upstream", "ollama").count());
+    }
+
+    @Test
+    void testBlockingCallRetries() {
+        // 测试同步调用的重试
+        AtomicInteger attempts = new AtomicInteger();
+        String result = policy().call("weather", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ResourceAccessException("Connection reset");
+            }
+            return "Beijing: ☀️ +20°C";
+        });
+
+        assertEquals("Beijing: ☀️ +20°C", result);
+        assertEquals(3, attempts.get());
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.deepseek.routing;
+
+import com.example.deepseek.config.AiConfig;
+import com.example.deepseek.metrics.StreamMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ProviderRouter 单元测试
+ */
+class ProviderRouterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private StreamMetrics streamMetrics;
+    private AiConfig.Routing routing;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        streamMetrics = new StreamMetrics(meterRegistry);
+        routing = new AiConfig.Routing();
+        routing.setFailoverDeadline(100);
+        routing.setHedgeDelay(100);
+        routing.setMinHedgeDelay(10);
+    }
+
+    private ProviderRouter router(AiConfig.Routing.Policy policy) {
+        routing.setPolicy(policy);
+        return new ProviderRouter(routing, streamMetrics, meterRegistry, Schedulers.parallel());
+    }
+
+    private double switched(String reason) {
+        return meterRegistry.counter("ai.routing.switched", "from", "ollama", "to", "deepseek", "reason", reason)
+                .count();
+    }
+
+    @Test
+    void testNonePolicyUsesPrimaryOnly() {
+        // 测试未启用路由时只请求首选提供商
+        ProviderRouter router = router(AiConfig.Routing.Policy.NONE);
+        AtomicBoolean alternateSubscribed = new AtomicBoolean();
+        Flux<String> alternate = Flux.just("b").doOnSubscribe(s -> alternateSubscribed.set(true));
+
+        assertFalse(router.isEnabled());
+        assertEquals(List.of("a"), router.route("ollama", Flux.just("a"), "deepseek", alternate)
+                .collectList().block());
+        assertFalse(alternateSubscribed.get());
+    }
+
+    @Test
+    void testFailoverOnErrorAndDeadline() {
+        // 测试首选提供商出错或超时无响应时切换，并取消首选请求
+        ProviderRouter router = router(AiConfig.Routing.Policy.FAILOVER);
+        assertEquals(List.of("b"), router.route("ollama", Flux.error(new IllegalStateException("down")),
+                "deepseek", Flux.just("b")).collectList().block(Duration.ofSeconds(5)));
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Flux<String> silent = Flux.<String>never().doOnCancel(() -> cancelled.set(true));
+        assertEquals(List.of("b"), router.route("ollama", silent, "deepseek", Flux.just("b"))
+                .collectList().block(Duration.ofSeconds(5)));
+        assertTrue(cancelled.get());
+        assertEquals(2, switched("failover"));
+    }
+
+    @Test
+    void testNoFailoverAfterFirstToken() {
+        // 测试已开始响应后出错不再切换
+        ProviderRouter router = router(AiConfig.Routing.Policy.FAILOVER);
+        AtomicBoolean alternateSubscribed = new AtomicBoolean();
+        Flux<String> primary = Flux.just("a").concatWith(Flux.error(new IllegalStateException("broken")));
+
+        assertThrows(IllegalStateException.class, () -> router.route("ollama", primary, "deepseek",
+                Flux.just("b").doOnSubscribe(s -> alternateSubscribed.set(true))).blockLast(Duration.ofSeconds(5)));
+        assertFalse(alternateSubscribed.get());
+    }
+
+    @Test
+    void testHedgeFirstResponderWins() {
+        // 测试首选提供商迟迟不响应时发起对冲，先响应的一方胜出，另一方被取消
+        ProviderRouter router = router(AiConfig.Routing.Policy.HEDGE);
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+        Flux<String> slow = Flux.just("a").delaySubscription(Duration.ofSeconds(5))
+                .doOnCancel(() -> primaryCancelled.set(true));
+
+        assertEquals(List.of("b", "c"), router.route("ollama", slow, "deepseek", Flux.just("b", "c"))
+                .collectList().block(Duration.ofSeconds(5)));
+        assertTrue(primaryCancelled.get());
+        assertEquals(1, switched("hedge"));
+    }
+
+    @Test
+    void testHedgeNotNeededWhenPrimaryIsFast() {
+        // 测试首选提供商在对冲时间前响应时不请求另一提供商
+        ProviderRouter router = router(AiConfig.Routing.Policy.HEDGE);
+        AtomicBoolean alternateSubscribed = new AtomicBoolean();
+
+        assertEquals(List.of("a", "b"), router.route("ollama", Flux.just("a", "b"), "deepseek",
+                Flux.just("c").doOnSubscribe(s -> alternateSubscribed.set(true))).collectList().block());
+        assertFalse(alternateSubscribed.get());
+    }
+
+    @Test
+    void testHedgeRespectsBudget() {
+        // 测试预算耗尽时不发起对冲，等待首选提供商响应
+        routing.setHedgeBurst(0);
+        routing.setHedgeBudget(0);
+        ProviderRouter router = router(AiConfig.Routing.Policy.HEDGE);
+        AtomicBoolean alternateSubscribed = new AtomicBoolean();
+        Flux<String> slow = Flux.just("a").delaySubscription(Duration.ofMillis(300));
+
+        assertEquals(List.of("a"), router.route("ollama", slow, "deepseek",
+                Flux.just("b").doOnSubscribe(s -> alternateSubscribed.set(true))).collectList()
+                .block(Duration.ofSeconds(5)));
+        assertFalse(alternateSubscribed.get());
+        assertEquals(1, meterRegistry.counter("ai.routing.hedge.skipped", "provider", "ollama").count());
+    }
+
+    @Test
+    void testHedgeDelayFollowsTtftP95() {
+        // 测试对冲时间取首token耗时p95并受上下限约束
+        routing.setMaxHedgeDelay(1000);
+        ProviderRouter router = router(AiConfig.Routing.Policy.HEDGE);
+        assertEquals(Duration.ofMillis(100), router.hedgeDelay("ollama"));
+
+        for (int i = 0; i < 20; i++) {
+            streamMetrics.recordLatency(StreamMetrics.tags("ollama", "deepseek-r1:7b", "聊天"),
+                    TimeUnit.MILLISECONDS.toNanos(5000), 0);
+        }
+        assertEquals(Duration.ofMillis(1000), router.hedgeDelay("ollama"));
+    }
+}
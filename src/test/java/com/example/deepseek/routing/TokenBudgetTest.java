@@ -0,0 +1,36 @@
+package com.example.deepseek.routing;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TokenBudget 单元测试
+ */
+class TokenBudgetTest {
+
+    @Test
+    void testBurstThenRatio() {
+        // 测试初始允许突发次数，之后按原始请求数的比例补充
+        TokenBudget budget = new TokenBudget(0.5, 2);
+        assertTrue(budget.tryWithdraw());
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+
+        budget.deposit();
+        assertFalse(budget.tryWithdraw());
+        budget.deposit();
+        assertTrue(budget.tryWithdraw());
+    }
+
+    @Test
+    void testBalanceIsCapped() {
+        // 测试余额不超过突发上限
+        TokenBudget budget = new TokenBudget(1, 1);
+        for (int i = 0; i < 10; i++) {
+            budget.deposit();
+        }
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+    }
+}
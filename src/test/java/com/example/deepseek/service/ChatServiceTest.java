@@ -1,15 +1,23 @@
 package com.example.deepseek.service;
 
+import com.example.deepseek.breaker.CircuitBreakerRegistry;
+import com.example.deepseek.client.AiClientRegistry;
 import com.example.deepseek.config.AiConfig;
+import com.example.deepseek.conversation.ConversationStore;
+import com.example.deepseek.limit.RequestLimiter;
+import com.example.deepseek.metrics.StreamMetrics;
+import com.example.deepseek.retry.RetryPolicy;
+import com.example.deepseek.routing.ProviderRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import jakarta.servlet.http.HttpSession;
+import reactor.core.publisher.Flux;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -21,120 +29,83 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class ChatServiceTest {
 
-    @Mock
-    private AiConfig aiConfig;
-
-    @Mock
-    private AiConfig.Ollama ollamaConfig;
-
-    @Mock
-    private AiConfig.Deepseek deepseekConfig;
-
     @Mock
     private HttpSession session;
 
+    // 并发限制之后即为上游请求，测试中直接返回模型输出
     @Mock
-    private SseEmitter emitter;
+    private RequestLimiter requestLimiter;
+
+    private RecordingEmitter emitter;
 
-    @InjectMocks
     private ChatService chatService;
 
     @BeforeEach
     void setUp() {
-        // 配置Mock对象
-        when(aiConfig.getOllama()).thenReturn(ollamaConfig);
-        when(aiConfig.getDeepseek()).thenReturn(deepseekConfig);
-        
-        when(ollamaConfig.getBaseUrl()).thenReturn("http://localhost:11434");
-        when(ollamaConfig.getApiPath()).thenReturn("/api/chat");
-        when(ollamaConfig.getModel()).thenReturn("deepseek-r1:7b");
-        when(ollamaConfig.getFullUrl()).thenReturn("http://localhost:11434/api/chat");
-        
-        when(deepseekConfig.getBaseUrl()).thenReturn("https://api.deepseek.com");
-        when(deepseekConfig.getApiPath()).thenReturn("/v1/chat/completions");
-        when(deepseekConfig.getModel()).thenReturn("deepseek-chat");
-        when(deepseekConfig.getFullUrl()).thenReturn("https://api.deepseek.com/v1/chat/completions");
+        AiConfig aiConfig = new AiConfig();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        StreamMetrics streamMetrics = new StreamMetrics(meterRegistry);
+        chatService = new ChatService(aiConfig, new AiClientRegistry(aiConfig), streamMetrics, requestLimiter,
+                new ProviderRouter(aiConfig, streamMetrics, meterRegistry),
+                new CircuitBreakerRegistry(aiConfig, meterRegistry), new RetryPolicy(aiConfig, meterRegistry),
+                new ConversationStore(aiConfig, meterRegistry));
+        emitter = new RecordingEmitter();
+        lenient().when(session.getId()).thenReturn("session-1");
     }
 
     @Test
-    void testChatWithOllama() {
+    void testChatWithOllama() throws Exception {
         // 测试使用Ollama进行聊天
-        String message = "Hello, how are you?";
-        String provider = "ollama";
-        
-        when(session.getAttribute("provider")).thenReturn(provider);
-        
-        try {
-            chatService.streamChat(message, session, emitter);
-            verify(aiConfig).getOllama();
-            verify(session).getAttribute("provider");
-        } catch (Exception e) {
-            // 在测试环境中可能会因为网络连接失败而抛出异常，这是正常的
-        }
+        when(session.getAttribute("aiProvider")).thenReturn("ollama");
+        when(requestLimiter.limit(eq("ollama"), eq("session-1"), any())).thenReturn(Flux.just("你好", "，世界"));
+
+        chatService.streamChat("Hello, how are you?", null, session, emitter);
+
+        assertEquals("你好，世界", emitter.awaitContent());
     }
 
     @Test
-    void testChatWithDeepseek() {
-        // 测试使用DeepSeek进行聊天
-        String message = "Hello, how are you?";
-        String provider = "deepseek";
-        
-        when(session.getAttribute("provider")).thenReturn(provider);
+    void testChatWithDeepseek() throws Exception {
+        // 测试使用DeepSeek进行聊天，API Key从会话读取
+        when(session.getAttribute("aiProvider")).thenReturn("deepseek");
         when(session.getAttribute("deepseekApiKey")).thenReturn("test-api-key");
-        
-        try {
-            chatService.streamChat(message, session, emitter);
-            verify(aiConfig).getDeepseek();
-            verify(session).getAttribute("provider");
-            verify(session).getAttribute("deepseekApiKey");
-        } catch (Exception e) {
-            // 在测试环境中可能会因为网络连接失败而抛出异常，这是正常的
-        }
+        when(requestLimiter.limit(eq("deepseek"), eq("session-1"), any())).thenReturn(Flux.just("Hello"));
+
+        chatService.streamChat("Hello, how are you?", null, session, emitter);
+
+        assertEquals("Hello", emitter.awaitContent());
     }
 
     @Test
-    void testChatWithDefaultProvider() {
-        // 测试使用默认提供商进行聊天
-        String message = "Hello, how are you?";
-        
-        when(session.getAttribute("provider")).thenReturn(null);
-        
-        try {
-            chatService.streamChat(message, session, emitter);
-            verify(session).getAttribute("provider");
-            // 默认应该使用ollama
-            verify(aiConfig).getOllama();
-        } catch (Exception e) {
-            // 在测试环境中可能会因为网络连接失败而抛出异常，这是正常的
-        }
+    void testChatWithDefaultProvider() throws Exception {
+        // 测试未选择提供商时提示先选择，不请求上游
+        when(session.getAttribute("aiProvider")).thenReturn(null);
+
+        chatService.streamChat("Hello, how are you?", null, session, emitter);
+
+        assertEquals("请先选择AI提供商（本地Ollama或远程DeepSeek）后再进行聊天。", emitter.awaitContent());
+        verifyNoInteractions(requestLimiter);
     }
 
     @Test
-    void testChatWithEmptyMessage() {
-        // 测试空消息的情况
-        String message = "";
-        
-        try {
-            chatService.streamChat(message, session, emitter);
-            // 即使消息为空，也应该调用相关方法
-            verify(session).getAttribute("provider");
-        } catch (Exception e) {
-            // 在测试环境中可能会因为网络连接失败而抛出异常，这是正常的
-        }
+    void testChatWithEmptyMessage() throws Exception {
+        // 测试空消息的情况，仍正常请求并结束
+        when(session.getAttribute("aiProvider")).thenReturn("ollama");
+        when(requestLimiter.limit(eq("ollama"), any(), any())).thenReturn(Flux.just("请问有什么可以帮您？"));
+
+        chatService.streamChat("", null, session, emitter);
+
+        assertEquals("请问有什么可以帮您？", emitter.awaitContent());
     }
 
     @Test
-    void testChatWithNullMessage() {
-        // 测试null消息的情况
-        String message = null;
-        
-        try {
-            chatService.streamChat(message, session, emitter);
-            // 即使消息为null，也应该调用相关方法
-            verify(session).getAttribute("provider");
-        } catch (Exception e) {
-            // 在测试环境中可能会因为网络连接失败而抛出异常，这是正常的
-        }
+    void testChatWithNullMessage() throws Exception {
+        // 测试null消息的情况，仍正常请求并结束
+        when(session.getAttribute("aiProvider")).thenReturn("ollama");
+        when(requestLimiter.limit(eq("ollama"), any(), any())).thenReturn(Flux.just("请问有什么可以帮您？"));
+
+        chatService.streamChat(null, null, session, emitter);
+
+        assertEquals("请问有什么可以帮您？", emitter.awaitContent());
     }
-} 
- 
\ No newline at end of file
+}
@@ -0,0 +1,133 @@
+package com.example.deepseek.service;
+
+import com.example.deepseek.config.AiConfig;
+import com.example.deepseek.metrics.StreamMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * SseEmitter断开时取消上游订阅 单元测试
+ */
+class EmitterCancellationTest {
+
+    private TestBaseAiService service;
+    private SseEmitter emitter;
+    private Sinks.Many<String> upstream;
+    private AtomicBoolean cancelled;
+    private Flux<String> content;
+
+    @BeforeEach
+    void setUp() {
+        service = new TestBaseAiService();
+        emitter = mock(SseEmitter.class);
+        upstream = Sinks.many().unicast().onBackpressureBuffer();
+        cancelled = new AtomicBoolean();
+        content = upstream.asFlux().doOnCancel(() -> cancelled.set(true));
+    }
+
+    @Test
+    void testCancelOnSendFailure() throws IOException {
+        // 测试客户端断开导致发送失败时取消上游
+        doNothing().doThrow(new IOException("Broken pipe")).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+        service.subscribeEmitter(content, emitter, "聊天");
+
+        upstream.tryEmitNext("第一段");
+        verify(emitter, timeout(1000)).send(any(SseEmitter.SseEventBuilder.class));
+        assertFalse(cancelled.get());
+        upstream.tryEmitNext("第二段");
+        awaitCancelled();
+        verify(emitter, never()).complete();
+    }
+
+    @Test
+    void testCancelOnCompletionCallback() {
+        // 测试Emitter结束回调触发时取消上游
+        service.subscribeEmitter(content, emitter, "聊天");
+        ArgumentCaptor<Runnable> onCompletion = ArgumentCaptor.forClass(Runnable.class);
+        verify(emitter).onCompletion(onCompletion.capture());
+
+        onCompletion.getValue().run();
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void testCancelOnTimeoutCallback() {
+        // 测试Emitter超时时取消上游并结束响应
+        service.subscribeEmitter(content, emitter, "聊天");
+        ArgumentCaptor<Runnable> onTimeout = ArgumentCaptor.forClass(Runnable.class);
+        verify(emitter).onTimeout(onTimeout.capture());
+
+        onTimeout.getValue().run();
+        assertTrue(cancelled.get());
+        verify(emitter).complete();
+    }
+
+    @Test
+    void testCompleteNormally() throws Exception {
+        // 测试正常结束时全部内容发出且不取消上游
+        // complete()是synchronized方法，不能用verify(timeout)轮询，改为等待回调
+        CountDownLatch completed = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            completed.countDown();
+            return null;
+        }).when(emitter).complete();
+
+        service.subscribeEmitter(content, emitter, "聊天");
+        upstream.tryEmitNext("A");
+        upstream.tryEmitNext("B");
+        upstream.tryEmitComplete();
+        assertTrue(completed.await(1, TimeUnit.SECONDS));
+        verify(emitter, times(2)).send(any(SseEmitter.SseEventBuilder.class));
+        assertFalse(cancelled.get());
+    }
+
+    @Test
+    void testMultiLineContentFramed() throws Exception {
+        // 测试多行内容按行写成多个data行，不会被换行拆成无效的SSE帧
+        ArgumentCaptor<SseEmitter.SseEventBuilder> event = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        service.subscribeEmitter(content, emitter, "天气查询");
+
+        upstream.tryEmitNext("正在智能查询…\n今天晴\r\n");
+        verify(emitter, timeout(1000)).send(event.capture());
+        StringBuilder frame = new StringBuilder();
+        event.getValue().build().forEach(part -> frame.append(part.getData()));
+        assertEquals("data:正在智能查询…\ndata:今天晴\ndata:\n\n", frame.toString());
+        upstream.tryEmitComplete();
+    }
+
+    private void awaitCancelled() {
+        long deadline = System.nanoTime() + Duration.ofSeconds(1).toNanos();
+        while (!cancelled.get() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertTrue(cancelled.get());
+    }
+
+    private static class TestBaseAiService extends BaseAiService {
+        TestBaseAiService() {
+            super(streamingConfig(), null, new StreamMetrics(new SimpleMeterRegistry()), null, null, null, null);
+        }
+
+        // 关闭合并，逐个片段发送
+        private static AiConfig streamingConfig() {
+            AiConfig aiConfig = new AiConfig();
+            aiConfig.getStreaming().setCoalesce(false);
+            return aiConfig;
+        }
+    }
+}
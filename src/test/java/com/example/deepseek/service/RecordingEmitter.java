@@ -0,0 +1,54 @@
+package com.example.deepseek.service;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 记录发送内容的SseEmitter，供服务层测试等待流结束并检查各事件的数据
+ */
+class RecordingEmitter extends SseEmitter {
+
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final CountDownLatch completed = new CountDownLatch(1);
+
+    @Override
+    public void send(SseEventBuilder builder) {
+        // 多个data行按SSE规范以换行拼接
+        events.add(builder.build().stream()
+                .filter(part -> part.getMediaType() == null)
+                .map(part -> String.valueOf(part.getData()))
+                .collect(Collectors.joining("\n")));
+    }
+
+    @Override
+    public void complete() {
+        completed.countDown();
+    }
+
+    @Override
+    public void completeWithError(Throwable ex) {
+        completed.countDown();
+    }
+
+    /**
+     * 等待流结束，返回各事件的数据
+     */
+    List<String> awaitEvents() throws InterruptedException {
+        assertTrue(completed.await(5, TimeUnit.SECONDS), "SSE流未在5秒内结束");
+        return events;
+    }
+
+    /**
+     * 等待流结束，返回所有事件数据拼接后的内容
+     */
+    String awaitContent() throws InterruptedException {
+        return String.join("", awaitEvents());
+    }
+}
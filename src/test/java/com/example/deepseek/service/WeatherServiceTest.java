@@ -1,17 +1,37 @@
 package com.example.deepseek.service;
 
+import com.example.deepseek.breaker.CircuitBreakerRegistry;
+import com.example.deepseek.cache.WeatherCache;
+import com.example.deepseek.client.AiClientRegistry;
 import com.example.deepseek.config.AiConfig;
+import com.example.deepseek.limit.RequestLimiter;
+import com.example.deepseek.metrics.StreamMetrics;
+import com.example.deepseek.retry.RetryPolicy;
+import com.example.deepseek.routing.ProviderRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
 import jakarta.servlet.http.HttpSession;
+import reactor.core.publisher.Flux;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.*;
 
 /**
  * WeatherService 单元测试
@@ -21,143 +41,129 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class WeatherServiceTest {
 
-    @Mock
-    private AiConfig aiConfig;
-
-    @Mock
-    private AiConfig.Ollama ollamaConfig;
-
-    @Mock
-    private AiConfig.Deepseek deepseekConfig;
-
-    @Mock
-    private AiConfig.Weather weatherConfig;
+    private static final MediaType TEXT_UTF8 = new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
 
     @Mock
     private HttpSession session;
 
     @Mock
-    private SseEmitter emitter;
+    private RequestLimiter requestLimiter;
+
+    // 模拟wttr.in
+    private MockRestServiceServer weatherServer;
 
-    @InjectMocks
     private WeatherService weatherService;
 
     @BeforeEach
     void setUp() {
-        // 配置Mock对象
-        when(aiConfig.getOllama()).thenReturn(ollamaConfig);
-        when(aiConfig.getDeepseek()).thenReturn(deepseekConfig);
-        when(aiConfig.getWeather()).thenReturn(weatherConfig);
-        
-        when(ollamaConfig.getBaseUrl()).thenReturn("http://localhost:11434");
-        when(ollamaConfig.getApiPath()).thenReturn("/api/chat");
-        when(ollamaConfig.getModel()).thenReturn("deepseek-r1:7b");
-        when(ollamaConfig.getFullUrl()).thenReturn("http://localhost:11434/api/chat");
-        
-        when(deepseekConfig.getBaseUrl()).thenReturn("https://api.deepseek.com");
-        when(deepseekConfig.getApiPath()).thenReturn("/v1/chat/completions");
-        when(deepseekConfig.getModel()).thenReturn("deepseek-chat");
-        when(deepseekConfig.getFullUrl()).thenReturn("https://api.deepseek.com/v1/chat/completions");
-        
-        when(weatherConfig.getBaseUrl()).thenReturn("https://wttr.in");
-        when(weatherConfig.getTimeout()).thenReturn(10000);
+        RestTemplate restTemplate = new RestTemplate();
+        weatherServer = MockRestServiceServer.bindTo(restTemplate).build();
+        AiConfig aiConfig = new AiConfig();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        StreamMetrics streamMetrics = new StreamMetrics(meterRegistry);
+        weatherService = new WeatherService(aiConfig, new AiClientRegistry(aiConfig), streamMetrics, requestLimiter,
+                new ProviderRouter(aiConfig, streamMetrics, meterRegistry),
+                new CircuitBreakerRegistry(aiConfig, meterRegistry), new RetryPolicy(aiConfig, meterRegistry),
+                restTemplate, new WeatherCache(aiConfig, meterRegistry));
     }
 
     @Test
     void testGetWeatherWithOllama() {
-        // 测试使用Ollama获取天气信息
-        String city = "Beijing";
-        String provider = "ollama";
-        
-        when(session.getAttribute("provider")).thenReturn(provider);
-        when(session.getAttribute("deepseekApiKey")).thenReturn("test-api-key");
-        
-        String result = weatherService.getWeather(city, session);
-        assert result.contains("Beijing");
-        assert result.contains("test-api-key");
-        verify(session).getAttribute("deepseekApiKey");
+        // 测试直接查询天气信息并格式化
+        stubWeather("Beijing: ☀️ +20°C");
+
+        String result = weatherService.getWeather("Beijing", session);
+        assertTrue(result.contains("Beijing 天气信息"));
+        assertTrue(result.contains("🌡️ Beijing: ☀️ +20°C"));
+        weatherServer.verify();
     }
 
     @Test
     void testGetWeatherWithDeepseek() {
-        // 测试使用DeepSeek获取天气信息
-        String city = "Beijing";
-        String provider = "deepseek";
-        
-        when(session.getAttribute("provider")).thenReturn(provider);
-        when(session.getAttribute("deepseekApiKey")).thenReturn("test-api-key");
-        
-        String result = weatherService.getWeather(city, session);
-        assert result.contains("Beijing");
-        assert result.contains("test-api-key");
-        verify(session).getAttribute("deepseekApiKey");
+        // 测试直接查询不依赖提供商和API Key
+        stubWeather("Beijing: ☀️ +20°C");
+
+        String result = weatherService.getWeather("Beijing", session);
+        assertTrue(result.contains("+20°C"));
+        verifyNoInteractions(session);
     }
 
     @Test
     void testGetWeatherWithDefaultProvider() {
-        // 测试使用默认提供商获取天气信息
-        String city = "Beijing";
-        
-        when(session.getAttribute("provider")).thenReturn(null);
-        when(session.getAttribute("deepseekApiKey")).thenReturn("test-api-key");
-        
-        String result = weatherService.getWeather(city, session);
-        assert result.contains("Beijing");
-        assert result.contains("test-api-key");
-        verify(session).getAttribute("deepseekApiKey");
+        // 测试同一城市再次查询时命中缓存
+        stubWeather("Beijing: ☀️ +20°C");
+
+        String first = weatherService.getWeather("Beijing", session);
+        String second = weatherService.getWeather(" beijing ", session);
+        assertTrue(first.contains("+20°C"));
+        assertTrue(second.contains("+20°C"));
+        weatherServer.verify();
     }
 
     @Test
     void testGetWeatherWithEmptyCity() {
-        // 测试空城市名的情况
-        String city = "";
-        
-        when(session.getAttribute("deepseekApiKey")).thenReturn("test-api-key");
-        
-        String result = weatherService.getWeather(city, session);
-        assert result.contains("test-api-key");
-        verify(session).getAttribute("deepseekApiKey");
+        // 测试空城市名的情况，查询失败时返回提示且不缓存
+        weatherServer.expect(ExpectedCount.times(2), requestTo(startsWith("https://wttr.in/")))
+                .andRespond(withStatus(HttpStatus.NOT_FOUND));
+
+        assertEquals("抱歉，查询天气信息时出现错误，请稍后重试。", weatherService.getWeather("", session));
+        weatherService.getWeather("", session);
+        weatherServer.verify();
     }
 
     @Test
     void testGetWeatherWithNullCity() {
-        // 测试null城市名的情况
-        String city = null;
-        
-        when(session.getAttribute("deepseekApiKey")).thenReturn("test-api-key");
-        
-        String result = weatherService.getWeather(city, session);
-        assert result.contains("test-api-key");
-        verify(session).getAttribute("deepseekApiKey");
+        // 测试null城市名的情况，返回错误提示而不是抛出异常
+        assertEquals("抱歉，查询天气信息时出现错误，请稍后重试。", weatherService.getWeather(null, session));
     }
 
     @Test
     void testGetWeatherWithChineseCity() {
         // 测试中文城市名
-        String city = "上海";
-        String provider = "ollama";
-        
-        when(session.getAttribute("provider")).thenReturn(provider);
-        when(session.getAttribute("deepseekApiKey")).thenReturn("test-api-key");
-        
-        String result = weatherService.getWeather(city, session);
-        assert result.contains("上海");
-        assert result.contains("test-api-key");
-        verify(session).getAttribute("deepseekApiKey");
+        stubWeather("上海: ⛅️ +18°C");
+
+        String result = weatherService.getWeather("上海", session);
+        assertTrue(result.contains("上海 天气信息"));
+        assertTrue(result.contains("上海: ⛅️ +18°C"));
     }
 
     @Test
     void testGetWeatherWithEnglishCity() {
-        // 测试英文城市名
-        String city = "New York";
-        String provider = "ollama";
-        
-        when(session.getAttribute("provider")).thenReturn(provider);
-        when(session.getAttribute("deepseekApiKey")).thenReturn("test-api-key");
-        
-        String result = weatherService.getWeather(city, session);
-        assert result.contains("New York");
-        assert result.contains("test-api-key");
-        verify(session).getAttribute("deepseekApiKey");
+        // 测试包含空格的英文城市名
+        stubWeather("New York: 🌧 +12°C");
+
+        String result = weatherService.getWeather("New York", session);
+        assertTrue(result.contains("New York 天气信息"));
+        assertTrue(result.contains("New York: 🌧 +12°C"));
+    }
+
+    @Test
+    void testStreamWeather() throws Exception {
+        // 测试流式天气查询：先发出查询提示，模型输出之后单独发送[DONE]
+        when(session.getAttribute("aiProvider")).thenReturn("ollama");
+        when(session.getId()).thenReturn("session-1");
+        when(requestLimiter.limit(eq("ollama"), eq("session-1"), any())).thenReturn(Flux.just("今天晴", "😊"));
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        weatherService.streamWeather("Beijing", session, emitter);
+
+        List<String> events = emitter.awaitEvents();
+        assertEquals("正在智能查询 Beijing 的天气信息...\n", events.get(0));
+        assertEquals("[DONE]", events.get(events.size() - 1));
+        assertEquals("今天晴😊", String.join("", events.subList(1, events.size() - 1)));
+    }
+
+    @Test
+    void testFilterThinkTags() {
+        // 测试过滤<think>块（含Unicode转义的标签），没有结束标签时只去掉标签本身
+        assertEquals("北京晴", WeatherService.filterThinkTags("<think>查询中</think>北京晴"));
+        assertEquals("北京晴", WeatherService.filterThinkTags("\\u003cthink\\u003e查询中\\u003c/think\\u003e北京晴"));
+        assertEquals("北京晴，25°C", WeatherService.filterThinkTags("北京晴<think>，25°C"));
+    }
+
+    private void stubWeather(String body) {
+        weatherServer.expect(requestTo(startsWith("https://wttr.in/")))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess(body, TEXT_UTF8));
     }
-} 
\ No newline at end of file
+}
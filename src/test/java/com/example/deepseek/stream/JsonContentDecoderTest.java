@@ -0,0 +1,67 @@
+package com.example.deepseek.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JsonContentDecoder 单元测试
+ */
+class JsonContentDecoderTest {
+
+    @Test
+    void testOllamaContent() {
+        // 测试提取Ollama响应中的message.content
+        JsonContentDecoder decoder = new JsonContentDecoder(JsonContentDecoder.OLLAMA_CONTENT_PATH);
+        String chunk = "{\"model\":\"deepseek-r1:7b\",\"message\":{\"role\":\"assistant\",\"content\":\"你好\"},\"done\":false}\n";
+        assertEquals("你好", decoder.decode(chunk));
+    }
+
+    @Test
+    void testMultipleValuesInOneChunk() {
+        // 测试一个块中包含多行NDJSON
+        JsonContentDecoder decoder = new JsonContentDecoder(JsonContentDecoder.OLLAMA_CONTENT_PATH);
+        String chunk = "{\"message\":{\"content\":\"Hel\"}}\n{\"message\":{\"content\":\"lo\"}}\n{\"done\":true}\n";
+        assertEquals("Hello", decoder.decode(chunk));
+    }
+
+    @Test
+    void testValueSplitAcrossChunks() {
+        // 测试JSON值（包括多字节UTF-8字符）被拆分到多个字节块中
+        JsonContentDecoder decoder = new JsonContentDecoder(JsonContentDecoder.OLLAMA_CONTENT_PATH);
+        byte[] bytes = "{\"message\":{\"content\":\"天气晴\"}}\n".getBytes(StandardCharsets.UTF_8);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < bytes.length; i += 5) {
+            content.append(decoder.decode(bytes, i, Math.min(5, bytes.length - i)));
+        }
+        assertEquals("天气晴", content.toString());
+    }
+
+    @Test
+    void testDeepSeekDeltaContent() {
+        // 测试只提取choices[0].delta.content，忽略其他位置的content字段
+        JsonContentDecoder decoder = new JsonContentDecoder(JsonContentDecoder.OPENAI_DELTA_CONTENT_PATH);
+        String chunk = "{\"id\":\"1\",\"content\":\"root\",\"choices\":["
+                + "{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"答案\"},\"meta\":{\"content\":\"x\"}},"
+                + "{\"index\":1,\"delta\":{\"content\":\"other\"}}]}";
+        assertEquals("答案", decoder.decode(chunk));
+    }
+
+    @Test
+    void testEscapedContent() {
+        // 测试转义字符被正确解码
+        JsonContentDecoder decoder = new JsonContentDecoder(JsonContentDecoder.OLLAMA_CONTENT_PATH);
+        assertEquals("a\n\"b\"<think>", decoder.decode("{\"message\":{\"content\":\"a\\n\\\"b\\\"\\u003cthink\\u003e\"}}"));
+    }
+
+    @Test
+    void testRecoverAfterCorruptedInput() {
+        // 测试损坏的输入被计数，之后的输入继续正常解析
+        JsonContentDecoder decoder = new JsonContentDecoder(JsonContentDecoder.OPENAI_DELTA_CONTENT_PATH);
+        assertEquals("", decoder.decode("{\"choices\":[}"));
+        assertEquals(1, decoder.getParseErrors());
+        assertEquals("ok", decoder.decode("{\"choices\":[{\"delta\":{\"content\":\"ok\"}}]}"));
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.deepseek.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SseContentDecoder 单元测试
+ */
+class SseContentDecoderTest {
+
+    private static String delta(String content) {
+        return "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + content + "\"}}]}\n\n";
+    }
+
+    private static String decode(SseContentDecoder decoder, String chunk) {
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        return decoder.decode(bytes, 0, bytes.length);
+    }
+
+    private static SseContentDecoder newDecoder() {
+        return new SseContentDecoder(JsonContentDecoder.OPENAI_DELTA_CONTENT_PATH);
+    }
+
+    @Test
+    void testEventsAndDone() {
+        // 测试多个事件和[DONE]结束标记
+        SseContentDecoder decoder = newDecoder();
+        assertEquals("你好，世界", decode(decoder, delta("你好") + delta("，世界") + "data: [DONE]\n\n"));
+        assertTrue(decoder.isDone());
+        assertEquals(0, decoder.getParseErrors());
+    }
+
+    @Test
+    void testEventSplitAcrossChunks() {
+        // 测试事件（包括"data:"前缀、换行和多字节UTF-8字符）被拆分到任意字节边界
+        byte[] bytes = (delta("天气") + delta("晴朗") + "data: [DONE]\n\n").getBytes(StandardCharsets.UTF_8);
+        for (int step = 1; step <= 7; step++) {
+            SseContentDecoder decoder = newDecoder();
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < bytes.length; i += step) {
+                content.append(decoder.decode(bytes, i, Math.min(step, bytes.length - i)));
+            }
+            assertEquals("天气晴朗", content.toString(), "step=" + step);
+            assertTrue(decoder.isDone());
+        }
+    }
+
+    @Test
+    void testCrLfAndMultiLineData() {
+        // 测试\r\n换行、无空格的data前缀以及多行data
+        SseContentDecoder decoder = newDecoder();
+        String chunk = "event: message\r\nid: 1\r\ndata:{\"choices\":[{\"delta\":\r\ndata: {\"content\":\"多行\"}}]}\r\n\r\n";
+        assertEquals("多行", decode(decoder, chunk));
+    }
+
+    @Test
+    void testCommentsAndRoleOnlyDelta() {
+        // 测试注释（心跳）行和不含content的delta被忽略
+        SseContentDecoder decoder = newDecoder();
+        String chunk = ": keep-alive\n\ndata: {\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}\n\n" + delta("A");
+        assertEquals("A", decode(decoder, chunk));
+        assertEquals(0, decoder.getParseErrors());
+    }
+
+    @Test
+    void testCorruptedEventIsIsolated() {
+        // 测试损坏的事件只丢弃自身，同一块中的后续事件正常解析
+        SseContentDecoder decoder = newDecoder();
+        String chunk = "data: {\"choices\":[{\"delta\":{\"content\":\"丢\n\n" + "data: not-json\n\n" + delta("留");
+        assertEquals("留", decode(decoder, chunk));
+        assertEquals(2, decoder.getParseErrors());
+    }
+
+    @Test
+    void testEventsAfterDoneAreDropped() {
+        // 测试[DONE]之后的事件被丢弃并计数
+        SseContentDecoder decoder = newDecoder();
+        assertEquals("", decode(decoder, "data: [DONE]\n\n" + delta("多余")));
+        assertEquals(1, decoder.getEventsAfterDone());
+    }
+
+    @Test
+    void testFinishDispatchesTrailingEvent() {
+        // 测试流结束时分发最后一个未以空行结束的事件
+        SseContentDecoder decoder = newDecoder();
+        assertEquals("", decode(decoder, "data: {\"choices\":[{\"delta\":{\"content\":\"尾\"}}]}"));
+        assertEquals("尾", decoder.finish());
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.deepseek.stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ThinkTagFilter 单元测试
+ */
+class ThinkTagFilterTest {
+
+    private ThinkTagFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new ThinkTagFilter();
+    }
+
+    @Test
+    void testPlainTextPassesThrough() {
+        // 测试普通文本原样输出，token之间的空白不被裁剪
+        assertEquals("Hello", filter.filter("Hello"));
+        assertEquals(" world", filter.filter(" world"));
+        assertEquals(" \n", filter.filter(" \n"));
+    }
+
+    @Test
+    void testThinkBlockInSingleChunk() {
+        // 测试同一块内的思考内容被过滤
+        assertEquals("前文答案", filter.filter("前文<think>思考过程</think>答案"));
+        assertFalse(filter.isInThink());
+    }
+
+    @Test
+    void testTagsSplitAcrossChunks() {
+        // 测试标签被拆分到多个块中
+        StringBuilder visible = new StringBuilder();
+        for (String chunk : new String[]{"<th", "ink>", "推理", "中</th", "ink", ">\n\n", "北京", "晴"}) {
+            visible.append(filter.filter(chunk));
+        }
+        visible.append(filter.flush());
+        assertEquals("北京晴", visible.toString());
+    }
+
+    @Test
+    void testThinkStateSpansChunks() {
+        // 测试思考状态跨块保持
+        assertEquals("", filter.filter("<think>"));
+        assertTrue(filter.isInThink());
+        assertEquals("", filter.filter("still thinking < not a tag"));
+        assertEquals("", filter.filter("</think>"));
+        assertEquals("answer", filter.filter("answer"));
+    }
+
+    @Test
+    void testLessThanThatIsNotATag() {
+        // 测试不是标签的"<"原样输出
+        assertEquals("a < b", filter.filter("a < b"));
+        assertEquals("x", filter.filter("x<th"));
+        assertEquals("<thy", filter.filter("y"));
+        assertEquals("<<think", filter.filter("<<think") + filter.flush());
+    }
+
+    @Test
+    void testFlushReleasesTrailingPartialTag() {
+        // 测试流结束时释放末尾未确认的标签前缀
+        assertEquals("1 ", filter.filter("1 <thi"));
+        assertEquals("<thi", filter.flush());
+        assertEquals("", filter.flush());
+    }
+
+    @Test
+    void testFlushKeepsUnclosedThink() {
+        // 测试没有结束标签的<think>只去掉标签本身，其后的内容在流结束时输出
+        assertEquals("北京晴", filter.filter("北京晴<think>，25"));
+        assertEquals("", filter.filter("°C</thi"));
+        assertEquals("，25°C</thi", filter.flush());
+        assertEquals("<think>".length(), filter.getFilteredChars());
+
+        ThinkTagFilter nested = new ThinkTagFilter();
+        assertEquals("a", nested.filter("a<think>b<think>c"));
+        assertEquals("bc", nested.flush());
+    }
+
+    @Test
+    void testFilteredCharsCounted() {
+        // 测试统计被过滤的字符数（标签、思考内容及其后的空白）
+        filter.filter("<think>abc</think>\nok");
+        assertEquals("<think>abc</think>\n".length(), filter.getFilteredChars());
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.deepseek.stream;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TokenCoalescer 单元测试
+ */
+class TokenCoalescerTest {
+
+    private static TokenCoalescer coalescer(int maxBytes, long maxDelay, boolean sentenceBoundary) {
+        return new TokenCoalescer(maxBytes, maxDelay, sentenceBoundary, Schedulers.parallel());
+    }
+
+    @Test
+    void testFlushByBytes() {
+        // 测试累计字节数达到上限时发出，流结束时发出剩余内容
+        List<String> frames = coalescer(4, 10_000, false)
+                .apply(Flux.just("ab", "c", "de", "f", "g"))
+                .collectList().block();
+        assertEquals(List.of("abcde", "fg"), frames);
+    }
+
+    @Test
+    void testFlushBySentenceBoundary() {
+        // 测试遇到句末标点或换行时发出
+        List<String> frames = coalescer(1024, 10_000, true)
+                .apply(Flux.just("今天", "天气", "晴。", "明天", "下雨\n", "后天"))
+                .collectList().block();
+        assertEquals(List.of("今天天气晴。", "明天下雨\n", "后天"), frames);
+    }
+
+    @Test
+    void testFlushByDelay() {
+        // 测试上游停顿时，已缓冲的内容在最长等待后发出
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        List<String> frames = new CopyOnWriteArrayList<>();
+        coalescer(1024, 20, false).apply(upstream.asFlux()).subscribe(frames::add);
+
+        upstream.tryEmitNext("思考");
+        upstream.tryEmitNext("中");
+        assertTrue(frames.isEmpty());
+        awaitSize(frames, 1);
+        assertEquals("思考中", frames.get(0));
+        upstream.tryEmitComplete();
+    }
+
+    @Test
+    void testErrorAfterBufferedContent() {
+        // 测试上游出错时先发出已缓冲内容再传递错误
+        List<String> frames = new CopyOnWriteArrayList<>();
+        Flux<String> source = Flux.just("部分", "内容").concatWith(Flux.error(new IllegalStateException("断开")));
+        assertThrows(IllegalStateException.class,
+                () -> coalescer(1024, 10_000, false).apply(source).doOnNext(frames::add).blockLast());
+        assertEquals(List.of("部分内容"), frames);
+    }
+
+    @Test
+    void testBackpressure() {
+        // 测试下游没有需求时，缓冲满后停止向上游请求
+        AtomicInteger upstreamRequested = new AtomicInteger();
+        Flux<String> source = Flux.range(0, 1000).map(i -> "x")
+                .doOnRequest(n -> upstreamRequested.addAndGet((int) Math.min(n, Integer.MAX_VALUE)));
+        BaseSubscriber<String> subscriber = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(org.reactivestreams.Subscription subscription) {
+                request(1);
+            }
+        };
+        coalescer(8, 10_000, false).apply(source).subscribe(subscriber);
+
+        // 第一帧8字节已发出，第二帧缓冲满8字节后停止请求
+        assertEquals(16, upstreamRequested.get());
+        subscriber.request(1);
+        assertEquals(24, upstreamRequested.get());
+        subscriber.cancel();
+    }
+
+    @Test
+    void testNewlineEndsFrame() {
+        // 测试含换行的片段结束当前帧，后续片段进入下一帧
+        List<String> frames = coalescer(1024, 10_000, false)
+                .apply(Flux.just("正在智能查询…\n", "今天晴", "😊"))
+                .collectList().block();
+        assertEquals(List.of("正在智能查询…\n", "今天晴😊"), frames);
+    }
+
+    @Test
+    void testSlowConsumerKeepsFrames() {
+        // 测试下游没有需求时，已满足发出条件的帧不再并入后续片段
+        List<String> frames = new CopyOnWriteArrayList<>();
+        BaseSubscriber<String> subscriber = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(org.reactivestreams.Subscription subscription) {
+                request(1);
+            }
+
+            @Override
+            protected void hookOnNext(String frame) {
+                frames.add(frame);
+            }
+        };
+        coalescer(1024, 10_000, true).apply(Flux.just("a。", "b。", "c。", "d")).subscribe(subscriber);
+
+        assertEquals(List.of("a。"), frames);
+        subscriber.request(10);
+        assertEquals(List.of("a。", "b。", "c。", "d"), frames);
+    }
+
+    @Test
+    void testContextPropagatedUpstream() {
+        // 测试下游的Reactor上下文传递到上游
+        Flux<String> source = Flux.deferContextual(context -> Flux.just(context.getOrDefault("key", "missing")));
+        List<String> frames = coalescer(1024, 10_000, false)
+                .apply(source)
+                .contextWrite(Context.of("key", "value"))
+                .collectList().block();
+        assertEquals(List.of("value"), frames);
+    }
+
+    @Test
+    void testHelpers() {
+        // 测试句末判断与UTF-8字节数计算
+        assertTrue(TokenCoalescer.endsSentence("好的。 "));
+        assertTrue(TokenCoalescer.endsSentence("Done!"));
+        assertFalse(TokenCoalescer.endsSentence("3"));
+        assertEquals(1, TokenCoalescer.utf8Length("a"));
+        assertEquals(3, TokenCoalescer.utf8Length("中"));
+        assertEquals(4, TokenCoalescer.utf8Length("😀"));
+    }
+
+    private static void awaitSize(List<String> frames, int size) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        while (frames.size() < size && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(size, frames.size());
+    }
+}
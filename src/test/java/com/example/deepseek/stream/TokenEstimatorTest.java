@@ -0,0 +1,22 @@
+package com.example.deepseek.stream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TokenEstimator 单元测试
+ */
+class TokenEstimatorTest {
+
+    @Test
+    void testEstimate() {
+        // 测试中文按字计、其余字符按每4个字符计，混合文本分别累加
+        assertEquals(0, TokenEstimator.estimate(null));
+        assertEquals(0, TokenEstimator.estimate(""));
+        assertEquals(4, TokenEstimator.estimate("今天天气"));
+        assertEquals(3, TokenEstimator.estimate("Hello, world"));
+        assertEquals(4, TokenEstimator.estimate("你好，Tom"));
+        assertEquals(1, TokenEstimator.estimate("😀"));
+    }
+}